@@ -0,0 +1,79 @@
+package edu.brown.cs.student.main.benchmarks;
+
+import edu.brown.cs.student.main.server.geoJson.DetailLevels;
+import edu.brown.cs.student.main.server.geoJson.GeoJsonParser;
+import edu.brown.cs.student.main.server.geoJson.RedliningDataGenerator;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The work behind a /get-redlining-data cache miss: finding the features inside a viewport and
+ * assembling their GeoJSON. Viewports range from a few blocks to the whole country, all centered on
+ * the biggest synthetic city.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BoundingBoxBenchmark {
+  @Param({"10000"})
+  public int featureCount;
+
+  /** Half the width and height of the viewport in degrees. */
+  @Param({"0.01", "0.1", "0.5", "5", "30"})
+  public double viewportRadius;
+
+  private GeoJsonParser parser;
+  private double minLat;
+  private double minLng;
+  private double maxLat;
+  private double maxLng;
+
+  @Setup
+  public void loadDataset() throws IOException {
+    RedliningDataGenerator generator = Datasets.holcShaped(featureCount, 32);
+    parser = new GeoJsonParser(Datasets.writeTemp(generator));
+    // Centered on the biggest city
+    double lat = generator.cityCenter(0)[0];
+    double lng = generator.cityCenter(0)[1];
+    minLat = lat - viewportRadius;
+    minLng = lng - viewportRadius;
+    maxLat = lat + viewportRadius;
+    maxLng = lng + viewportRadius;
+  }
+
+  @Benchmark
+  public int[] filter() {
+    return parser.featuresInBox(minLat, minLng, maxLat, maxLng);
+  }
+
+  @Benchmark
+  public byte[] filterAndSerialize() {
+    return parser.toJsonBytes(parser.featuresInBox(minLat, minLng, maxLat, maxLng));
+  }
+
+  /** The same response at the level of detail the handler picks for the viewport. */
+  @Benchmark
+  public byte[] filterAndSerializeSimplified() {
+    int level = DetailLevels.forSpan(maxLat - minLat, maxLng - minLng);
+    return parser.toJsonBytes(parser.featuresInBox(minLat, minLng, maxLat, maxLng), level);
+  }
+
+  /** The simplified response in the Geobuf binary format. */
+  @Benchmark
+  public byte[] filterAndEncodeGeobuf() {
+    int level = DetailLevels.forSpan(maxLat - minLat, maxLng - minLng);
+    return parser.toGeobufBytes(parser.featuresInBox(minLat, minLng, maxLat, maxLng), level);
+  }
+}
@@ -0,0 +1,54 @@
+package edu.brown.cs.student.main.benchmarks;
+
+import edu.brown.cs.student.main.server.geoJson.RedliningDataCache;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link RedliningDataCache} under many concurrent requests. With few distinct keys nearly every
+ * call is a hit; with many keys the byte budget forces misses and evictions on every thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(8)
+public class CacheContentionBenchmark {
+  /** Number of distinct viewports requested. */
+  @Param({"16", "4096"})
+  public int keyCount;
+
+  // Room for about 1000 responses
+  private static final int RESPONSE_BYTES = 16 * 1024;
+
+  private RedliningDataCache cache;
+  private String[] keys;
+
+  @Setup
+  public void createCache() {
+    cache = new RedliningDataCache(1000L * RESPONSE_BYTES, Duration.ofHours(1));
+    keys = new String[keyCount];
+    for (int i = 0; i < keyCount; i++) {
+      keys[i] = String.format("%.6f:%.6f:%.6f:%.6f", 41.0 + i * 1e-3, -88.0, 42.0, -87.0);
+    }
+  }
+
+  @Benchmark
+  public byte[] getOrCompute() {
+    String key = keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    return cache.getOrCompute(key, () -> new byte[RESPONSE_BYTES]);
+  }
+}
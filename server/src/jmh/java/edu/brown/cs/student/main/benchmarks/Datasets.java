@@ -0,0 +1,40 @@
+package edu.brown.cs.student.main.benchmarks;
+
+import edu.brown.cs.student.main.server.geoJson.RedliningDataGenerator;
+import edu.brown.cs.student.main.server.geoJson.RedliningDataGenerator.CityDistribution;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** Synthetic datasets shared by the benchmarks, so they need no external files. */
+final class Datasets {
+  private Datasets() {}
+
+  /**
+   * Get a generator for a dataset shaped like the real HOLC data: 20 cities of very different
+   * sizes and descriptions of about 40 words per field. The seed is fixed, so runs see the same
+   * data.
+   *
+   * @param featureCount Number of features
+   * @param verticesPerRing Number of vertices in each ring
+   * @return The generator
+   */
+  static RedliningDataGenerator holcShaped(int featureCount, int verticesPerRing) {
+    return new RedliningDataGenerator(
+        featureCount, verticesPerRing, 20, CityDistribution.ZIPF, 40, 42);
+  }
+
+  /**
+   * Write a dataset to a temporary file that is deleted when the JVM exits.
+   *
+   * @param generator The generator of the dataset
+   * @return The path of the file
+   * @throws IOException if the file cannot be written
+   */
+  static Path writeTemp(RedliningDataGenerator generator) throws IOException {
+    Path path = Files.createTempFile("redlining-", ".json");
+    path.toFile().deleteOnExit();
+    generator.write(path);
+    return path;
+  }
+}
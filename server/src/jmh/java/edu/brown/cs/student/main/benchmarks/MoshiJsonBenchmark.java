@@ -0,0 +1,53 @@
+package edu.brown.cs.student.main.benchmarks;
+
+import edu.brown.cs.student.main.server.handlers.Utils;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Serializing a pin list response with {@link Utils#toMoshiJson}. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MoshiJsonBenchmark {
+  @Param({"10", "1000"})
+  public int pinCount;
+
+  private Map<String, Object> response;
+
+  @Setup
+  public void buildResponse() {
+    List<Map<String, Object>> pins = new ArrayList<>(pinCount);
+    for (int i = 0; i < pinCount; i++) {
+      Map<String, Object> pin = new HashMap<>();
+      pin.put("id", "pin-" + i);
+      pin.put("latitude", 41.82 + i * 1e-4);
+      pin.put("longitude", -71.41 - i * 1e-4);
+      pin.put("userId", "user-" + (i % 50));
+      pin.put("timestamp", 1649673600000L + i);
+      pins.add(pin);
+    }
+    response = new HashMap<>();
+    response.put("result", "success");
+    response.put("pins", pins);
+  }
+
+  @Benchmark
+  public String toMoshiJson() {
+    return Utils.toMoshiJson(response);
+  }
+}
@@ -0,0 +1,45 @@
+package edu.brown.cs.student.main.benchmarks;
+
+import edu.brown.cs.student.main.server.geoJson.GeoJsonParser;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to load a dataset: streaming the file, packing the geometry and building the spatial index,
+ * the feature fragments and the search index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ParserLoadBenchmark {
+  @Param({"1000", "10000"})
+  public int featureCount;
+
+  @Param({"32"})
+  public int verticesPerRing;
+
+  private Path dataset;
+
+  @Setup
+  public void writeDataset() throws IOException {
+    dataset = Datasets.writeTemp(Datasets.holcShaped(featureCount, verticesPerRing));
+  }
+
+  @Benchmark
+  public GeoJsonParser load() {
+    return new GeoJsonParser(dataset);
+  }
+}
@@ -0,0 +1,47 @@
+package edu.brown.cs.student.main.benchmarks;
+
+import edu.brown.cs.student.main.server.geoJson.GeoJsonParser;
+import edu.brown.cs.student.main.server.geoJson.SearchIndex;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Keyword lookups behind /search-redlining: a word in many descriptions, a phrase, a word prefix
+ * and a keyword with no matches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SearchBenchmark {
+  @Param({"10000"})
+  public int featureCount;
+
+  @Param({"industrial", "close to schools", "rail", "airport"})
+  public String keyword;
+
+  private SearchIndex searchIndex;
+
+  @Setup
+  public void loadDataset() throws IOException {
+    GeoJsonParser parser =
+        new GeoJsonParser(Datasets.writeTemp(Datasets.holcShaped(featureCount, 32)));
+    searchIndex = parser.getSearchIndex();
+  }
+
+  @Benchmark
+  public int[] search() {
+    return searchIndex.search(keyword);
+  }
+}
@@ -1,18 +1,32 @@
 package edu.brown.cs.student.main.server;
 
-import edu.brown.cs.student.main.server.geoJson.GeoJsonParser;
 import edu.brown.cs.student.main.server.geoJson.RedliningDataCache;
+import edu.brown.cs.student.main.server.geoJson.RedliningDataset;
 import edu.brown.cs.student.main.server.handlers.AddPins;
 import edu.brown.cs.student.main.server.handlers.DropPins;
 import edu.brown.cs.student.main.server.handlers.GetAllPins;
+import edu.brown.cs.student.main.server.handlers.GetCacheStats;
+import edu.brown.cs.student.main.server.handlers.GetPins;
 import edu.brown.cs.student.main.server.handlers.GetRedliningData;
+import edu.brown.cs.student.main.server.handlers.GetRedliningTiles;
+import edu.brown.cs.student.main.server.handlers.PinEvents;
+import edu.brown.cs.student.main.server.handlers.ReloadRedliningData;
 import edu.brown.cs.student.main.server.handlers.SearchRedliningAreas;
+import edu.brown.cs.student.main.server.storage.CachingStorage;
 import edu.brown.cs.student.main.server.storage.FirebaseUtilities;
+import edu.brown.cs.student.main.server.storage.LocalPinStorage;
+import edu.brown.cs.student.main.server.storage.PinEventBus;
+import edu.brown.cs.student.main.server.storage.PublishingStorage;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
+import edu.brown.cs.student.main.server.storage.WriteBehindStorage;
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import spark.Spark;
 
 /** Main server class that configures and starts the Spark server. */
@@ -26,13 +40,29 @@ public class Server {
    */
   public static void main(String[] args) {
     try {
-      // Initialize Firebase storage
-      StorageInterface storage = new FirebaseUtilities();
-
-      // Get the path to the redlining dataset in resources directory
+      // Initialize pin storage
       String workingDirectory = System.getProperty("user.dir");
+      StorageInterface storage = createStorage(workingDirectory);
+
+      // Publish every pin change to clients following /pin-events. Each open stream holds one of
+      // Jetty's request threads (200 by default), so streams are capped below that;
+      // PIN_EVENTS_MAX_SUBSCRIBERS (or the pinEventsMaxSubscribers system property) changes the cap
+      String maxSubscribers =
+          System.getProperty(
+              "pinEventsMaxSubscribers", System.getenv("PIN_EVENTS_MAX_SUBSCRIBERS"));
+      PinEventBus pinEvents =
+          new PinEventBus(
+              1024, 256, maxSubscribers != null ? Integer.parseInt(maxSubscribers) : 100);
+      storage = new PublishingStorage(storage, pinEvents);
+
+      // Get the path to the redlining dataset: REDLINING_DATA (or the redliningData system
+      // property) points at another file, such as one written by RedliningDataGenerator
+      String configuredDataPath =
+          System.getProperty("redliningData", System.getenv("REDLINING_DATA"));
       Path redliningFilePath =
-          Paths.get(workingDirectory, "src", "main", "resources", "fullDownload.json");
+          configuredDataPath != null
+              ? Paths.get(configuredDataPath)
+              : Paths.get(workingDirectory, "src", "main", "resources", "fullDownload.json");
 
       // Verify the file exists
       if (!Files.exists(redliningFilePath)) {
@@ -42,10 +72,32 @@ public class Server {
         System.out.println("GeoJSON file found at: " + redliningFilePath);
       }
 
-      // Initialize GeoJSON parser and cache
+      // The parsed dataset is kept in a snapshot so restarts on unchanged data skip parsing;
+      // REDLINING_SNAPSHOT (or the redliningSnapshot system property) moves it elsewhere
+      String configuredSnapshotPath =
+          System.getProperty("redliningSnapshot", System.getenv("REDLINING_SNAPSHOT"));
+      Path snapshotPath =
+          configuredSnapshotPath != null
+              ? Paths.get(configuredSnapshotPath)
+              : Paths.get(workingDirectory, "data", "redlining.snapshot");
+
+      // Initialize the dataset and cache; once a reload swaps in new data, the responses cached
+      // from the old version are dropped
       System.out.println("Initializing GeoJSON parser with file: " + redliningFilePath);
-      GeoJsonParser geoJsonParser = new GeoJsonParser(redliningFilePath);
+      RedliningDataset redliningData = new RedliningDataset(redliningFilePath, snapshotPath);
       RedliningDataCache redliningCache = new RedliningDataCache();
+      redliningData.addSwapListener(
+          retired -> redliningCache.invalidatePrefix(retired.cacheKeyPrefix()));
+
+      // REDLINING_WATCH=true (or the redliningWatch system property) reloads the data whenever
+      // the file changes
+      if ("true".equals(System.getProperty("redliningWatch", System.getenv("REDLINING_WATCH")))) {
+        try {
+          redliningData.watch(Duration.ofSeconds(2));
+        } catch (IOException e) {
+          System.err.println("WARNING: Cannot watch " + redliningFilePath + ": " + e.getMessage());
+        }
+      }
 
       // Configure Spark
       Spark.port(PORT);
@@ -81,17 +133,95 @@ public class Server {
       Spark.get("/add-pin", new AddPins(storage));
       Spark.get("/get-all-pins", new GetAllPins(storage));
       Spark.get("/drop-pins", new DropPins(storage));
-      Spark.get("/get-redlining-data", new GetRedliningData(geoJsonParser, redliningCache));
+      Spark.get("/get-pins", new GetPins(storage));
+      Spark.get("/pin-events", new PinEvents(pinEvents));
+      Spark.get("/get-redlining-data", new GetRedliningData(redliningData, redliningCache));
+      Spark.get("/get-redlining-tiles", new GetRedliningTiles(redliningData, redliningCache));
+      Spark.get("/redlining-cache-stats", new GetCacheStats(redliningCache));
 
       // Register new search endpoint
-      Spark.get("/search-redlining", new SearchRedliningAreas(geoJsonParser));
+      Spark.get("/search-redlining", new SearchRedliningAreas(redliningData));
+
+      // The reload endpoint exists only when REDLINING_ADMIN_TOKEN (or the redliningAdminToken
+      // system property) sets the token callers must present
+      String adminToken =
+          System.getProperty("redliningAdminToken", System.getenv("REDLINING_ADMIN_TOKEN"));
+      if (adminToken != null && !adminToken.isEmpty()) {
+        Spark.get("/admin/reload-redlining", new ReloadRedliningData(redliningData, adminToken));
+      }
 
       System.out.println("Server started on port " + PORT);
 
     } catch (IOException e) {
-      System.err.println("Failed to initialize Firebase: " + e.getMessage());
+      System.err.println("Failed to initialize storage: " + e.getMessage());
       e.printStackTrace();
       System.exit(1);
     }
   }
+
+  /**
+   * Create the pin storage backend. Firebase is used by default; setting the PIN_STORAGE
+   * environment variable (or the pinStorage system property) to "local" selects the on-disk store
+   * instead, which keeps its log at PIN_STORAGE_PATH or data/pins.log. Setting PIN_WRITE_BEHIND to
+   * "true" puts a write-behind batching layer in front of the backend, journaling at
+   * data/pin-journal.log. Reads are served from an in-memory copy of the pins unless PIN_CACHE is
+   * "false".
+   *
+   * @param workingDirectory The server's working directory
+   * @return The storage backend
+   * @throws IOException if the storage cannot be initialized
+   */
+  private static StorageInterface createStorage(String workingDirectory) throws IOException {
+    List<Closeable> toClose = new ArrayList<>();
+
+    StorageInterface storage;
+    String backend = System.getProperty("pinStorage", System.getenv("PIN_STORAGE"));
+    if ("local".equalsIgnoreCase(backend)) {
+      String configuredPath =
+          System.getProperty("pinStoragePath", System.getenv("PIN_STORAGE_PATH"));
+      Path logPath =
+          configuredPath != null
+              ? Paths.get(configuredPath)
+              : Paths.get(workingDirectory, "data", "pins.log");
+      System.out.println("Using local pin storage at: " + logPath);
+      LocalPinStorage localStorage = new LocalPinStorage(logPath);
+      toClose.add(localStorage);
+      storage = localStorage;
+    } else {
+      storage = new FirebaseUtilities();
+    }
+
+    String writeBehind = System.getProperty("pinWriteBehind", System.getenv("PIN_WRITE_BEHIND"));
+    if ("true".equalsIgnoreCase(writeBehind)) {
+      Path journalPath = Paths.get(workingDirectory, "data", "pin-journal.log");
+      System.out.println("Using write-behind pin storage with journal at: " + journalPath);
+      WriteBehindStorage writeBehindStorage =
+          new WriteBehindStorage(
+              storage, journalPath, 10_000, 500, Duration.ofMillis(50), Duration.ofSeconds(5));
+      // The write-behind layer flushes into the backend, so it has to be closed first
+      toClose.add(0, writeBehindStorage);
+      storage = writeBehindStorage;
+    }
+
+    String cache = System.getProperty("pinCache", System.getenv("PIN_CACHE"));
+    if (!"false".equalsIgnoreCase(cache)) {
+      // Serve pin reads from memory, in front of any write-behind layer, so reads never wait for
+      // a flush; outside changes are picked up every 30 seconds
+      storage = new CachingStorage(storage, Duration.ofSeconds(30));
+    }
+
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  for (Closeable closeable : toClose) {
+                    try {
+                      closeable.close();
+                    } catch (IOException e) {
+                      System.err.println("Failed to close pin storage: " + e.getMessage());
+                    }
+                  }
+                }));
+    return storage;
+  }
 }
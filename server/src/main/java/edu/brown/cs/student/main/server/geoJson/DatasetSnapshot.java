@@ -0,0 +1,345 @@
+package edu.brown.cs.student.main.server.geoJson;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Binary snapshot of a loaded dataset: the feature properties, the packed geometry, the envelopes,
+ * the spatial and search indexes and the prebuilt GeoJSON and Geobuf fragments of every level of
+ * detail. Loading one memory-maps the file, so a server restarting on unchanged data skips parsing,
+ * simplification and serialization entirely.
+ *
+ * <p>The bulky parts (properties, coordinates, fragments and posting lists) are not copied out of
+ * the mapping: {@link FeatureStore}, {@link PackedGeometry}, {@link FeatureFragments}, {@link
+ * GeobufFragments} and {@link SearchIndex} keep views of it, so they cost page cache rather than
+ * heap, and the garbage collector never has to trace them. Only the small per-feature arrays of the
+ * envelopes and the spatial index are copied onto the heap, where the bounding box loop reads them
+ * fastest. A dataset parsed without a snapshot file is moved into direct memory the same way with
+ * {@link #copyOffHeap}. A single mapping is limited to 2 GB, and so is a snapshot.
+ *
+ * <p>The header holds a format version, the detail level tolerances and the SHA-256 of the source
+ * file. A snapshot is only used when all three match; otherwise the source is parsed again and a
+ * fresh snapshot replaces the stale one. Bump {@link #FORMAT_VERSION} whenever anything written
+ * here changes shape.
+ */
+public final class DatasetSnapshot {
+  // Identifies snapshot files, "RDLS" in ASCII
+  private static final int MAGIC = 0x52444C53;
+
+  /** Version of the snapshot layout. */
+  static final int FORMAT_VERSION = 2;
+
+  private DatasetSnapshot() {}
+
+  /** The parts of a loaded dataset, as {@link GeoJsonParser} holds them. */
+  static final class Contents {
+    FeatureStore features;
+    PackedGeometry geometry;
+    FeatureEnvelopes envelopes;
+    SpatialIndex spatialIndex;
+    SearchIndex searchIndex;
+    FeatureFragments fragments;
+    GeobufFragments geobufFragments;
+  }
+
+  /**
+   * Compute the SHA-256 of a file.
+   *
+   * @param path The file
+   * @return The hash
+   * @throws IOException if the file cannot be read
+   */
+  public static byte[] hash(Path path) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+    byte[] chunk = new byte[1 << 16];
+    try (InputStream in = Files.newInputStream(path)) {
+      for (int read = in.read(chunk); read != -1; read = in.read(chunk)) {
+        digest.update(chunk, 0, read);
+      }
+    }
+    return digest.digest();
+  }
+
+  /**
+   * Load a snapshot if it exists and was written for the given source by this version of the code.
+   *
+   * @param path The snapshot file
+   * @param sourceHash SHA-256 of the source file
+   * @param geobufWriter The writer that assembles Geobuf collections
+   * @return The dataset, or null if there is no usable snapshot
+   * @throws IOException if the snapshot exists but cannot be read
+   */
+  static Contents read(Path path, byte[] sourceHash, GeobufWriter geobufWriter) throws IOException {
+    if (!Files.exists(path)) {
+      return null;
+    }
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      // The mapping stays valid after the channel is closed
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    return read(buffer, sourceHash, geobufWriter);
+  }
+
+  /**
+   * Move a dataset into direct memory, for when there is no snapshot file to map. The dataset is
+   * written as a snapshot into a direct buffer and read back, so it ends up in the same form as one
+   * loaded from a file. It is written twice: once only to count its size, then straight into a
+   * direct buffer of exactly that size, so no copy of the whole snapshot is held on the heap.
+   *
+   * @param contents The dataset, on the heap
+   * @param geobufWriter The writer that assembles Geobuf collections
+   * @return The dataset, in direct memory
+   * @throws IOException if the dataset cannot be written
+   */
+  static Contents copyOffHeap(Contents contents, GeobufWriter geobufWriter) throws IOException {
+    DataOutputStream counter = new DataOutputStream(OutputStream.nullOutputStream());
+    writeTo(counter, new byte[0], contents);
+    // DataOutputStream stops counting at Integer.MAX_VALUE, the limit of a snapshot anyway
+    if (counter.size() == Integer.MAX_VALUE) {
+      throw new IOException("Dataset is too large for a snapshot");
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(counter.size());
+    try (DataOutputStream out =
+        new DataOutputStream(
+            new BufferedOutputStream(new ByteBufferOutputStream(buffer), 1 << 16))) {
+      writeTo(out, new byte[0], contents);
+    }
+    buffer.flip();
+    return read(buffer, new byte[0], geobufWriter);
+  }
+
+  private static Contents read(ByteBuffer buffer, byte[] sourceHash, GeobufWriter geobufWriter) {
+    if (buffer.remaining() < 8
+        || buffer.getInt() != MAGIC
+        || buffer.getInt() != FORMAT_VERSION
+        || !Arrays.equals(readDoubles(buffer), tolerances())
+        || !Arrays.equals(readBytes(buffer), sourceHash)) {
+      return null;
+    }
+
+    Contents contents = new Contents();
+    contents.features = FeatureStore.read(buffer);
+    contents.geometry = PackedGeometry.read(buffer);
+    contents.envelopes = FeatureEnvelopes.read(buffer);
+    contents.spatialIndex = SpatialIndex.read(buffer);
+    contents.searchIndex = SearchIndex.read(buffer, contents.features);
+    contents.fragments = FeatureFragments.read(buffer);
+    contents.geobufFragments = GeobufFragments.read(buffer, geobufWriter);
+    return contents;
+  }
+
+  /**
+   * Write a snapshot. It goes to a temporary file first and is moved into place once complete, so a
+   * crash never leaves a truncated snapshot behind.
+   *
+   * @param path The snapshot file
+   * @param sourceHash SHA-256 of the source file
+   * @param contents The loaded dataset
+   * @throws IOException if the snapshot cannot be written
+   */
+  static void write(Path path, byte[] sourceHash, Contents contents) throws IOException {
+    Path parent = path.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+    try {
+      try (OutputStream file = Files.newOutputStream(temp);
+          DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 20))) {
+        writeTo(out, sourceHash, contents);
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static void writeTo(DataOutputStream out, byte[] sourceHash, Contents contents)
+      throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(FORMAT_VERSION);
+    writeDoubles(out, tolerances());
+    writeBytes(out, sourceHash);
+    contents.features.write(out);
+    contents.geometry.write(out);
+    contents.envelopes.write(out);
+    contents.spatialIndex.write(out);
+    contents.searchIndex.write(out);
+    contents.fragments.write(out);
+    contents.geobufFragments.write(out);
+  }
+
+  private static double[] tolerances() {
+    double[] tolerances = new double[DetailLevels.count()];
+    for (int level = 0; level < tolerances.length; level++) {
+      tolerances[level] = DetailLevels.tolerance(level);
+    }
+    return tolerances;
+  }
+
+  static void writeString(DataOutputStream out, String value) throws IOException {
+    writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static String readString(ByteBuffer buffer) {
+    byte[] bytes = readBytes(buffer);
+    return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static void writeBytes(DataOutputStream out, byte[] values) throws IOException {
+    out.writeInt(values == null ? -1 : values.length);
+    if (values != null) {
+      out.write(values);
+    }
+  }
+
+  static byte[] readBytes(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] values = new byte[length];
+    buffer.get(values);
+    return values;
+  }
+
+  /** Write a byte buffer's contents from index 0 to its limit. */
+  static void writeBytes(DataOutputStream out, ByteBuffer values) throws IOException {
+    out.writeInt(values.limit());
+    if (values.hasArray()) {
+      out.write(values.array(), values.arrayOffset(), values.limit());
+      return;
+    }
+    byte[] chunk = new byte[1 << 16];
+    for (int start = 0; start < values.limit(); start += chunk.length) {
+      int length = Math.min(chunk.length, values.limit() - start);
+      values.get(start, chunk, 0, length);
+      out.write(chunk, 0, length);
+    }
+  }
+
+  static void writeInts(DataOutputStream out, int[] values) throws IOException {
+    writeInts(out, IntBuffer.wrap(values));
+  }
+
+  /** Write an int buffer's contents from index 0 to its limit, aligned for {@link #intView}. */
+  static void writeInts(DataOutputStream out, IntBuffer values) throws IOException {
+    out.writeInt(values.limit());
+    pad(out, Integer.BYTES);
+    for (int i = 0; i < values.limit(); i++) {
+      out.writeInt(values.get(i));
+    }
+  }
+
+  static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+    writeDoubles(out, DoubleBuffer.wrap(values));
+  }
+
+  /**
+   * Write a double buffer's contents from index 0 to its limit, aligned for {@link #doubleView}.
+   */
+  static void writeDoubles(DataOutputStream out, DoubleBuffer values) throws IOException {
+    out.writeInt(values.limit());
+    pad(out, Double.BYTES);
+    for (int i = 0; i < values.limit(); i++) {
+      out.writeDouble(values.get(i));
+    }
+  }
+
+  static int[] readInts(ByteBuffer buffer) {
+    IntBuffer view = intView(buffer);
+    int[] values = new int[view.limit()];
+    view.get(values);
+    return values;
+  }
+
+  static double[] readDoubles(ByteBuffer buffer) {
+    DoubleBuffer view = doubleView(buffer);
+    double[] values = new double[view.limit()];
+    view.get(values);
+    return values;
+  }
+
+  /** Read bytes written by {@link #writeBytes(DataOutputStream, ByteBuffer)} without copying. */
+  static ByteBuffer byteView(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    return slice(buffer, length);
+  }
+
+  /** Read ints written by {@link #writeInts} without copying. */
+  static IntBuffer intView(ByteBuffer buffer) {
+    int count = buffer.getInt();
+    skipPadding(buffer, Integer.BYTES);
+    return slice(buffer, count * Integer.BYTES).asIntBuffer();
+  }
+
+  /** Read doubles written by {@link #writeDoubles} without copying. */
+  static DoubleBuffer doubleView(ByteBuffer buffer) {
+    int count = buffer.getInt();
+    skipPadding(buffer, Double.BYTES);
+    return slice(buffer, count * Double.BYTES).asDoubleBuffer();
+  }
+
+  /** Take the next bytes of a buffer as a buffer of their own and move past them. */
+  private static ByteBuffer slice(ByteBuffer buffer, int length) {
+    ByteBuffer slice = buffer.slice(buffer.position(), length);
+    buffer.position(buffer.position() + length);
+    return slice;
+  }
+
+  // Arrays start at a multiple of their element size from the start of the snapshot, which is
+  // where the mapping starts, so the views over them are aligned
+  private static void pad(DataOutputStream out, int alignment) throws IOException {
+    while (out.size() % alignment != 0) {
+      out.writeByte(0);
+    }
+  }
+
+  private static void skipPadding(ByteBuffer buffer, int alignment) {
+    int misalignment = buffer.position() % alignment;
+    if (misalignment != 0) {
+      buffer.position(buffer.position() + alignment - misalignment);
+    }
+  }
+
+  /** Output stream filling a byte buffer, which must have room for everything written. */
+  private static final class ByteBufferOutputStream extends OutputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferOutputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public void write(int b) {
+      buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+      buffer.put(bytes, offset, length);
+    }
+  }
+}
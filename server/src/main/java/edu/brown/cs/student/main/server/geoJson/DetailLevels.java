@@ -0,0 +1,75 @@
+package edu.brown.cs.student.main.server.geoJson;
+
+/**
+ * The levels of detail the redlining geometry is served at. Level 0 is the full-resolution data;
+ * each further level is simplified with a tolerance four times larger than the one before. A
+ * request gets the coarsest level whose tolerance is still below the size of one screen pixel, so
+ * the vertices it leaves out could not have been seen.
+ */
+public final class DetailLevels {
+  /** Simplification tolerance of each level in degrees, from full detail to coarsest. */
+  private static final double[] TOLERANCES = {0, 0.0001, 0.0004, 0.0016, 0.0064};
+
+  // Width in degrees of a 256 pixel tile at zoom 0, divided by its pixels
+  private static final double DEGREES_PER_PIXEL_AT_ZOOM_0 = 360.0 / 256;
+
+  // Assumed width in pixels of the map showing a bounding box
+  private static final int VIEWPORT_PIXELS = 1024;
+
+  private DetailLevels() {}
+
+  /**
+   * Get the number of levels.
+   *
+   * @return The number of levels, including full detail
+   */
+  public static int count() {
+    return TOLERANCES.length;
+  }
+
+  /**
+   * Get the simplification tolerance of a level.
+   *
+   * @param level The level
+   * @return The tolerance in degrees, 0 for full detail
+   */
+  public static double tolerance(int level) {
+    return TOLERANCES[level];
+  }
+
+  /**
+   * Choose the level for a web-map zoom level.
+   *
+   * @param zoom The zoom level, 0 showing the whole world in one tile
+   * @return The level to serve
+   */
+  public static int forZoom(int zoom) {
+    return forPixelSize(DEGREES_PER_PIXEL_AT_ZOOM_0 / Math.pow(2, Math.max(0, zoom)));
+  }
+
+  /**
+   * Choose the level for a map showing a bounding box, assuming the box fills a viewport about a
+   * thousand pixels across.
+   *
+   * @param latSpan Height of the box in degrees
+   * @param lngSpan Width of the box in degrees
+   * @return The level to serve
+   */
+  public static int forSpan(double latSpan, double lngSpan) {
+    return forPixelSize(Math.max(Math.abs(latSpan), Math.abs(lngSpan)) / VIEWPORT_PIXELS);
+  }
+
+  /**
+   * Choose the coarsest level whose tolerance does not exceed the size of a pixel.
+   *
+   * @param degreesPerPixel Size of one pixel in degrees
+   * @return The level to serve
+   */
+  public static int forPixelSize(double degreesPerPixel) {
+    int level = 0;
+    while (level + 1 < TOLERANCES.length && TOLERANCES[level + 1] <= degreesPerPixel) {
+      level++;
+    }
+    return level;
+  }
+}
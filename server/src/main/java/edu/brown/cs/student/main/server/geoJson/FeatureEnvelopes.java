@@ -0,0 +1,150 @@
+package edu.brown.cs.student.main.server.geoJson;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The bounding box (envelope) of every feature, computed once when the data is loaded. Envelopes
+ * are kept in parallel primitive arrays indexed by feature id (position in the feature list), so
+ * bounding box checks never have to touch the coordinates of a feature.
+ */
+public class FeatureEnvelopes {
+  private final double[] minLngs;
+  private final double[] minLats;
+  private final double[] maxLngs;
+  private final double[] maxLats;
+
+  private FeatureEnvelopes(double[] minLngs, double[] minLats, double[] maxLngs, double[] maxLats) {
+    this.minLngs = minLngs;
+    this.minLats = minLats;
+    this.maxLngs = maxLngs;
+    this.maxLats = maxLats;
+  }
+
+  /**
+   * Compute the envelope of every feature. Features without any points get a NaN envelope.
+   *
+   * @param geometry The packed geometry of every feature
+   */
+  public FeatureEnvelopes(PackedGeometry geometry) {
+    int count = geometry.featureCount();
+    this.minLngs = new double[count];
+    this.minLats = new double[count];
+    this.maxLngs = new double[count];
+    this.maxLats = new double[count];
+    Arrays.fill(minLngs, Double.NaN);
+    Arrays.fill(minLats, Double.NaN);
+    Arrays.fill(maxLngs, Double.NaN);
+    Arrays.fill(maxLats, Double.NaN);
+
+    for (int i = 0; i < count; i++) {
+      int firstPoint = geometry.firstPointOf(i);
+      int endPoint = geometry.endPointOf(i);
+      if (firstPoint == endPoint) {
+        continue;
+      }
+
+      double featureMinLng = Double.POSITIVE_INFINITY;
+      double featureMinLat = Double.POSITIVE_INFINITY;
+      double featureMaxLng = Double.NEGATIVE_INFINITY;
+      double featureMaxLat = Double.NEGATIVE_INFINITY;
+      for (int point = firstPoint; point < endPoint; point++) {
+        double lng = geometry.lng(point);
+        double lat = geometry.lat(point);
+        featureMinLng = Math.min(featureMinLng, lng);
+        featureMinLat = Math.min(featureMinLat, lat);
+        featureMaxLng = Math.max(featureMaxLng, lng);
+        featureMaxLat = Math.max(featureMaxLat, lat);
+      }
+
+      minLngs[i] = featureMinLng;
+      minLats[i] = featureMinLat;
+      maxLngs[i] = featureMaxLng;
+      maxLats[i] = featureMaxLat;
+    }
+  }
+
+  /**
+   * Check if every point of a feature lies within a bounding box. A feature is contained exactly
+   * when its envelope is, so this never needs to look at the feature's coordinates.
+   *
+   * @param featureId The feature to check
+   * @param minLat Minimum latitude
+   * @param minLng Minimum longitude
+   * @param maxLat Maximum latitude
+   * @param maxLng Maximum longitude
+   * @return true if the feature has points and all of them are within the bounding box
+   */
+  public boolean isContainedIn(
+      int featureId, double minLat, double minLng, double maxLat, double maxLng) {
+    // Comparisons against NaN are false, so features without points are never contained
+    return minLats[featureId] >= minLat
+        && maxLats[featureId] <= maxLat
+        && minLngs[featureId] >= minLng
+        && maxLngs[featureId] <= maxLng;
+  }
+
+  /**
+   * Check if a feature has an envelope, i.e. at least one point.
+   *
+   * @param featureId The feature to check
+   * @return true if the feature has an envelope
+   */
+  public boolean hasEnvelope(int featureId) {
+    return !Double.isNaN(minLngs[featureId]);
+  }
+
+  /**
+   * Get the number of features.
+   *
+   * @return The number of features
+   */
+  public int size() {
+    return minLngs.length;
+  }
+
+  public double minLng(int featureId) {
+    return minLngs[featureId];
+  }
+
+  public double minLat(int featureId) {
+    return minLats[featureId];
+  }
+
+  public double maxLng(int featureId) {
+    return maxLngs[featureId];
+  }
+
+  public double maxLat(int featureId) {
+    return maxLats[featureId];
+  }
+
+  /**
+   * Write the envelopes to a {@link DatasetSnapshot}.
+   *
+   * @param out The snapshot being written
+   * @throws IOException if writing fails
+   */
+  void write(DataOutputStream out) throws IOException {
+    DatasetSnapshot.writeDoubles(out, minLngs);
+    DatasetSnapshot.writeDoubles(out, minLats);
+    DatasetSnapshot.writeDoubles(out, maxLngs);
+    DatasetSnapshot.writeDoubles(out, maxLats);
+  }
+
+  /**
+   * Read envelopes written by {@link #write}.
+   *
+   * @param buffer The snapshot, positioned at the envelopes
+   * @return The envelopes
+   */
+  static FeatureEnvelopes read(ByteBuffer buffer) {
+    return new FeatureEnvelopes(
+        DatasetSnapshot.readDoubles(buffer),
+        DatasetSnapshot.readDoubles(buffer),
+        DatasetSnapshot.readDoubles(buffer),
+        DatasetSnapshot.readDoubles(buffer));
+  }
+}
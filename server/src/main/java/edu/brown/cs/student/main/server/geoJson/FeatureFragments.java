@@ -0,0 +1,131 @@
+package edu.brown.cs.student.main.server.geoJson;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The serialized GeoJSON of every feature, built once when the data is loaded. Features never
+ * change after loading, so a response is just the collection prefix, the fragments of the selected
+ * features separated by commas, and the closing brackets.
+ *
+ * <p>Each feature is kept in two parts: a head holding its geometry, serialized once per level of
+ * detail, and a tail holding its properties, serialized once and shared by every level. The
+ * properties are most of the bytes of a feature, so extra levels only cost their geometry. The
+ * parts are packed into {@link PackedBytes}, so fragments read from a {@link DatasetSnapshot} are
+ * copied straight from the snapshot's memory into the response.
+ */
+public class FeatureFragments {
+  private static final byte[] SUFFIX = {']', '}'};
+
+  private final byte[] prefix;
+  // heads[level][featureId] holds the feature object up to the end of its geometry
+  private final PackedBytes[] heads;
+  // tails[featureId] holds the properties and the closing brace
+  private final PackedBytes tails;
+
+  /**
+   * Serialize every feature.
+   *
+   * @param data The GeoJSON data
+   * @param levels The packed geometry of the features at each level of detail, full detail first
+   * @param writer The writer used to serialize each feature
+   */
+  public FeatureFragments(GeoJsonObject data, PackedGeometry[] levels, GeoJsonWriter writer) {
+    int featureCount = data.features.size();
+    this.prefix = writer.collectionPrefix(data.type);
+    byte[][][] heads = new byte[levels.length][featureCount][];
+    byte[][] tails = new byte[featureCount][];
+    for (int level = 0; level < levels.length; level++) {
+      for (int i = 0; i < featureCount; i++) {
+        heads[level][i] = writer.featureHead(data, levels[level], i);
+      }
+    }
+    for (int i = 0; i < featureCount; i++) {
+      // A head is just "{" when the feature has neither a type nor a geometry
+      tails[i] = writer.featureTail(data.features.get(i), heads[0][i].length > 1);
+    }
+    this.heads = new PackedBytes[levels.length];
+    for (int level = 0; level < levels.length; level++) {
+      this.heads[level] = PackedBytes.of(heads[level]);
+    }
+    this.tails = PackedBytes.of(tails);
+  }
+
+  private FeatureFragments(byte[] prefix, PackedBytes[] heads, PackedBytes tails) {
+    this.prefix = prefix;
+    this.heads = heads;
+    this.tails = tails;
+  }
+
+  /**
+   * Write the fragments to a {@link DatasetSnapshot}.
+   *
+   * @param out The snapshot being written
+   * @throws IOException if writing fails
+   */
+  void write(DataOutputStream out) throws IOException {
+    DatasetSnapshot.writeBytes(out, prefix);
+    out.writeInt(heads.length);
+    for (PackedBytes levelHeads : heads) {
+      levelHeads.write(out);
+    }
+    tails.write(out);
+  }
+
+  /**
+   * Read fragments written by {@link #write}. They stay in the buffer.
+   *
+   * @param buffer The snapshot, positioned at the fragments
+   * @return The fragments
+   */
+  static FeatureFragments read(ByteBuffer buffer) {
+    byte[] prefix = DatasetSnapshot.readBytes(buffer);
+    PackedBytes[] heads = new PackedBytes[buffer.getInt()];
+    for (int level = 0; level < heads.length; level++) {
+      heads[level] = PackedBytes.read(buffer);
+    }
+    return new FeatureFragments(prefix, heads, PackedBytes.read(buffer));
+  }
+
+  /**
+   * Get the number of levels of detail.
+   *
+   * @return The number of levels
+   */
+  public int levelCount() {
+    return heads.length;
+  }
+
+  /**
+   * Assemble a FeatureCollection out of the prebuilt fragments of some features.
+   *
+   * @param featureIds The ids of the features to include
+   * @param level The level of detail of the geometry
+   * @return UTF-8 bytes of the FeatureCollection
+   */
+  public byte[] collection(int[] featureIds, int level) {
+    PackedBytes levelHeads = heads[level];
+
+    // Work out the exact size first so the fragments are copied only once
+    int length = prefix.length + SUFFIX.length + Math.max(0, featureIds.length - 1);
+    for (int featureId : featureIds) {
+      length += levelHeads.length(featureId) + tails.length(featureId);
+    }
+
+    byte[] result = new byte[length];
+    System.arraycopy(prefix, 0, result, 0, prefix.length);
+    int position = prefix.length;
+    for (int i = 0; i < featureIds.length; i++) {
+      if (i > 0) {
+        result[position++] = ',';
+      }
+      levelHeads.copyTo(featureIds[i], result, position);
+      position += levelHeads.length(featureIds[i]);
+      tails.copyTo(featureIds[i], result, position);
+      position += tails.length(featureIds[i]);
+    }
+    System.arraycopy(SUFFIX, 0, result, position, SUFFIX.length);
+    return result;
+  }
+}
@@ -0,0 +1,246 @@
+package edu.brown.cs.student.main.server.geoJson;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The properties of every feature, stored as columns of UTF-8 bytes rather than as objects: one
+ * column each for the city and the HOLC grade, and two for the keys and values of all area
+ * descriptions back to back. Loaded from a {@link DatasetSnapshot} the columns are views of the
+ * snapshot's memory, so the heap holds none of the property text however large the dataset is.
+ *
+ * <p>Features are read through {@link Feature} flyweights, which hold only the store and a feature
+ * id and decode a property when it is asked for. The geometry of the features is in {@link
+ * PackedGeometry}.
+ */
+public final class FeatureStore {
+  // Bits of the flags column
+  private static final byte HAS_PROPERTIES = 1;
+  private static final byte HAS_DESCRIPTIONS = 2;
+
+  private final ByteBuffer flags;
+  private final PackedBytes cities;
+  private final PackedBytes grades;
+  // Feature f owns descriptions descriptionOffsets[f] to descriptionOffsets[f + 1] - 1
+  private final IntBuffer descriptionOffsets;
+  private final PackedBytes descriptionKeys;
+  private final PackedBytes descriptionValues;
+
+  private FeatureStore(
+      ByteBuffer flags,
+      PackedBytes cities,
+      PackedBytes grades,
+      IntBuffer descriptionOffsets,
+      PackedBytes descriptionKeys,
+      PackedBytes descriptionValues) {
+    this.flags = flags;
+    this.cities = cities;
+    this.grades = grades;
+    this.descriptionOffsets = descriptionOffsets;
+    this.descriptionKeys = descriptionKeys;
+    this.descriptionValues = descriptionValues;
+  }
+
+  /**
+   * Store the properties of some features. The columns are on the heap until the store is written
+   * to a snapshot and read back.
+   *
+   * @param features The features; feature ids are positions in this list
+   * @return The store
+   */
+  public static FeatureStore of(List<GeoJsonObject.Feature> features) {
+    int featureCount = features.size();
+    byte[] flags = new byte[featureCount];
+    String[] cities = new String[featureCount];
+    String[] grades = new String[featureCount];
+    int[] descriptionOffsets = new int[featureCount + 1];
+    int descriptionCount = 0;
+    for (int i = 0; i < featureCount; i++) {
+      GeoJsonObject.Properties properties = features.get(i).properties;
+      if (properties != null && properties.area_description_data != null) {
+        descriptionCount += properties.area_description_data.size();
+      }
+    }
+
+    String[] keys = new String[descriptionCount];
+    String[] values = new String[descriptionCount];
+    int description = 0;
+    for (int i = 0; i < featureCount; i++) {
+      GeoJsonObject.Properties properties = features.get(i).properties;
+      if (properties != null) {
+        flags[i] |= HAS_PROPERTIES;
+        cities[i] = properties.city;
+        grades[i] = properties.holc_grade;
+        if (properties.area_description_data != null) {
+          flags[i] |= HAS_DESCRIPTIONS;
+          for (Map.Entry<String, String> entry : properties.area_description_data.entrySet()) {
+            keys[description] = entry.getKey();
+            values[description] = entry.getValue();
+            description++;
+          }
+        }
+      }
+      descriptionOffsets[i + 1] = description;
+    }
+
+    return new FeatureStore(
+        ByteBuffer.wrap(flags),
+        PackedBytes.ofStrings(cities),
+        PackedBytes.ofStrings(grades),
+        IntBuffer.wrap(descriptionOffsets),
+        PackedBytes.ofStrings(keys),
+        PackedBytes.ofStrings(values));
+  }
+
+  /**
+   * Write the store to a {@link DatasetSnapshot}.
+   *
+   * @param out The snapshot being written
+   * @throws IOException if writing fails
+   */
+  void write(DataOutputStream out) throws IOException {
+    DatasetSnapshot.writeBytes(out, flags);
+    cities.write(out);
+    grades.write(out);
+    DatasetSnapshot.writeInts(out, descriptionOffsets);
+    descriptionKeys.write(out);
+    descriptionValues.write(out);
+  }
+
+  /**
+   * Read a store written by {@link #write}. The columns stay in the buffer.
+   *
+   * @param buffer The snapshot, positioned at the store
+   * @return The store
+   */
+  static FeatureStore read(ByteBuffer buffer) {
+    return new FeatureStore(
+        DatasetSnapshot.byteView(buffer),
+        PackedBytes.read(buffer),
+        PackedBytes.read(buffer),
+        DatasetSnapshot.intView(buffer),
+        PackedBytes.read(buffer),
+        PackedBytes.read(buffer));
+  }
+
+  /**
+   * Get the number of features.
+   *
+   * @return The number of features
+   */
+  public int size() {
+    return flags.limit();
+  }
+
+  /**
+   * Get a flyweight for reading the properties of a feature.
+   *
+   * @param featureId The feature
+   * @return The flyweight
+   */
+  public Feature feature(int featureId) {
+    return new Feature(featureId);
+  }
+
+  /** Read access to the properties of one feature. Nothing is decoded until it is asked for. */
+  public final class Feature {
+    private final int id;
+
+    private Feature(int id) {
+      this.id = id;
+    }
+
+    /**
+     * Check whether the feature has a properties object at all.
+     *
+     * @return true if it has properties
+     */
+    public boolean hasProperties() {
+      return (flags.get(id) & HAS_PROPERTIES) != 0;
+    }
+
+    /**
+     * Get the city of the feature.
+     *
+     * @return The city, or null if it has none
+     */
+    public String city() {
+      return cities.string(id);
+    }
+
+    /**
+     * Get the HOLC grade of the feature.
+     *
+     * @return The grade, or null if it has none
+     */
+    public String holcGrade() {
+      return grades.string(id);
+    }
+
+    /**
+     * Get the number of area description entries of the feature.
+     *
+     * @return The number of entries
+     */
+    public int descriptionCount() {
+      return descriptionOffsets.get(id + 1) - descriptionOffsets.get(id);
+    }
+
+    /**
+     * Get the key of an area description entry.
+     *
+     * @param index The entry, from 0 to {@link #descriptionCount()} - 1
+     * @return The key
+     */
+    public String descriptionKey(int index) {
+      return descriptionKeys.string(descriptionOffsets.get(id) + index);
+    }
+
+    /**
+     * Get the value of an area description entry.
+     *
+     * @param index The entry, from 0 to {@link #descriptionCount()} - 1
+     * @return The value, or null if it is null in the data
+     */
+    public String descriptionValue(int index) {
+      return descriptionValues.string(descriptionOffsets.get(id) + index);
+    }
+
+    /**
+     * Check if any area description value contains a keyword, ignoring case.
+     *
+     * @param keyword The lowercased keyword
+     * @return true if a value contains the keyword
+     */
+    public boolean descriptionContains(String keyword) {
+      for (int i = 0; i < descriptionCount(); i++) {
+        String value = descriptionValue(i);
+        if (value != null && value.toLowerCase().contains(keyword)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Decode the area description into a map, in its original order.
+     *
+     * @return The area description, or null if the feature has none
+     */
+    public Map<String, String> descriptions() {
+      if ((flags.get(id) & HAS_DESCRIPTIONS) == 0) {
+        return null;
+      }
+      Map<String, String> descriptions = new LinkedHashMap<>();
+      for (int i = 0; i < descriptionCount(); i++) {
+        descriptions.put(descriptionKey(i), descriptionValue(i));
+      }
+      return descriptions;
+    }
+  }
+}
@@ -21,6 +21,7 @@ public class GeoJsonObject {
     public String type;
     // Coordinates structure for MultiPolygon:
     // MultiPolygon -> Polygon -> LinearRing -> Point (longitude, latitude)
+    // GeoJsonParser streams these straight into a PackedGeometry and leaves this null
     public List<List<List<List<Double>>>> coordinates;
   }
 
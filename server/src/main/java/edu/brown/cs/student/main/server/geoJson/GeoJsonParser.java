@@ -1,18 +1,31 @@
 package edu.brown.cs.student.main.server.geoJson;
 
 import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonReader;
 import com.squareup.moshi.Moshi;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import okio.BufferedSource;
+import okio.Okio;
 
 /** Parser for GeoJSON data. */
 public class GeoJsonParser {
   private final Path filePath;
-  private GeoJsonObject geoJsonData;
+  private FeatureStore features;
+  private PackedGeometry geometry;
+  private FeatureEnvelopes envelopes;
+  private SpatialIndex spatialIndex;
+  private FeatureFragments fragments;
+  private GeobufFragments geobufFragments;
+  private SearchIndex searchIndex;
   private final Moshi moshi;
-  private final JsonAdapter<GeoJsonObject> adapter;
+  private final JsonAdapter<GeoJsonObject.Properties> propertiesAdapter;
+  private final GeoJsonWriter writer;
+  private final GeobufWriter geobufWriter;
 
   /**
    * Constructor for the GeoJsonParser.
@@ -20,59 +33,464 @@ public class GeoJsonParser {
    * @param filePath Path to the GeoJSON file
    */
   public GeoJsonParser(Path filePath) {
+    this(filePath, null);
+  }
+
+  /**
+   * Constructor for the GeoJsonParser that keeps a {@link DatasetSnapshot} of the loaded data. If
+   * the snapshot was written for the current contents of the file it is loaded instead of the file;
+   * otherwise the file is parsed and a new snapshot is written for the next start.
+   *
+   * @param filePath Path to the GeoJSON file
+   * @param snapshotPath Path to the snapshot file, or null to always parse the GeoJSON file
+   */
+  public GeoJsonParser(Path filePath, Path snapshotPath) {
+    this(filePath, snapshotPath, true);
+  }
+
+  /**
+   * Load a GeoJSON file, failing if it cannot be read. The constructors instead report the error
+   * and serve an empty dataset, which is right at startup but not when replacing data already being
+   * served.
+   *
+   * @param filePath Path to the GeoJSON file
+   * @param snapshotPath Path to the snapshot file, or null to always parse the GeoJSON file
+   * @return The parser
+   * @throws IOException if the GeoJSON file cannot be read
+   */
+  public static GeoJsonParser load(Path filePath, Path snapshotPath) throws IOException {
+    try {
+      return new GeoJsonParser(filePath, snapshotPath, false);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private GeoJsonParser(Path filePath, Path snapshotPath, boolean lenient) {
     this.filePath = filePath;
     this.moshi = new Moshi.Builder().build();
-    this.adapter = moshi.adapter(GeoJsonObject.class);
-    this.loadData();
+    this.propertiesAdapter = moshi.adapter(GeoJsonObject.Properties.class);
+    this.writer = new GeoJsonWriter(moshi);
+    this.geobufWriter = new GeobufWriter(moshi);
+
+    byte[] sourceHash = snapshotPath == null ? null : this.hashSource();
+    DatasetSnapshot.Contents contents =
+        sourceHash == null ? null : this.loadSnapshot(snapshotPath, sourceHash);
+    if (contents == null) {
+      DatasetSnapshot.Contents parsed = this.parse(lenient);
+      if (sourceHash != null && this.writeSnapshot(snapshotPath, sourceHash, parsed)) {
+        // Serve from the snapshot just written so the parsed copy on the heap can be collected
+        contents = this.loadSnapshot(snapshotPath, sourceHash);
+      }
+      if (contents == null) {
+        contents = this.moveOffHeap(parsed);
+      }
+    }
+
+    this.features = contents.features;
+    this.geometry = contents.geometry;
+    this.envelopes = contents.envelopes;
+    this.spatialIndex = contents.spatialIndex;
+    this.searchIndex = contents.searchIndex;
+    this.fragments = contents.fragments;
+    this.geobufFragments = contents.geobufFragments;
   }
 
-  /** Load the GeoJSON data from the file. */
-  private void loadData() {
+  /**
+   * Parse the GeoJSON file and build everything served from it. The results are on the heap.
+   *
+   * @param lenient Whether a file that cannot be read gives an empty dataset rather than an error
+   * @return The dataset
+   */
+  private DatasetSnapshot.Contents parse(boolean lenient) {
+    DatasetSnapshot.Contents contents = new DatasetSnapshot.Contents();
+    GeoJsonObject data = this.loadData(contents, lenient);
+    contents.features = FeatureStore.of(data.features);
+    this.buildSpatialIndex(contents);
+    this.buildDetailLevels(data, contents);
+    contents.searchIndex = new SearchIndex(contents.features);
+    return contents;
+  }
+
+  /**
+   * Hash the GeoJSON file, which identifies the snapshot written for it.
+   *
+   * @return The hash, or null if the file cannot be read
+   */
+  private byte[] hashSource() {
     try {
-      // Read the file content
-      FileReader jsonReader = new FileReader(filePath.toFile());
-      BufferedReader br = new BufferedReader(jsonReader);
-      StringBuilder fileStringBuilder = new StringBuilder();
-      String line;
-      while ((line = br.readLine()) != null) {
-        fileStringBuilder.append(line);
-      }
-      jsonReader.close();
+      return DatasetSnapshot.hash(filePath);
+    } catch (IOException e) {
+      System.err.println("Error hashing GeoJSON data: " + e.getMessage());
+      return null;
+    }
+  }
 
-      // Parse JSON to GeoJsonObject
-      String fileString = fileStringBuilder.toString();
-      this.geoJsonData = adapter.fromJson(fileString);
+  /**
+   * Load everything from a snapshot of the GeoJSON file.
+   *
+   * @param snapshotPath Path to the snapshot file
+   * @param sourceHash Hash of the GeoJSON file
+   * @return The dataset, or null if the file has to be parsed
+   */
+  private DatasetSnapshot.Contents loadSnapshot(Path snapshotPath, byte[] sourceHash) {
+    DatasetSnapshot.Contents contents;
+    try {
+      contents = DatasetSnapshot.read(snapshotPath, sourceHash, geobufWriter);
+    } catch (IOException | RuntimeException e) {
+      // A corrupt or truncated snapshot is only a cache miss
+      System.err.println("Error loading dataset snapshot: " + e);
+      return null;
+    }
+    if (contents == null) {
+      System.out.println("No up-to-date dataset snapshot at " + snapshotPath);
+      return null;
+    }
+    System.out.println("Loaded dataset snapshot with " + contents.features.size() + " features");
+    return contents;
+  }
+
+  /**
+   * Write a snapshot of everything built from the GeoJSON file. The data is already loaded, so a
+   * failure here is reported and otherwise ignored.
+   *
+   * @param snapshotPath Path to the snapshot file
+   * @param sourceHash Hash of the GeoJSON file
+   * @param contents The dataset
+   * @return true if the snapshot was written
+   */
+  private boolean writeSnapshot(
+      Path snapshotPath, byte[] sourceHash, DatasetSnapshot.Contents contents) {
+    try {
+      DatasetSnapshot.write(snapshotPath, sourceHash, contents);
+      System.out.println("Wrote dataset snapshot to " + snapshotPath);
+      return true;
+    } catch (IOException e) {
+      System.err.println("Error writing dataset snapshot: " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Move a parsed dataset into direct memory when there is no snapshot file to map it from. If that
+   * fails the dataset stays on the heap, which serves the same responses.
+   *
+   * @param contents The dataset, on the heap
+   * @return The dataset, in direct memory if possible
+   */
+  private DatasetSnapshot.Contents moveOffHeap(DatasetSnapshot.Contents contents) {
+    try {
+      return DatasetSnapshot.copyOffHeap(contents, geobufWriter);
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Error moving dataset off the heap: " + e);
+      return contents;
+    }
+  }
+
+  /**
+   * Load the GeoJSON data from the file. The file is streamed through a {@link JsonReader} one
+   * feature at a time: coordinates go straight into a {@link PackedGeometry.Builder} and never
+   * exist as a String or as nested lists, so peak memory stays close to the size of the packed
+   * data.
+   *
+   * @param contents The dataset, which receives the packed geometry
+   * @param lenient Whether a file that cannot be read gives an empty dataset rather than an error
+   * @return The features, without their coordinates
+   * @throws UncheckedIOException if the file cannot be read and lenient is false
+   */
+  private GeoJsonObject loadData(DatasetSnapshot.Contents contents, boolean lenient) {
+    GeoJsonObject data = new GeoJsonObject();
+    data.features = new ArrayList<>();
+    PackedGeometry.Builder geometryBuilder = new PackedGeometry.Builder();
+
+    try (BufferedSource source = Okio.buffer(Okio.source(filePath.toFile()));
+        JsonReader reader = JsonReader.of(source)) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case "type":
+            data.type = reader.nextString();
+            break;
+          case "features":
+            reader.beginArray();
+            while (reader.hasNext()) {
+              data.features.add(readFeature(reader, geometryBuilder));
+            }
+            reader.endArray();
+            break;
+          default:
+            reader.skipValue();
+        }
+      }
+      reader.endObject();
 
+      contents.geometry = geometryBuilder.build();
       System.out.println(
-          "Successfully loaded GeoJSON data with "
-              + (geoJsonData != null && geoJsonData.features != null
-                  ? geoJsonData.features.size()
-                  : 0)
-              + " features");
+          "Successfully loaded GeoJSON data with " + data.features.size() + " features");
     } catch (IOException e) {
+      if (!lenient) {
+        throw new UncheckedIOException(e);
+      }
       System.err.println("Error loading GeoJSON data: " + e.getMessage());
       e.printStackTrace();
-      this.geoJsonData = new GeoJsonObject();
-      this.geoJsonData.features = java.util.Collections.emptyList();
+      data.features = Collections.emptyList();
+      contents.geometry = new PackedGeometry.Builder().build();
     }
+    return data;
+  }
+
+  /**
+   * Read one feature object. Its coordinates are appended to the geometry builder, and the returned
+   * feature only keeps its type, geometry type and properties.
+   *
+   * @param reader The reader, positioned at the start of a feature object
+   * @param geometryBuilder The builder receiving the feature's coordinates
+   * @return The feature without coordinates
+   * @throws IOException if the JSON is malformed
+   */
+  private GeoJsonObject.Feature readFeature(
+      JsonReader reader, PackedGeometry.Builder geometryBuilder) throws IOException {
+    GeoJsonObject.Feature feature = new GeoJsonObject.Feature();
+    geometryBuilder.startFeature(null);
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "type":
+          feature.type = reader.nextString();
+          break;
+        case "geometry":
+          if (reader.peek() == JsonReader.Token.NULL) {
+            reader.nextNull();
+          } else {
+            feature.geometry = readGeometry(reader, geometryBuilder);
+          }
+          break;
+        case "properties":
+          feature.properties = propertiesAdapter.fromJson(reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return feature;
+  }
+
+  /**
+   * Read a MultiPolygon geometry object into the geometry builder.
+   *
+   * @param reader The reader, positioned at the start of a geometry object
+   * @param geometryBuilder The builder receiving the coordinates
+   * @return The geometry, with only its type set
+   * @throws IOException if the JSON is malformed
+   */
+  private GeoJsonObject.Geometry readGeometry(
+      JsonReader reader, PackedGeometry.Builder geometryBuilder) throws IOException {
+    GeoJsonObject.Geometry geometry = new GeoJsonObject.Geometry();
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "type":
+          geometry.type = reader.nextString();
+          break;
+        case "coordinates":
+          if (reader.peek() == JsonReader.Token.NULL) {
+            reader.nextNull();
+          } else {
+            readMultiPolygon(reader, geometryBuilder);
+          }
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    // The type may come after the coordinates, so it is recorded once the whole object is read
+    geometryBuilder.setType(geometry.type);
+    return geometry;
+  }
+
+  /**
+   * Read MultiPolygon coordinates (MultiPolygon -> Polygon -> LinearRing -> Point) into the
+   * geometry builder.
+   *
+   * @param reader The reader, positioned at the start of the coordinates array
+   * @param geometryBuilder The builder receiving the coordinates
+   * @throws IOException if the JSON is malformed
+   */
+  private void readMultiPolygon(JsonReader reader, PackedGeometry.Builder geometryBuilder)
+      throws IOException {
+    reader.beginArray();
+    while (reader.hasNext()) {
+      geometryBuilder.startPolygon();
+      reader.beginArray();
+      while (reader.hasNext()) {
+        geometryBuilder.startRing();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          // GeoJSON uses [longitude, latitude] order
+          reader.beginArray();
+          double lng = reader.nextDouble();
+          double lat = reader.nextDouble();
+          while (reader.hasNext()) {
+            // Skip altitude or any other extra position values
+            reader.skipValue();
+          }
+          reader.endArray();
+          geometryBuilder.addPoint(lng, lat);
+        }
+        reader.endArray();
+      }
+      reader.endArray();
+    }
+    reader.endArray();
+  }
+
+  /**
+   * Compute the envelope of every feature and build the spatial index over them. Feature ids are
+   * positions in the parsed feature list.
+   *
+   * @param contents The dataset, which receives the envelopes and the index
+   */
+  private void buildSpatialIndex(DatasetSnapshot.Contents contents) {
+    contents.envelopes = new FeatureEnvelopes(contents.geometry);
+    contents.spatialIndex = new SpatialIndex(contents.envelopes);
+  }
+
+  /**
+   * Simplify the geometry for every level of detail and serialize the features at each of them, as
+   * GeoJSON and as Geobuf. Coarser levels are simplified from the full-resolution geometry, not
+   * from the level before, so their errors do not add up.
+   *
+   * @param data The features
+   * @param contents The dataset, which receives the fragments
+   */
+  private void buildDetailLevels(GeoJsonObject data, DatasetSnapshot.Contents contents) {
+    PackedGeometry geometry = contents.geometry;
+    PackedGeometry[] levels = new PackedGeometry[DetailLevels.count()];
+    levels[0] = geometry;
+    for (int level = 1; level < levels.length; level++) {
+      levels[level] = GeometrySimplifier.simplify(geometry, DetailLevels.tolerance(level));
+      System.out.println(
+          "Detail level "
+              + level
+              + " keeps "
+              + levels[level].pointCount()
+              + " of "
+              + geometry.pointCount()
+              + " points");
+    }
+    contents.fragments = new FeatureFragments(data, levels, writer);
+    contents.geobufFragments = new GeobufFragments(data, levels, geobufWriter);
+  }
+
+  /**
+   * Get the properties of the features. They are kept in a {@link FeatureStore} outside the heap;
+   * the coordinates of the features are in {@link #getGeometry()}.
+   *
+   * @return The feature store
+   */
+  public FeatureStore getData() {
+    return this.features;
+  }
+
+  /**
+   * Get the packed geometry of the features returned by {@link #getData()}.
+   *
+   * @return The packed geometry
+   */
+  public PackedGeometry getGeometry() {
+    return this.geometry;
+  }
+
+  /**
+   * Get the envelopes of the features returned by {@link #getData()}.
+   *
+   * @return The feature envelopes
+   */
+  public FeatureEnvelopes getEnvelopes() {
+    return this.envelopes;
+  }
+
+  /**
+   * Get the spatial index over the features returned by {@link #getData()}.
+   *
+   * @return The spatial index
+   */
+  public SpatialIndex getSpatialIndex() {
+    return this.spatialIndex;
+  }
+
+  /**
+   * Get the full-text index over the area descriptions of the features returned by {@link
+   * #getData()}.
+   *
+   * @return The search index
+   */
+  public SearchIndex getSearchIndex() {
+    return this.searchIndex;
+  }
+
+  /**
+   * Find the features inside a bounding box. The spatial index narrows the search down to features
+   * whose envelope overlaps the box, and the precomputed envelopes decide containment without
+   * looking at any coordinates.
+   *
+   * @param minLat Minimum latitude
+   * @param minLng Minimum longitude
+   * @param maxLat Maximum latitude
+   * @param maxLng Maximum longitude
+   * @return The ids of the features fully contained in the bounding box, in dataset order
+   */
+  public int[] featuresInBox(double minLat, double minLng, double maxLat, double maxLng) {
+    int[] candidates = spatialIndex.search(minLng, minLat, maxLng, maxLat);
+
+    int count = 0;
+    int[] featureIds = new int[candidates.length];
+    for (int featureId : candidates) {
+      // A feature is fully inside the box exactly when its envelope is
+      if (envelopes.isContainedIn(featureId, minLat, minLng, maxLat, maxLng)) {
+        featureIds[count++] = featureId;
+      }
+    }
+
+    return Arrays.copyOf(featureIds, count);
+  }
+
+  /**
+   * Convert a subset of the features to a GeoJSON FeatureCollection. The result is assembled from
+   * JSON fragments serialized once at load time, so no feature is serialized again.
+   *
+   * @param featureIds The ids (positions in {@link #getData()}) of the features to include
+   * @return UTF-8 bytes of the JSON representation
+   */
+  public byte[] toJsonBytes(int[] featureIds) {
+    return toJsonBytes(featureIds, 0);
   }
 
   /**
-   * Get the GeoJSON data.
+   * Convert a subset of the features to a GeoJSON FeatureCollection at a level of detail.
    *
-   * @return The GeoJSON data
+   * @param featureIds The ids (positions in {@link #getData()}) of the features to include
+   * @param level The level of detail, 0 for full resolution; see {@link DetailLevels}
+   * @return UTF-8 bytes of the JSON representation
    */
-  public GeoJsonObject getData() {
-    return this.geoJsonData;
+  public byte[] toJsonBytes(int[] featureIds, int level) {
+    return fragments.collection(featureIds, level);
   }
 
   /**
-   * Convert a GeoJsonObject to a JSON string.
+   * Convert a subset of the features to a FeatureCollection in the Geobuf binary format, assembled
+   * from fragments encoded at load time.
    *
-   * @param data The GeoJsonObject to convert
-   * @return JSON string representation
+   * @param featureIds The ids (positions in {@link #getData()}) of the features to include
+   * @param level The level of detail, 0 for full resolution; see {@link DetailLevels}
+   * @return The Geobuf-encoded collection
    */
-  public String toJson(GeoJsonObject data) {
-    return adapter.toJson(data);
+  public byte[] toGeobufBytes(int[] featureIds, int level) {
+    return geobufFragments.collection(featureIds, level);
   }
 }
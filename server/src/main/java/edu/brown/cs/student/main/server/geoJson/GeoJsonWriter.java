@@ -0,0 +1,144 @@
+package edu.brown.cs.student.main.server.geoJson;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonWriter;
+import com.squareup.moshi.Moshi;
+import java.io.IOException;
+import java.util.Arrays;
+import okio.Buffer;
+
+/**
+ * Serializes features to GeoJSON, reading their coordinates from a {@link PackedGeometry} rather
+ * than from {@link GeoJsonObject.Geometry#coordinates}.
+ */
+public class GeoJsonWriter {
+  private final JsonAdapter<GeoJsonObject.Properties> propertiesAdapter;
+
+  /**
+   * Constructor for the GeoJsonWriter.
+   *
+   * @param moshi The Moshi instance used to serialize feature properties
+   */
+  public GeoJsonWriter(Moshi moshi) {
+    this.propertiesAdapter = moshi.adapter(GeoJsonObject.Properties.class);
+  }
+
+  /**
+   * Serialize the opening of a FeatureCollection, up to and including the {@code [} of its features
+   * array. Appending feature objects separated by commas and then {@code ]}} gives a complete
+   * collection.
+   *
+   * @param type The type of the collection
+   * @return UTF-8 bytes of the opening of the collection
+   */
+  public byte[] collectionPrefix(String type) {
+    Buffer buffer = new Buffer();
+    try (JsonWriter writer = JsonWriter.of(buffer)) {
+      writer.beginObject();
+      writer.name("type").value(type);
+      writer.name("features").beginArray();
+      writer.endArray();
+      writer.endObject();
+    } catch (IOException e) {
+      // Writing to an in-memory buffer does not fail
+      throw new IllegalStateException(e);
+    }
+
+    // Drop the closing "]}" of the empty collection
+    byte[] emptyCollection = buffer.readByteArray();
+    return Arrays.copyOf(emptyCollection, emptyCollection.length - 2);
+  }
+
+  /**
+   * Serialize the start of a feature: its type and geometry, with the object left open. Appending
+   * the output of {@link #featureTail} gives the complete Feature object, so the same tail can
+   * follow the geometry at every level of detail.
+   *
+   * @param data The GeoJSON data the feature id refers to
+   * @param geometry The packed geometry of the features
+   * @param featureId The feature to serialize
+   * @return UTF-8 bytes of the start of the feature object
+   */
+  public byte[] featureHead(GeoJsonObject data, PackedGeometry geometry, int featureId) {
+    Buffer buffer = new Buffer();
+    try (JsonWriter writer = JsonWriter.of(buffer)) {
+      writer.beginObject();
+      writer.name("type").value(data.features.get(featureId).type);
+      writeGeometry(writer, geometry, featureId);
+      writer.endObject();
+    } catch (IOException e) {
+      // Writing to an in-memory buffer does not fail
+      throw new IllegalStateException(e);
+    }
+
+    // Drop the closing "}"
+    byte[] feature = buffer.readByteArray();
+    return Arrays.copyOf(feature, feature.length - 1);
+  }
+
+  /**
+   * Serialize the end of a feature that follows its {@link #featureHead}: the properties and the
+   * closing brace.
+   *
+   * @param feature The feature
+   * @param afterMember Whether the head holds any member, so the properties need a comma before
+   * @return UTF-8 bytes of the end of the feature object
+   */
+  public byte[] featureTail(GeoJsonObject.Feature feature, boolean afterMember) {
+    if (feature.properties == null) {
+      return new byte[] {'}'};
+    }
+    Buffer buffer = new Buffer();
+    try (JsonWriter writer = JsonWriter.of(buffer)) {
+      writer.beginObject();
+      writer.name("properties");
+      propertiesAdapter.toJson(writer, feature.properties);
+      writer.endObject();
+    } catch (IOException e) {
+      // Writing to an in-memory buffer does not fail
+      throw new IllegalStateException(e);
+    }
+
+    // Turn the opening "{" of the properties object into the separator the head needs
+    byte[] tail = buffer.readByteArray();
+    if (afterMember) {
+      tail[0] = ',';
+      return tail;
+    }
+    return Arrays.copyOfRange(tail, 1, tail.length);
+  }
+
+  /**
+   * Write the geometry member of a feature, if it has a geometry.
+   *
+   * @param writer The writer to write to
+   * @param geometry The packed geometry of the features
+   * @param featureId The feature whose geometry to write
+   * @throws IOException if the writer fails
+   */
+  private void writeGeometry(JsonWriter writer, PackedGeometry geometry, int featureId)
+      throws IOException {
+    if (geometry.type(featureId) == null) {
+      return;
+    }
+    writer.name("geometry").beginObject();
+    writer.name("type").value(geometry.type(featureId));
+    writer.name("coordinates").beginArray();
+    for (int polygon = geometry.firstPolygon(featureId);
+        polygon < geometry.endPolygon(featureId);
+        polygon++) {
+      writer.beginArray();
+      for (int ring = geometry.firstRing(polygon); ring < geometry.endRing(polygon); ring++) {
+        writer.beginArray();
+        for (int point = geometry.firstPoint(ring); point < geometry.endPoint(ring); point++) {
+          // GeoJSON uses [longitude, latitude] order
+          writer.beginArray().value(geometry.lng(point)).value(geometry.lat(point)).endArray();
+        }
+        writer.endArray();
+      }
+      writer.endArray();
+    }
+    writer.endArray();
+    writer.endObject();
+  }
+}
@@ -0,0 +1,115 @@
+package edu.brown.cs.student.main.server.geoJson;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The Geobuf encoding of every feature, built once when the data is loaded, in the same way as
+ * {@link FeatureFragments}: a response is the Data message prefix followed by the encoded features
+ * that were selected. Geometry is encoded once per level of detail and properties once per feature,
+ * and like there the parts are packed into {@link PackedBytes}.
+ */
+public class GeobufFragments {
+  private final GeobufWriter writer;
+  // heads[level][featureId] holds the geometry field of the feature
+  private final PackedBytes[] heads;
+  // tails[featureId] holds the property values and key/value pairs of the feature
+  private final PackedBytes tails;
+
+  /**
+   * Encode every feature.
+   *
+   * @param data The GeoJSON data
+   * @param levels The packed geometry of the features at each level of detail, full detail first
+   * @param writer The writer used to encode each feature
+   */
+  public GeobufFragments(GeoJsonObject data, PackedGeometry[] levels, GeobufWriter writer) {
+    int featureCount = data.features.size();
+    this.writer = writer;
+    byte[][][] heads = new byte[levels.length][featureCount][];
+    byte[][] tails = new byte[featureCount][];
+    for (int level = 0; level < levels.length; level++) {
+      for (int i = 0; i < featureCount; i++) {
+        heads[level][i] = writer.featureHead(levels[level], i);
+      }
+    }
+    for (int i = 0; i < featureCount; i++) {
+      tails[i] = writer.featureTail(data.features.get(i));
+    }
+    this.heads = new PackedBytes[levels.length];
+    for (int level = 0; level < levels.length; level++) {
+      this.heads[level] = PackedBytes.of(heads[level]);
+    }
+    this.tails = PackedBytes.of(tails);
+  }
+
+  private GeobufFragments(GeobufWriter writer, PackedBytes[] heads, PackedBytes tails) {
+    this.writer = writer;
+    this.heads = heads;
+    this.tails = tails;
+  }
+
+  /**
+   * Write the fragments to a {@link DatasetSnapshot}.
+   *
+   * @param out The snapshot being written
+   * @throws IOException if writing fails
+   */
+  void write(DataOutputStream out) throws IOException {
+    out.writeInt(heads.length);
+    for (PackedBytes levelHeads : heads) {
+      levelHeads.write(out);
+    }
+    tails.write(out);
+  }
+
+  /**
+   * Read fragments written by {@link #write}. They stay in the buffer.
+   *
+   * @param buffer The snapshot, positioned at the fragments
+   * @param writer The writer that encodes the collection and feature prefixes
+   * @return The fragments
+   */
+  static GeobufFragments read(ByteBuffer buffer, GeobufWriter writer) {
+    PackedBytes[] heads = new PackedBytes[buffer.getInt()];
+    for (int level = 0; level < heads.length; level++) {
+      heads[level] = PackedBytes.read(buffer);
+    }
+    return new GeobufFragments(writer, heads, PackedBytes.read(buffer));
+  }
+
+  /**
+   * Assemble a Geobuf FeatureCollection out of the prebuilt fragments of some features.
+   *
+   * @param featureIds The ids of the features to include
+   * @param level The level of detail of the geometry
+   * @return The encoded Data message
+   */
+  public byte[] collection(int[] featureIds, int level) {
+    PackedBytes levelHeads = heads[level];
+
+    // Every feature is prefixed with its tag and length, which depend on its size
+    byte[][] featurePrefixes = new byte[featureIds.length][];
+    long collectionLength = 0;
+    for (int i = 0; i < featureIds.length; i++) {
+      int featureLength = levelHeads.length(featureIds[i]) + tails.length(featureIds[i]);
+      featurePrefixes[i] = writer.featurePrefix(featureLength);
+      collectionLength += featurePrefixes[i].length + featureLength;
+    }
+
+    byte[] prefix = writer.collectionPrefix(collectionLength);
+    byte[] result = new byte[Math.toIntExact(prefix.length + collectionLength)];
+    System.arraycopy(prefix, 0, result, 0, prefix.length);
+    int position = prefix.length;
+    for (int i = 0; i < featureIds.length; i++) {
+      System.arraycopy(featurePrefixes[i], 0, result, position, featurePrefixes[i].length);
+      position += featurePrefixes[i].length;
+      levelHeads.copyTo(featureIds[i], result, position);
+      position += levelHeads.length(featureIds[i]);
+      tails.copyTo(featureIds[i], result, position);
+      position += tails.length(featureIds[i]);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,215 @@
+package edu.brown.cs.student.main.server.geoJson;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import java.util.Map;
+import okio.Buffer;
+
+/**
+ * Serializes features in the Geobuf format (https://github.com/mapbox/geobuf), a protocol buffers
+ * encoding of GeoJSON that the geobuf JavaScript library decodes back into GeoJSON. Coordinates are
+ * quantized to integers with {@link #PRECISION} decimal places and delta-encoded along each ring as
+ * zigzag varints, so a vertex usually takes four bytes instead of some thirty characters of JSON.
+ * Property keys are stored once per response in a dictionary and referenced by index.
+ *
+ * <p>Like {@link GeoJsonWriter}, each feature is serialized as a head holding its geometry and a
+ * tail holding its properties, which {@link GeobufFragments} puts together.
+ */
+public class GeobufWriter {
+  /** Number of decimal places kept of each coordinate, about 10 cm. */
+  public static final int PRECISION = 6;
+
+  /** Property keys in dictionary order; a feature refers to them by their index. */
+  private static final String[] KEYS = {"city", "holc_grade", "area_description_data"};
+
+  // Geometry type number of MultiPolygon in the Geobuf schema
+  private static final int MULTIPOLYGON = 5;
+
+  // Protocol buffers wire types
+  private static final int VARINT = 0;
+  private static final int LENGTH_DELIMITED = 2;
+
+  private static final double SCALE = Math.pow(10, PRECISION);
+
+  private final JsonAdapter<Map<String, String>> descriptionAdapter;
+
+  /**
+   * Constructor for the GeobufWriter.
+   *
+   * @param moshi The Moshi instance used to serialize nested property objects
+   */
+  public GeobufWriter(Moshi moshi) {
+    this.descriptionAdapter =
+        moshi.adapter(Types.newParameterizedType(Map.class, String.class, String.class));
+  }
+
+  /**
+   * Serialize the start of a Data message holding a FeatureCollection: the key dictionary, the
+   * precision and the tag and length of the collection. The encoded features of the collection
+   * follow it.
+   *
+   * @param collectionLength Length in bytes of the encoded features that follow
+   * @return The start of the message
+   */
+  public byte[] collectionPrefix(long collectionLength) {
+    Buffer buffer = new Buffer();
+    for (String key : KEYS) {
+      writeTag(buffer, 1, LENGTH_DELIMITED);
+      writeString(buffer, key);
+    }
+    writeTag(buffer, 3, VARINT);
+    writeVarint(buffer, PRECISION);
+    writeTag(buffer, 4, LENGTH_DELIMITED);
+    writeVarint(buffer, collectionLength);
+    return buffer.readByteArray();
+  }
+
+  /**
+   * Serialize the tag and length that start a feature inside a FeatureCollection.
+   *
+   * @param featureLength Length in bytes of the feature's head and tail together
+   * @return The tag and length
+   */
+  public byte[] featurePrefix(int featureLength) {
+    Buffer buffer = new Buffer();
+    writeTag(buffer, 1, LENGTH_DELIMITED);
+    writeVarint(buffer, featureLength);
+    return buffer.readByteArray();
+  }
+
+  /**
+   * Serialize the geometry field of a feature. Rings are closed in GeoJSON, so their repeated last
+   * point is left out; Geobuf decoders put it back.
+   *
+   * @param geometry The packed geometry of the features
+   * @param featureId The feature to serialize
+   * @return The encoded geometry field, or no bytes if the feature has no geometry
+   */
+  public byte[] featureHead(PackedGeometry geometry, int featureId) {
+    if (geometry.type(featureId) == null) {
+      return new byte[0];
+    }
+
+    Buffer lengths = new Buffer();
+    Buffer coords = new Buffer();
+    int firstPolygon = geometry.firstPolygon(featureId);
+    int endPolygon = geometry.endPolygon(featureId);
+    writeVarint(lengths, endPolygon - firstPolygon);
+    for (int polygon = firstPolygon; polygon < endPolygon; polygon++) {
+      writeVarint(lengths, geometry.endRing(polygon) - geometry.firstRing(polygon));
+      for (int ring = geometry.firstRing(polygon); ring < geometry.endRing(polygon); ring++) {
+        int first = geometry.firstPoint(ring);
+        int end = geometry.endPoint(ring);
+        if (end - first > 1
+            && geometry.lng(first) == geometry.lng(end - 1)
+            && geometry.lat(first) == geometry.lat(end - 1)) {
+          end--;
+        }
+        writeVarint(lengths, end - first);
+        // Deltas start over on every ring
+        long lastX = 0;
+        long lastY = 0;
+        for (int point = first; point < end; point++) {
+          long x = Math.round(geometry.lng(point) * SCALE);
+          long y = Math.round(geometry.lat(point) * SCALE);
+          writeSignedVarint(coords, x - lastX);
+          writeSignedVarint(coords, y - lastY);
+          lastX = x;
+          lastY = y;
+        }
+      }
+    }
+
+    Buffer message = new Buffer();
+    writeTag(message, 1, VARINT);
+    writeVarint(message, MULTIPOLYGON);
+    // A single polygon with a single ring needs no lengths; decoders take all coordinates
+    if (endPolygon - firstPolygon != 1
+        || geometry.endRing(firstPolygon) - geometry.firstRing(firstPolygon) != 1) {
+      writeTag(message, 2, LENGTH_DELIMITED);
+      writeVarint(message, lengths.size());
+      message.write(lengths, lengths.size());
+    }
+    writeTag(message, 3, LENGTH_DELIMITED);
+    writeVarint(message, coords.size());
+    message.write(coords, coords.size());
+
+    Buffer field = new Buffer();
+    writeTag(field, 1, LENGTH_DELIMITED);
+    writeVarint(field, message.size());
+    field.write(message, message.size());
+    return field.readByteArray();
+  }
+
+  /**
+   * Serialize the property values of a feature and the key/value index pairs referring to them.
+   * Null properties are left out, as in the JSON form. The area description is an object, which
+   * Geobuf stores as a JSON value.
+   *
+   * @param feature The feature
+   * @return The encoded values and properties fields
+   */
+  public byte[] featureTail(GeoJsonObject.Feature feature) {
+    if (feature.properties == null) {
+      return new byte[0];
+    }
+
+    Buffer buffer = new Buffer();
+    Buffer pairs = new Buffer();
+    int valueCount = 0;
+    Object[] values = {
+      feature.properties.city,
+      feature.properties.holc_grade,
+      feature.properties.area_description_data
+    };
+    for (int key = 0; key < values.length; key++) {
+      if (values[key] == null) {
+        continue;
+      }
+      Buffer value = new Buffer();
+      if (values[key] instanceof String) {
+        writeTag(value, 1, LENGTH_DELIMITED);
+        writeString(value, (String) values[key]);
+      } else {
+        writeTag(value, 6, LENGTH_DELIMITED);
+        writeString(value, descriptionAdapter.toJson(feature.properties.area_description_data));
+      }
+      writeTag(buffer, 13, LENGTH_DELIMITED);
+      writeVarint(buffer, value.size());
+      buffer.write(value, value.size());
+
+      writeVarint(pairs, key);
+      writeVarint(pairs, valueCount++);
+    }
+    if (valueCount > 0) {
+      writeTag(buffer, 14, LENGTH_DELIMITED);
+      writeVarint(buffer, pairs.size());
+      buffer.write(pairs, pairs.size());
+    }
+    return buffer.readByteArray();
+  }
+
+  private static void writeTag(Buffer buffer, int field, int wireType) {
+    writeVarint(buffer, (field << 3) | wireType);
+  }
+
+  private static void writeString(Buffer buffer, String value) {
+    Buffer utf8 = new Buffer().writeUtf8(value);
+    writeVarint(buffer, utf8.size());
+    buffer.write(utf8, utf8.size());
+  }
+
+  /** Write a signed value as a zigzag varint, so small negative deltas stay short. */
+  private static void writeSignedVarint(Buffer buffer, long value) {
+    writeVarint(buffer, (value << 1) ^ (value >> 63));
+  }
+
+  private static void writeVarint(Buffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.writeByte((int) value);
+  }
+}
@@ -0,0 +1,293 @@
+package edu.brown.cs.student.main.server.geoJson;
+
+/**
+ * Simplifies packed geometry with the Douglas-Peucker algorithm: a ring keeps only the vertices
+ * that stray more than a tolerance from the line through the vertices kept around them. Every ring
+ * survives simplification with at least three distinct vertices and stays closed, so no polygon or
+ * hole disappears or collapses into a line, however coarse the tolerance.
+ *
+ * <p>Simplifying each ring on its own can make a ring cross itself, a hole cross its shell, or two
+ * polygons of a feature cross each other. Wherever a simplified segment crosses or touches another
+ * segment of the same feature, the removed vertex farthest from it is put back, until no such
+ * segment is left. Rings that were valid therefore stay valid, at the cost of a few more vertices.
+ *
+ * <p>Distances are measured in degrees on the longitude/latitude plane, the same units a map's
+ * pixel size is measured in at a given zoom.
+ */
+public final class GeometrySimplifier {
+  private GeometrySimplifier() {}
+
+  /**
+   * Simplify every ring of every feature.
+   *
+   * @param geometry The geometry to simplify
+   * @param tolerance The largest distance in degrees a removed vertex may be from the result
+   * @return The simplified geometry, with the same features, polygons and rings
+   */
+  public static PackedGeometry simplify(PackedGeometry geometry, double tolerance) {
+    PackedGeometry.Builder builder = new PackedGeometry.Builder();
+    // Scratch space, indexed by point relative to the first point of the feature
+    boolean[] keep = new boolean[0];
+    int[] stack = new int[0];
+
+    for (int featureId = 0; featureId < geometry.featureCount(); featureId++) {
+      int featureFirst = geometry.firstPointOf(featureId);
+      int featureCount = geometry.endPointOf(featureId) - featureFirst;
+      if (featureCount > keep.length) {
+        keep = new boolean[featureCount];
+        stack = new int[2 * featureCount];
+      }
+
+      // Simplify every ring, then put vertices back until no simplified segment crosses another
+      for (int polygon = geometry.firstPolygon(featureId);
+          polygon < geometry.endPolygon(featureId);
+          polygon++) {
+        for (int ring = geometry.firstRing(polygon); ring < geometry.endRing(polygon); ring++) {
+          int first = geometry.firstPoint(ring);
+          int count = geometry.endPoint(ring) - first;
+          markKept(
+              geometry, first, count, tolerance * tolerance, keep, first - featureFirst, stack);
+        }
+      }
+      keepTopology(geometry, featureId, keep, stack);
+
+      builder.startFeature(geometry.type(featureId));
+      for (int polygon = geometry.firstPolygon(featureId);
+          polygon < geometry.endPolygon(featureId);
+          polygon++) {
+        builder.startPolygon();
+        for (int ring = geometry.firstRing(polygon); ring < geometry.endRing(polygon); ring++) {
+          builder.startRing();
+          for (int point = geometry.firstPoint(ring); point < geometry.endPoint(ring); point++) {
+            if (keep[point - featureFirst]) {
+              builder.addPoint(geometry.lng(point), geometry.lat(point));
+            }
+          }
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Mark the vertices of one ring that the simplified ring keeps.
+   *
+   * @param geometry The geometry holding the ring
+   * @param first The first point of the ring
+   * @param count The number of points in the ring
+   * @param toleranceSquared The squared tolerance
+   * @param keep Receives whether each point of the ring is kept, from position offset on
+   * @param offset The position in keep of the first point of the ring
+   * @param stack Scratch space for at least 2 * count ints
+   */
+  private static void markKept(
+      PackedGeometry geometry,
+      int first,
+      int count,
+      double toleranceSquared,
+      boolean[] keep,
+      int offset,
+      int[] stack) {
+    // Rings this small are already as simple as a ring can be
+    if (count <= 4) {
+      for (int i = 0; i < count; i++) {
+        keep[offset + i] = true;
+      }
+      return;
+    }
+    for (int i = 0; i < count; i++) {
+      keep[offset + i] = false;
+    }
+
+    // A closed ring starts and ends on the same point, which gives no line to measure against, so
+    // it is split at the vertex farthest from its start and each half is simplified on its own
+    int last = count - 1;
+    int split = farthestFromPoint(geometry, first, count);
+    keep[offset] = true;
+    keep[offset + split] = true;
+    keep[offset + last] = true;
+
+    int top = 0;
+    stack[top++] = 0;
+    stack[top++] = split;
+    stack[top++] = split;
+    stack[top++] = last;
+    int kept = 3;
+    while (top > 0) {
+      int end = stack[--top];
+      int start = stack[--top];
+      int farthest = -1;
+      double farthestDistance = toleranceSquared;
+      for (int i = start + 1; i < end; i++) {
+        double distance = segmentDistanceSquared(geometry, first, start, end, i);
+        if (distance > farthestDistance) {
+          farthest = i;
+          farthestDistance = distance;
+        }
+      }
+      if (farthest >= 0) {
+        keep[offset + farthest] = true;
+        kept++;
+        stack[top++] = start;
+        stack[top++] = farthest;
+        stack[top++] = farthest;
+        stack[top++] = end;
+      }
+    }
+
+    // Keep the ring a ring: three distinct vertices and the closing point
+    boolean closed = samePoint(geometry, first, first + last);
+    int needed = closed ? 4 : 3;
+    while (kept < needed) {
+      int farthest = -1;
+      double farthestDistance = -1;
+      for (int i = 1; i < last; i++) {
+        if (!keep[offset + i]) {
+          double distance = segmentDistanceSquared(geometry, first, 0, split, i);
+          if (distance > farthestDistance) {
+            farthest = i;
+            farthestDistance = distance;
+          }
+        }
+      }
+      keep[offset + farthest] = true;
+      kept++;
+    }
+  }
+
+  /**
+   * Put removed vertices back until no simplified segment of a feature crosses or touches another
+   * segment of the feature, in its own ring or any other. A segment that was not simplified cannot
+   * be fixed this way, so only simplified segments are checked, against every segment.
+   *
+   * @param geometry The geometry holding the feature
+   * @param featureId The feature
+   * @param keep Whether each point of the feature is kept, updated in place
+   * @param segments Scratch space for at least 2 * the number of points of the feature
+   */
+  private static void keepTopology(
+      PackedGeometry geometry, int featureId, boolean[] keep, int[] segments) {
+    int featureFirst = geometry.firstPointOf(featureId);
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+
+      // The kept segments, as pairs of point indexes
+      int segmentCount = 0;
+      for (int polygon = geometry.firstPolygon(featureId);
+          polygon < geometry.endPolygon(featureId);
+          polygon++) {
+        for (int ring = geometry.firstRing(polygon); ring < geometry.endRing(polygon); ring++) {
+          int previous = -1;
+          for (int point = geometry.firstPoint(ring); point < geometry.endPoint(ring); point++) {
+            if (keep[point - featureFirst]) {
+              if (previous >= 0) {
+                segments[2 * segmentCount] = previous;
+                segments[2 * segmentCount + 1] = point;
+                segmentCount++;
+              }
+              previous = point;
+            }
+          }
+        }
+      }
+
+      for (int s = 0; s < segmentCount; s++) {
+        int start = segments[2 * s];
+        int end = segments[2 * s + 1];
+        if (end - start < 2) {
+          continue;
+        }
+        for (int t = 0; t < segmentCount; t++) {
+          if (t != s && intersect(geometry, start, end, segments[2 * t], segments[2 * t + 1])) {
+            // Put back the vertex the simplified segment strays farthest from
+            int farthest = start + 1;
+            double farthestDistance = -1;
+            for (int i = start + 1; i < end; i++) {
+              double distance = segmentDistanceSquared(geometry, 0, start, end, i);
+              if (distance > farthestDistance) {
+                farthest = i;
+                farthestDistance = distance;
+              }
+            }
+            keep[farthest - featureFirst] = true;
+            changed = true;
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Check whether two segments cross or touch. Segments meeting only at a shared endpoint, as
+   * consecutive segments of a ring do, do not count.
+   */
+  private static boolean intersect(PackedGeometry geometry, int a1, int a2, int b1, int b2) {
+    double o1 = orientation(geometry, a1, a2, b1);
+    double o2 = orientation(geometry, a1, a2, b2);
+    double o3 = orientation(geometry, b1, b2, a1);
+    double o4 = orientation(geometry, b1, b2, a2);
+    if (o1 * o2 < 0 && o3 * o4 < 0) {
+      return true;
+    }
+    // An endpoint of one segment lying on the other, short of its endpoints
+    return (o1 == 0 && liesWithin(geometry, b1, a1, a2))
+        || (o2 == 0 && liesWithin(geometry, b2, a1, a2))
+        || (o3 == 0 && liesWithin(geometry, a1, b1, b2))
+        || (o4 == 0 && liesWithin(geometry, a2, b1, b2));
+  }
+
+  /** Twice the signed area of a triangle: positive if counterclockwise, 0 if collinear. */
+  private static double orientation(PackedGeometry geometry, int a, int b, int c) {
+    return (geometry.lng(b) - geometry.lng(a)) * (geometry.lat(c) - geometry.lat(a))
+        - (geometry.lat(b) - geometry.lat(a)) * (geometry.lng(c) - geometry.lng(a));
+  }
+
+  /** Check whether a point collinear with a segment lies on it, other than at its endpoints. */
+  private static boolean liesWithin(PackedGeometry geometry, int point, int start, int end) {
+    if (samePoint(geometry, point, start) || samePoint(geometry, point, end)) {
+      return false;
+    }
+    return geometry.lng(point) >= Math.min(geometry.lng(start), geometry.lng(end))
+        && geometry.lng(point) <= Math.max(geometry.lng(start), geometry.lng(end))
+        && geometry.lat(point) >= Math.min(geometry.lat(start), geometry.lat(end))
+        && geometry.lat(point) <= Math.max(geometry.lat(start), geometry.lat(end));
+  }
+
+  private static int farthestFromPoint(PackedGeometry geometry, int first, int count) {
+    int farthest = count - 1;
+    double farthestDistance = -1;
+    for (int i = 1; i < count - 1; i++) {
+      double dx = geometry.lng(first + i) - geometry.lng(first);
+      double dy = geometry.lat(first + i) - geometry.lat(first);
+      double distance = dx * dx + dy * dy;
+      if (distance > farthestDistance) {
+        farthest = i;
+        farthestDistance = distance;
+      }
+    }
+    return farthest;
+  }
+
+  /** Squared distance of a point from the segment between two others, all indexes in one ring. */
+  private static double segmentDistanceSquared(
+      PackedGeometry geometry, int first, int start, int end, int point) {
+    double x = geometry.lng(first + point);
+    double y = geometry.lat(first + point);
+    double x1 = geometry.lng(first + start);
+    double y1 = geometry.lat(first + start);
+    double dx = geometry.lng(first + end) - x1;
+    double dy = geometry.lat(first + end) - y1;
+    double lengthSquared = dx * dx + dy * dy;
+    double t = lengthSquared == 0 ? 0 : ((x - x1) * dx + (y - y1) * dy) / lengthSquared;
+    t = Math.max(0, Math.min(1, t));
+    double px = x - (x1 + t * dx);
+    double py = y - (y1 + t * dy);
+    return px * px + py * py;
+  }
+
+  private static boolean samePoint(PackedGeometry geometry, int a, int b) {
+    return geometry.lng(a) == geometry.lng(b) && geometry.lat(a) == geometry.lat(b);
+  }
+}
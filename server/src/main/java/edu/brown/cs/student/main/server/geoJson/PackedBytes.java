@@ -0,0 +1,169 @@
+package edu.brown.cs.student.main.server.geoJson;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A list of byte strings stored back to back in one buffer, with the start and length of each entry
+ * in two int buffers. Entries may be null. Built from arrays the buffers are on the heap; read from
+ * a {@link DatasetSnapshot} they are views of the snapshot's memory, so the entries cost no heap at
+ * all.
+ *
+ * <p>Every read uses absolute positions, so one instance can be shared by any number of threads.
+ */
+final class PackedBytes {
+  private final IntBuffer starts;
+  private final IntBuffer lengths;
+  private final ByteBuffer bytes;
+
+  private PackedBytes(IntBuffer starts, IntBuffer lengths, ByteBuffer bytes) {
+    this.starts = starts;
+    this.lengths = lengths;
+    this.bytes = bytes;
+  }
+
+  /**
+   * Pack some byte strings into one buffer.
+   *
+   * @param entries The entries, any of which may be null
+   * @return The packed entries
+   */
+  static PackedBytes of(byte[][] entries) {
+    int[] starts = new int[entries.length];
+    int[] lengths = new int[entries.length];
+    long total = 0;
+    for (int i = 0; i < entries.length; i++) {
+      starts[i] = (int) total;
+      lengths[i] = entries[i] == null ? -1 : entries[i].length;
+      total += entries[i] == null ? 0 : entries[i].length;
+    }
+
+    byte[] bytes = new byte[Math.toIntExact(total)];
+    for (int i = 0; i < entries.length; i++) {
+      if (entries[i] != null) {
+        System.arraycopy(entries[i], 0, bytes, starts[i], lengths[i]);
+      }
+    }
+    return new PackedBytes(IntBuffer.wrap(starts), IntBuffer.wrap(lengths), ByteBuffer.wrap(bytes));
+  }
+
+  /**
+   * Pack some strings as UTF-8.
+   *
+   * @param entries The entries, any of which may be null
+   * @return The packed entries
+   */
+  static PackedBytes ofStrings(String[] entries) {
+    byte[][] encoded = new byte[entries.length][];
+    for (int i = 0; i < entries.length; i++) {
+      encoded[i] = entries[i] == null ? null : entries[i].getBytes(StandardCharsets.UTF_8);
+    }
+    return of(encoded);
+  }
+
+  /**
+   * Write the entries to a {@link DatasetSnapshot}.
+   *
+   * @param out The snapshot being written
+   * @throws IOException if writing fails
+   */
+  void write(DataOutputStream out) throws IOException {
+    DatasetSnapshot.writeInts(out, starts);
+    DatasetSnapshot.writeInts(out, lengths);
+    DatasetSnapshot.writeBytes(out, bytes);
+  }
+
+  /**
+   * Read entries written by {@link #write}. Nothing is copied; the entries stay in the buffer.
+   *
+   * @param buffer The snapshot, positioned at the entries
+   * @return The entries
+   */
+  static PackedBytes read(ByteBuffer buffer) {
+    return new PackedBytes(
+        DatasetSnapshot.intView(buffer),
+        DatasetSnapshot.intView(buffer),
+        DatasetSnapshot.byteView(buffer));
+  }
+
+  /**
+   * Get the number of entries.
+   *
+   * @return The number of entries
+   */
+  int size() {
+    return starts.limit();
+  }
+
+  /**
+   * Get the length of an entry.
+   *
+   * @param i The entry
+   * @return The length in bytes, or -1 if the entry is null
+   */
+  int length(int i) {
+    return lengths.get(i);
+  }
+
+  /**
+   * Copy an entry into an array.
+   *
+   * @param i The entry, which must not be null
+   * @param target The array to copy into
+   * @param offset The position in the array of the first byte
+   */
+  void copyTo(int i, byte[] target, int offset) {
+    bytes.get(starts.get(i), target, offset, lengths.get(i));
+  }
+
+  /**
+   * Decode an entry as UTF-8.
+   *
+   * @param i The entry
+   * @return The string, or null if the entry is null
+   */
+  String string(int i) {
+    int length = lengths.get(i);
+    if (length < 0) {
+      return null;
+    }
+    byte[] entry = new byte[length];
+    copyTo(i, entry, 0);
+    return new String(entry, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Read an int from an entry holding big-endian ints.
+   *
+   * @param i The entry
+   * @param index The position of the int within the entry
+   * @return The int
+   */
+  int intAt(int i, int index) {
+    return bytes.getInt(starts.get(i) + index * Integer.BYTES);
+  }
+
+  /**
+   * Compare an entry with a key, byte by byte as unsigned values. For UTF-8 this is the order of
+   * the code points.
+   *
+   * @param i The entry, which must not be null
+   * @param key The key
+   * @return A negative number, zero or a positive number as the entry is less than, equal to or
+   *     greater than the key
+   */
+  int compareTo(int i, byte[] key) {
+    int start = starts.get(i);
+    int length = lengths.get(i);
+    for (int j = 0; j < Math.min(length, key.length); j++) {
+      int difference = Byte.toUnsignedInt(bytes.get(start + j)) - Byte.toUnsignedInt(key[j]);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return length - key.length;
+  }
+}
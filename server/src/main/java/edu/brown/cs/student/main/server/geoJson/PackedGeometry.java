@@ -0,0 +1,275 @@
+package edu.brown.cs.student.main.server.geoJson;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Compact storage for the MultiPolygon geometry of every feature. All points live in one flat array
+ * of interleaved longitude/latitude values, and three offset arrays describe the nesting:
+ *
+ * <ul>
+ *   <li>feature f owns polygons {@code featureOffsets[f]} to {@code featureOffsets[f + 1] - 1}
+ *   <li>polygon p owns rings {@code polygonOffsets[p]} to {@code polygonOffsets[p + 1] - 1}
+ *   <li>ring r owns points {@code ringOffsets[r]} to {@code ringOffsets[r + 1] - 1}
+ * </ul>
+ *
+ * <p>Point i is stored at {@code coordinates[2 * i]} (longitude) and {@code coordinates[2 * i + 1]}
+ * (latitude). This costs 16 bytes per point instead of the boxed {@code List<Double>} per point of
+ * {@link GeoJsonObject.Geometry}. The arrays are held as buffers: built here they wrap heap arrays,
+ * and read from a {@link DatasetSnapshot} they are views of the snapshot's memory.
+ */
+public class PackedGeometry {
+  private final String[] types;
+  private final IntBuffer featureOffsets;
+  private final IntBuffer polygonOffsets;
+  private final IntBuffer ringOffsets;
+  private final DoubleBuffer coordinates;
+
+  private PackedGeometry(Builder builder) {
+    this.types = Arrays.copyOf(builder.types, builder.featureCount);
+    this.featureOffsets =
+        IntBuffer.wrap(Arrays.copyOf(builder.featureOffsets, builder.featureCount + 1));
+    this.polygonOffsets =
+        IntBuffer.wrap(Arrays.copyOf(builder.polygonOffsets, builder.polygonCount + 1));
+    this.ringOffsets = IntBuffer.wrap(Arrays.copyOf(builder.ringOffsets, builder.ringCount + 1));
+    this.coordinates =
+        DoubleBuffer.wrap(Arrays.copyOf(builder.coordinates, builder.pointCount * 2));
+  }
+
+  private PackedGeometry(
+      String[] types,
+      IntBuffer featureOffsets,
+      IntBuffer polygonOffsets,
+      IntBuffer ringOffsets,
+      DoubleBuffer coordinates) {
+    this.types = types;
+    this.featureOffsets = featureOffsets;
+    this.polygonOffsets = polygonOffsets;
+    this.ringOffsets = ringOffsets;
+    this.coordinates = coordinates;
+  }
+
+  /**
+   * Write the geometry to a {@link DatasetSnapshot}.
+   *
+   * @param out The snapshot being written
+   * @throws IOException if writing fails
+   */
+  void write(DataOutputStream out) throws IOException {
+    out.writeInt(types.length);
+    for (String type : types) {
+      DatasetSnapshot.writeString(out, type);
+    }
+    DatasetSnapshot.writeInts(out, featureOffsets);
+    DatasetSnapshot.writeInts(out, polygonOffsets);
+    DatasetSnapshot.writeInts(out, ringOffsets);
+    DatasetSnapshot.writeDoubles(out, coordinates);
+  }
+
+  /**
+   * Read geometry written by {@link #write}. The offsets and coordinates stay in the buffer.
+   *
+   * @param buffer The snapshot, positioned at the geometry
+   * @return The geometry
+   */
+  static PackedGeometry read(ByteBuffer buffer) {
+    String[] types = new String[buffer.getInt()];
+    for (int i = 0; i < types.length; i++) {
+      // Geometry types repeat, so keep one copy of each
+      String type = DatasetSnapshot.readString(buffer);
+      types[i] = type == null ? null : type.intern();
+    }
+    return new PackedGeometry(
+        types,
+        DatasetSnapshot.intView(buffer),
+        DatasetSnapshot.intView(buffer),
+        DatasetSnapshot.intView(buffer),
+        DatasetSnapshot.doubleView(buffer));
+  }
+
+  /**
+   * Get the number of features.
+   *
+   * @return The number of features
+   */
+  public int featureCount() {
+    return types.length;
+  }
+
+  /**
+   * Get the geometry type of a feature.
+   *
+   * @param featureId The feature
+   * @return The geometry type, or null if the feature has no geometry
+   */
+  public String type(int featureId) {
+    return types[featureId];
+  }
+
+  public int firstPolygon(int featureId) {
+    return featureOffsets.get(featureId);
+  }
+
+  public int endPolygon(int featureId) {
+    return featureOffsets.get(featureId + 1);
+  }
+
+  public int firstRing(int polygon) {
+    return polygonOffsets.get(polygon);
+  }
+
+  public int endRing(int polygon) {
+    return polygonOffsets.get(polygon + 1);
+  }
+
+  public int firstPoint(int ring) {
+    return ringOffsets.get(ring);
+  }
+
+  public int endPoint(int ring) {
+    return ringOffsets.get(ring + 1);
+  }
+
+  /**
+   * Get the first point of a feature. The rings of a feature are stored back to back, so its points
+   * form the contiguous range {@code firstPointOf(f)} to {@code endPointOf(f) - 1}.
+   *
+   * @param featureId The feature
+   * @return The index of the feature's first point
+   */
+  public int firstPointOf(int featureId) {
+    return ringOffsets.get(polygonOffsets.get(featureOffsets.get(featureId)));
+  }
+
+  /**
+   * Get the point after the last point of a feature.
+   *
+   * @param featureId The feature
+   * @return The index one past the feature's last point
+   */
+  public int endPointOf(int featureId) {
+    return ringOffsets.get(polygonOffsets.get(featureOffsets.get(featureId + 1)));
+  }
+
+  public double lng(int point) {
+    return coordinates.get(2 * point);
+  }
+
+  public double lat(int point) {
+    return coordinates.get(2 * point + 1);
+  }
+
+  /**
+   * Get the total number of points over all features.
+   *
+   * @return The number of points
+   */
+  public int pointCount() {
+    return coordinates.limit() / 2;
+  }
+
+  /**
+   * Builder that appends features one at a time. Calls must be nested the same way as the geometry:
+   * {@code startFeature}, then for each polygon {@code startPolygon}, then for each ring {@code
+   * startRing} followed by {@code addPoint} calls.
+   */
+  public static class Builder {
+    private String[] types = new String[16];
+    private int[] featureOffsets = new int[17];
+    private int[] polygonOffsets = new int[17];
+    private int[] ringOffsets = new int[17];
+    private double[] coordinates = new double[64];
+    private int featureCount = 0;
+    private int polygonCount = 0;
+    private int ringCount = 0;
+    private int pointCount = 0;
+
+    /**
+     * Start a new feature.
+     *
+     * @param type The geometry type, or null if the feature has no geometry
+     * @return This builder
+     */
+    public Builder startFeature(String type) {
+      if (featureCount == types.length) {
+        types = Arrays.copyOf(types, featureCount * 2);
+        featureOffsets = Arrays.copyOf(featureOffsets, featureCount * 2 + 1);
+      }
+      types[featureCount++] = type;
+      featureOffsets[featureCount] = polygonCount;
+      return this;
+    }
+
+    /**
+     * Set the geometry type of the current feature.
+     *
+     * @param type The geometry type, or null if the feature has no geometry
+     * @return This builder
+     */
+    public Builder setType(String type) {
+      types[featureCount - 1] = type;
+      return this;
+    }
+
+    /**
+     * Start a new polygon in the current feature.
+     *
+     * @return This builder
+     */
+    public Builder startPolygon() {
+      if (polygonCount + 1 == polygonOffsets.length) {
+        polygonOffsets = Arrays.copyOf(polygonOffsets, polygonOffsets.length * 2);
+      }
+      polygonCount++;
+      polygonOffsets[polygonCount] = ringCount;
+      featureOffsets[featureCount] = polygonCount;
+      return this;
+    }
+
+    /**
+     * Start a new ring in the current polygon.
+     *
+     * @return This builder
+     */
+    public Builder startRing() {
+      if (ringCount + 1 == ringOffsets.length) {
+        ringOffsets = Arrays.copyOf(ringOffsets, ringOffsets.length * 2);
+      }
+      ringCount++;
+      ringOffsets[ringCount] = pointCount;
+      polygonOffsets[polygonCount] = ringCount;
+      return this;
+    }
+
+    /**
+     * Add a point to the current ring.
+     *
+     * @param lng The longitude
+     * @param lat The latitude
+     * @return This builder
+     */
+    public Builder addPoint(double lng, double lat) {
+      if (2 * pointCount + 2 > coordinates.length) {
+        coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+      }
+      coordinates[2 * pointCount] = lng;
+      coordinates[2 * pointCount + 1] = lat;
+      pointCount++;
+      ringOffsets[ringCount] = pointCount;
+      return this;
+    }
+
+    /**
+     * Build the packed geometry. The arrays are trimmed to their exact size.
+     *
+     * @return The packed geometry
+     */
+    public PackedGeometry build() {
+      return new PackedGeometry(this);
+    }
+  }
+}
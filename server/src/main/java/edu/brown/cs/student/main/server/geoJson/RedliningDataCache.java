@@ -1,73 +1,202 @@
 package edu.brown.cs.student.main.server.geoJson;
 
-import java.util.LinkedHashMap;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
-/** Cache for redlining data queries. Implements a simple LRU (Least Recently Used) cache. */
+/**
+ * Cache for redlining data queries. The cache is bounded by the total size in bytes of the cached
+ * responses rather than by entry count, because a single whole-dataset response can be larger than
+ * hundreds of small viewport responses together. When the budget is exceeded, the least recently
+ * used entries are evicted. Entries also expire after a fixed time to live.
+ *
+ * <p>Reads go straight to a {@link ConcurrentHashMap} and take no lock; only eviction is
+ * serialized. Concurrent misses on the same key are coalesced by {@link #getOrCompute}, so only one
+ * of them computes the data. Hit, miss, eviction and size counters are available through {@link
+ * #getStats()}.
+ */
 public class RedliningDataCache {
-  // Default maximum cache size (in number of entries)
-  private static final int DEFAULT_MAX_SIZE = 20;
+  // Default maximum total size of the cached responses
+  private static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
 
-  // The cache storage - uses LinkedHashMap for LRU implementation
-  private final Map<String, String> cache;
-  private final int maxSize;
+  // Default time after which an entry expires
+  private static final Duration DEFAULT_TTL = Duration.ofHours(1);
 
-  /** Constructor with default cache size. */
+  private final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, CompletableFuture<byte[]>> inFlight =
+      new ConcurrentHashMap<>();
+  private final long maxBytes;
+  private final long ttlNanos;
+  private final Object evictionLock = new Object();
+
+  private final AtomicLong currentBytes = new AtomicLong();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+
+  /** Constructor with default size budget and time to live. */
   public RedliningDataCache() {
-    this(DEFAULT_MAX_SIZE);
+    this(DEFAULT_MAX_BYTES, DEFAULT_TTL);
   }
 
   /**
-   * Constructor with specified cache size.
+   * Constructor with specified size budget and time to live.
    *
-   * @param maxSize Maximum number of entries to keep in cache
+   * @param maxBytes Maximum total size in bytes of the cached data
+   * @param ttl Time after which an entry expires
    */
-  public RedliningDataCache(int maxSize) {
-    this.maxSize = maxSize;
-
-    // Create a LinkedHashMap with access-order
-    this.cache =
-        new LinkedHashMap<String, String>(16, 0.75f, true) {
-          @Override
-          protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
-            return size() > RedliningDataCache.this.maxSize;
-          }
-        };
+  public RedliningDataCache(long maxBytes, Duration ttl) {
+    this.maxBytes = maxBytes;
+    this.ttlNanos = ttl.toNanos();
   }
 
   /**
-   * Check if the cache has data for a given key.
+   * Check if the cache has live data for a given key. This does not count as a hit or a miss.
    *
    * @param key The cache key
-   * @return true if the key exists in the cache
+   * @return true if the key exists in the cache and has not expired
    */
-  public synchronized boolean hasData(String key) {
-    return cache.containsKey(key);
+  public boolean hasData(String key) {
+    Entry entry = cache.get(key);
+    return entry != null && !entry.isExpired(System.nanoTime());
   }
 
   /**
    * Get data from the cache.
    *
    * @param key The cache key
-   * @return The cached data, or null if not found
+   * @return The cached data, or null if not found or expired
    */
-  public synchronized String getData(String key) {
-    return cache.get(key);
+  public byte[] getData(String key) {
+    Entry entry = cache.get(key);
+    long now = System.nanoTime();
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    if (entry.isExpired(now)) {
+      if (cache.remove(key, entry)) {
+        currentBytes.addAndGet(-entry.data.length);
+        expirations.increment();
+      }
+      misses.increment();
+      return null;
+    }
+
+    entry.lastAccess = now;
+    hits.increment();
+    return entry.data;
   }
 
   /**
-   * Put data into the cache.
+   * Get data from the cache, computing and caching it on a miss. If another thread is already
+   * computing the same key, this waits for that computation and shares its result instead of
+   * starting a second one.
    *
    * @param key The cache key
-   * @param data The data to cache
+   * @param loader Computes the data on a miss
+   * @return The cached or computed data
+   */
+  public byte[] getOrCompute(String key, Supplier<byte[]> loader) {
+    byte[] cached = getData(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    CompletableFuture<byte[]> load = new CompletableFuture<>();
+    CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, load);
+    if (existing != null) {
+      coalesced.increment();
+      try {
+        return existing.join();
+      } catch (CompletionException e) {
+        // Rethrow the loader's own exception, as the thread that ran it does
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw e;
+      }
+    }
+
+    try {
+      // A load for this key may have finished between the miss above and claiming the key
+      Entry entry = cache.get(key);
+      byte[] data = entry != null && !entry.isExpired(System.nanoTime()) ? entry.data : null;
+      if (data == null) {
+        data = loader.get();
+        putData(key, data);
+      }
+      load.complete(data);
+      return data;
+    } catch (RuntimeException | Error e) {
+      load.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, load);
+    }
+  }
+
+  /**
+   * Put data into the cache. Data larger than the whole budget is not cached.
+   *
+   * @param key The cache key
+   * @param data The data to cache (UTF-8 bytes of the response)
+   */
+  public void putData(String key, byte[] data) {
+    if (data.length > maxBytes) {
+      return;
+    }
+
+    Entry entry = new Entry(data, System.nanoTime() + ttlNanos);
+    Entry previous = cache.put(key, entry);
+    currentBytes.addAndGet(data.length - (previous == null ? 0 : previous.data.length));
+
+    if (currentBytes.get() > maxBytes) {
+      evict();
+    }
+  }
+
+  /**
+   * Remove every entry whose key starts with a prefix, such as the responses built from a dataset
+   * version that has been replaced. A load of such a key that is still running may put its entry
+   * back afterwards; nothing looks that key up again, so it just waits for eviction.
+   *
+   * @param keyPrefix The prefix of the keys to remove
+   * @return The number of entries removed
    */
-  public synchronized void putData(String key, String data) {
-    cache.put(key, data);
+  public int invalidatePrefix(String keyPrefix) {
+    int removed = 0;
+    for (Map.Entry<String, Entry> mapEntry : cache.entrySet()) {
+      if (mapEntry.getKey().startsWith(keyPrefix)
+          && cache.remove(mapEntry.getKey(), mapEntry.getValue())) {
+        currentBytes.addAndGet(-mapEntry.getValue().data.length);
+        removed++;
+      }
+    }
+    invalidations.add(removed);
+    return removed;
   }
 
   /** Clear the cache. */
-  public synchronized void clear() {
-    cache.clear();
+  public void clear() {
+    for (String key : cache.keySet()) {
+      Entry entry = cache.remove(key);
+      if (entry != null) {
+        currentBytes.addAndGet(-entry.data.length);
+      }
+    }
   }
 
   /**
@@ -75,7 +204,81 @@ public class RedliningDataCache {
    *
    * @return The number of entries in the cache
    */
-  public synchronized int size() {
+  public int size() {
     return cache.size();
   }
+
+  /**
+   * Get the total size of the cached data.
+   *
+   * @return The number of bytes held by the cache
+   */
+  public long byteSize() {
+    return currentBytes.get();
+  }
+
+  /**
+   * Get the cache counters.
+   *
+   * @return Hits, misses, evictions, expirations, coalesced misses, invalidated entries, entry
+   *     count, and current and maximum size in bytes
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("hits", hits.sum());
+    stats.put("misses", misses.sum());
+    stats.put("evictions", evictions.sum());
+    stats.put("expirations", expirations.sum());
+    stats.put("coalesced", coalesced.sum());
+    stats.put("invalidations", invalidations.sum());
+    stats.put("entries", cache.size());
+    stats.put("bytes", currentBytes.get());
+    stats.put("maxBytes", maxBytes);
+    return stats;
+  }
+
+  /** Drop expired entries, then least recently used ones, until the cache fits its budget. */
+  private void evict() {
+    synchronized (evictionLock) {
+      if (currentBytes.get() <= maxBytes) {
+        return;
+      }
+
+      long now = System.nanoTime();
+      List<Map.Entry<String, Entry>> entries = new ArrayList<>(cache.entrySet());
+      entries.sort(Comparator.comparingLong(mapEntry -> mapEntry.getValue().lastAccess));
+      for (Map.Entry<String, Entry> mapEntry : entries) {
+        Entry entry = mapEntry.getValue();
+        boolean expired = entry.isExpired(now);
+        if (!expired && currentBytes.get() <= maxBytes) {
+          continue;
+        }
+        if (cache.remove(mapEntry.getKey(), entry)) {
+          currentBytes.addAndGet(-entry.data.length);
+          if (expired) {
+            expirations.increment();
+          } else {
+            evictions.increment();
+          }
+        }
+      }
+    }
+  }
+
+  /** A cached response with its expiry and last access time. */
+  private static class Entry {
+    private final byte[] data;
+    private final long expiresAt;
+    private volatile long lastAccess;
+
+    Entry(byte[] data, long expiresAt) {
+      this.data = data;
+      this.expiresAt = expiresAt;
+      this.lastAccess = System.nanoTime();
+    }
+
+    boolean isExpired(long now) {
+      return now - expiresAt > 0;
+    }
+  }
 }
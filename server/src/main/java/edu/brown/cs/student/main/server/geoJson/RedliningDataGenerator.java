@@ -0,0 +1,326 @@
+package edu.brown.cs.student.main.server.geoJson;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonWriter;
+import com.squareup.moshi.Moshi;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * Generates synthetic redlining datasets shaped like the HOLC data, for load tests, benchmarks and
+ * memory profiling at sizes the real dataset cannot reach. Each feature is a MultiPolygon with one
+ * irregular ring around a neighborhood center, a HOLC grade and an area description made of survey
+ * phrases, written with the same schema {@link GeoJsonObject} reads. Features are grouped by city,
+ * as in the real file. The same settings and seed always give the same file.
+ *
+ * <p>Run {@link #main} to write a dataset from the command line, for example:
+ *
+ * <pre>
+ * java -cp target/classes:$(cat .mvn-classpath) \
+ *     edu.brown.cs.student.main.server.geoJson.RedliningDataGenerator \
+ *     --features 100000 --vertices 64 --cities 200 --distribution zipf --output data/big.json
+ * </pre>
+ */
+public class RedliningDataGenerator {
+  /** How features are spread over the cities. */
+  public enum CityDistribution {
+    /** Every city gets about the same number of features. */
+    UNIFORM,
+    /** The city of rank k gets a share proportional to 1/k, like the real data's few big cities. */
+    ZIPF
+  }
+
+  // Real cities used first, as name, latitude and longitude of the center
+  private static final Object[][] CITIES = {
+    {"Providence", 41.82, -71.41},
+    {"Boston", 42.36, -71.06},
+    {"New York", 40.71, -74.01},
+    {"Philadelphia", 39.95, -75.17},
+    {"Baltimore", 39.29, -76.61},
+    {"Pittsburgh", 40.44, -79.99},
+    {"Cleveland", 41.50, -81.69},
+    {"Detroit", 42.33, -83.05},
+    {"Chicago", 41.88, -87.63},
+    {"Milwaukee", 43.04, -87.91},
+    {"St. Louis", 38.63, -90.20},
+    {"Atlanta", 33.75, -84.39},
+    {"New Orleans", 29.95, -90.07},
+    {"Dallas", 32.78, -96.80},
+    {"Denver", 39.74, -104.99},
+    {"Seattle", 47.61, -122.33},
+    {"Portland", 45.52, -122.68},
+    {"San Francisco", 37.77, -122.42},
+    {"Los Angeles", 34.05, -118.24},
+    {"San Diego", 32.72, -117.16}
+  };
+
+  private static final String[] GRADES = {"A", "B", "C", "D"};
+
+  // Area description fields of the HOLC survey forms
+  private static final String[] DESCRIPTION_KEYS = {"1a", "1b", "1c", "1d", "1e", "2", "5", "8"};
+
+  private static final String[] PHRASES = {
+    "well planned residential section",
+    "close to schools and churches",
+    "convenient transportation to downtown",
+    "industrial plants nearby",
+    "railroad tracks along the eastern boundary",
+    "mixed population of laborers and mechanics",
+    "homes are well maintained",
+    "some obsolescence in older structures",
+    "subject to flooding near the river",
+    "infiltration of lower grade population",
+    "rolling terrain with mature trees",
+    "paved streets and sidewalks throughout",
+    "heavy traffic on the main thoroughfare",
+    "desirable area for middle class families",
+    "rentals predominate on side streets"
+  };
+
+  // Spread of the neighborhood centers around the city center, in degrees (about 10 km)
+  private static final double CITY_SPREAD_DEGREES = 0.1;
+
+  private final int featureCount;
+  private final int verticesPerRing;
+  private final int descriptionWords;
+  private final long seed;
+  private final String[] cityNames;
+  private final double[] cityLats;
+  private final double[] cityLngs;
+  private final int[] featuresPerCity;
+
+  /**
+   * Constructor for the generator.
+   *
+   * @param featureCount Number of features to generate
+   * @param verticesPerRing Number of distinct vertices in each ring; rings are closed by repeating
+   *     the first vertex
+   * @param cityCount Number of cities; beyond the built-in list, cities are placed at random in the
+   *     continental United States
+   * @param distribution How the features are spread over the cities
+   * @param descriptionWords Approximate number of words in each area description field
+   * @param seed Seed of the random generator
+   */
+  public RedliningDataGenerator(
+      int featureCount,
+      int verticesPerRing,
+      int cityCount,
+      CityDistribution distribution,
+      int descriptionWords,
+      long seed) {
+    if (featureCount < 0 || verticesPerRing < 3 || cityCount < 1 || descriptionWords < 0) {
+      throw new IllegalArgumentException(
+          "Need a non-negative feature count, at least 3 vertices and at least 1 city");
+    }
+    this.featureCount = featureCount;
+    this.verticesPerRing = verticesPerRing;
+    this.descriptionWords = descriptionWords;
+    this.seed = seed;
+
+    Random random = new Random(seed);
+    this.cityNames = new String[cityCount];
+    this.cityLats = new double[cityCount];
+    this.cityLngs = new double[cityCount];
+    for (int i = 0; i < cityCount; i++) {
+      if (i < CITIES.length) {
+        cityNames[i] = (String) CITIES[i][0];
+        cityLats[i] = (double) CITIES[i][1];
+        cityLngs[i] = (double) CITIES[i][2];
+      } else {
+        cityNames[i] = "City " + (i + 1);
+        cityLats[i] = 25.0 + random.nextDouble() * 23.0;
+        cityLngs[i] = -124.0 + random.nextDouble() * 57.0;
+      }
+    }
+    this.featuresPerCity = spreadFeatures(featureCount, cityCount, distribution, random);
+  }
+
+  /**
+   * Get the center of a city, which the bounding boxes of load tests can be placed around.
+   *
+   * @param cityIndex The city, in the order the cities are written
+   * @return Latitude and longitude of the center
+   */
+  public double[] cityCenter(int cityIndex) {
+    return new double[] {cityLats[cityIndex], cityLngs[cityIndex]};
+  }
+
+  /**
+   * Get the number of features each city gets.
+   *
+   * @return Feature counts, in the order the cities are written
+   */
+  public int[] getFeaturesPerCity() {
+    return Arrays.copyOf(featuresPerCity, featuresPerCity.length);
+  }
+
+  /**
+   * Write the dataset as a GeoJSON FeatureCollection. Features are streamed to the file, so
+   * datasets much larger than the heap can be written.
+   *
+   * @param path The file to write
+   * @throws IOException if the file cannot be written
+   */
+  public void write(Path path) throws IOException {
+    // The cities are already placed, so the features use their own random sequence
+    Random random = new Random(seed ^ 0x5DEECE66DL);
+    JsonAdapter<GeoJsonObject.Properties> propertiesAdapter =
+        new Moshi.Builder().build().adapter(GeoJsonObject.Properties.class);
+
+    try (BufferedSink sink = Okio.buffer(Okio.sink(path));
+        JsonWriter writer = JsonWriter.of(sink)) {
+      writer.beginObject();
+      writer.name("type").value("FeatureCollection");
+      writer.name("features").beginArray();
+      for (int city = 0; city < cityNames.length; city++) {
+        for (int i = 0; i < featuresPerCity[city]; i++) {
+          writeFeature(writer, propertiesAdapter, random, city);
+        }
+      }
+      writer.endArray();
+      writer.endObject();
+    }
+  }
+
+  private void writeFeature(
+      JsonWriter writer,
+      JsonAdapter<GeoJsonObject.Properties> propertiesAdapter,
+      Random random,
+      int city)
+      throws IOException {
+    double centerLat = cityLats[city] + random.nextGaussian() * CITY_SPREAD_DEGREES;
+    double centerLng = cityLngs[city] + random.nextGaussian() * CITY_SPREAD_DEGREES;
+    // Neighborhoods are a few hundred meters to a kilometer and a half across
+    double radius = 0.003 + random.nextDouble() * 0.01;
+
+    writer.beginObject();
+    writer.name("type").value("Feature");
+    writer.name("geometry").beginObject();
+    writer.name("type").value("MultiPolygon");
+    writer.name("coordinates").beginArray().beginArray().beginArray();
+    double firstLng = 0;
+    double firstLat = 0;
+    for (int v = 0; v < verticesPerRing; v++) {
+      // Vertices go around the center at increasing angles, so the ring never crosses itself
+      double angle = 2 * Math.PI * v / verticesPerRing;
+      double r = radius * (0.7 + 0.3 * random.nextDouble());
+      double lng = round(centerLng + r * Math.cos(angle));
+      double lat = round(centerLat + r * Math.sin(angle));
+      if (v == 0) {
+        firstLng = lng;
+        firstLat = lat;
+      }
+      writer.beginArray().value(lng).value(lat).endArray();
+    }
+    writer.beginArray().value(firstLng).value(firstLat).endArray();
+    writer.endArray().endArray().endArray();
+    writer.endObject();
+
+    GeoJsonObject.Properties properties = new GeoJsonObject.Properties();
+    properties.city = cityNames[city];
+    properties.holc_grade = GRADES[random.nextInt(GRADES.length)];
+    properties.area_description_data = new LinkedHashMap<>();
+    for (String key : DESCRIPTION_KEYS) {
+      properties.area_description_data.put(key, description(random));
+    }
+    writer.name("properties");
+    propertiesAdapter.toJson(writer, properties);
+    writer.endObject();
+  }
+
+  /** Join random survey phrases until the text has at least the configured number of words. */
+  private String description(Random random) {
+    StringBuilder text = new StringBuilder();
+    int words = 0;
+    while (words < descriptionWords) {
+      String phrase = PHRASES[random.nextInt(PHRASES.length)];
+      if (text.length() > 0) {
+        text.append(", ");
+      }
+      text.append(phrase);
+      words += phrase.split(" ").length;
+    }
+    return text.toString();
+  }
+
+  /** Round a coordinate to 6 decimal places (about 10 cm), the precision of the real data. */
+  private static double round(double coordinate) {
+    return Math.round(coordinate * 1e6) / 1e6;
+  }
+
+  private static int[] spreadFeatures(
+      int featureCount, int cityCount, CityDistribution distribution, Random random) {
+    double[] cumulative = new double[cityCount];
+    double total = 0;
+    for (int i = 0; i < cityCount; i++) {
+      total += distribution == CityDistribution.ZIPF ? 1.0 / (i + 1) : 1.0;
+      cumulative[i] = total;
+    }
+
+    int[] counts = new int[cityCount];
+    for (int i = 0; i < featureCount; i++) {
+      int city = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+      counts[city < 0 ? -city - 1 : city]++;
+    }
+    return counts;
+  }
+
+  /**
+   * Write a dataset from the command line. Options are --features, --vertices, --cities,
+   * --distribution (uniform or zipf), --description-words, --seed and --output.
+   *
+   * @param args command line arguments
+   * @throws IOException if the file cannot be written
+   */
+  public static void main(String[] args) throws IOException {
+    Map<String, String> options = new LinkedHashMap<>();
+    options.put("--features", "10000");
+    options.put("--vertices", "32");
+    options.put("--cities", "20");
+    options.put("--distribution", "zipf");
+    options.put("--description-words", "40");
+    options.put("--seed", "42");
+    options.put("--output", "data/synthetic-redlining.json");
+
+    for (int i = 0; i < args.length; i += 2) {
+      if (!options.containsKey(args[i]) || i + 1 >= args.length) {
+        System.err.println("Usage: RedliningDataGenerator [option value]...");
+        System.err.println("Options and defaults: " + options);
+        System.exit(1);
+      }
+      options.put(args[i], args[i + 1]);
+    }
+
+    RedliningDataGenerator generator =
+        new RedliningDataGenerator(
+            Integer.parseInt(options.get("--features")),
+            Integer.parseInt(options.get("--vertices")),
+            Integer.parseInt(options.get("--cities")),
+            CityDistribution.valueOf(options.get("--distribution").toUpperCase(Locale.ROOT)),
+            Integer.parseInt(options.get("--description-words")),
+            Long.parseLong(options.get("--seed")));
+
+    Path output = Paths.get(options.get("--output"));
+    if (output.getParent() != null) {
+      Files.createDirectories(output.getParent());
+    }
+    generator.write(output);
+    System.out.println(
+        "Wrote "
+            + options.get("--features")
+            + " features to "
+            + output
+            + " ("
+            + Files.size(output)
+            + " bytes)");
+  }
+}
@@ -0,0 +1,314 @@
+package edu.brown.cs.student.main.server.geoJson;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * The redlining dataset being served, which can be replaced without restarting the server. Each
+ * load produces an immutable {@link Version}: a {@link GeoJsonParser} with all its indexes and a
+ * version number. A reload builds the next version on a background thread while requests keep using
+ * the current one, then swaps it in with a single atomic write.
+ *
+ * <p>Handlers read {@link #current()} once at the start of a request and use that version for the
+ * whole request, so a request that is running during a swap finishes on the data it started with.
+ * Cached responses are keyed by {@link Version#cacheKey}, so responses built from a replaced
+ * version are never served again; swap listeners can drop them from the cache right away.
+ *
+ * <p>Reloads run one at a time. Requests made while one is waiting to start share it, and a reload
+ * of a file whose contents have not changed keeps the current version.
+ */
+public class RedliningDataset implements Closeable {
+  private final Path filePath;
+  private final Path snapshotPath;
+  private final AtomicReference<Version> current = new AtomicReference<>();
+  private final List<Consumer<Version>> swapListeners = new CopyOnWriteArrayList<>();
+
+  private final LinkedBlockingQueue<CompletableFuture<Version>> requests =
+      new LinkedBlockingQueue<>();
+  private final Object requestLock = new Object();
+  private final Thread reloader;
+  private CompletableFuture<Version> waiting;
+  private WatchService watchService;
+  private volatile boolean running = true;
+
+  /**
+   * Load the dataset. A file that cannot be read gives an empty first version, as the server has
+   * always started without data rather than failing; later reloads never replace data with an empty
+   * dataset because of a read error.
+   *
+   * @param filePath Path to the GeoJSON file
+   * @param snapshotPath Path to the snapshot file, or null to always parse the GeoJSON file
+   */
+  public RedliningDataset(Path filePath, Path snapshotPath) {
+    this.filePath = filePath;
+    this.snapshotPath = snapshotPath;
+
+    long start = System.nanoTime();
+    byte[] sourceHash = hashSource();
+    Version first = new Version(1, sourceHash, new GeoJsonParser(filePath, snapshotPath));
+    current.set(first);
+    logLoaded(first, start);
+
+    this.reloader = new Thread(this::runReloader, "redlining-reload");
+    reloader.setDaemon(true);
+    reloader.start();
+  }
+
+  /**
+   * Get the version being served.
+   *
+   * @return The current version
+   */
+  public Version current() {
+    return current.get();
+  }
+
+  /**
+   * Register a callback run after a new version has been swapped in.
+   *
+   * @param listener Receives the version that was replaced
+   */
+  public void addSwapListener(Consumer<Version> listener) {
+    swapListeners.add(listener);
+  }
+
+  /**
+   * Reload the dataset in the background. If the file changed, the new version is swapped in once
+   * it is completely built; if loading fails, the current version stays.
+   *
+   * @return Completes with the version served after the reload, or with the loading error
+   */
+  public CompletableFuture<Version> reload() {
+    synchronized (requestLock) {
+      if (!running) {
+        return CompletableFuture.failedFuture(new IllegalStateException("Dataset is closed"));
+      }
+      // A reload that has not started yet will read the file as it is now, so it can be shared
+      if (waiting == null) {
+        waiting = new CompletableFuture<>();
+        requests.add(waiting);
+      }
+      return waiting;
+    }
+  }
+
+  /**
+   * Reload the dataset whenever its file changes. Files are often written in several steps, so a
+   * reload starts only once the file has not changed for a quiet period.
+   *
+   * @param quietPeriod How long the file must stay unchanged before it is reloaded
+   * @throws IOException if the file's directory cannot be watched
+   */
+  public void watch(Duration quietPeriod) throws IOException {
+    Path directory = filePath.toAbsolutePath().getParent();
+    WatchService service = directory.getFileSystem().newWatchService();
+    // Replacing the file with a rename shows up as a creation
+    directory.register(service, ENTRY_CREATE, ENTRY_MODIFY);
+    synchronized (requestLock) {
+      this.watchService = service;
+    }
+
+    Thread watcher = new Thread(() -> runWatcher(service, quietPeriod), "redlining-watcher");
+    watcher.setDaemon(true);
+    watcher.start();
+    System.out.println("Watching " + filePath + " for changes");
+  }
+
+  @Override
+  public void close() throws IOException {
+    WatchService service;
+    synchronized (requestLock) {
+      running = false;
+      service = watchService;
+      if (waiting != null) {
+        waiting.completeExceptionally(new IllegalStateException("Dataset is closed"));
+        waiting = null;
+      }
+    }
+    reloader.interrupt();
+    if (service != null) {
+      service.close();
+    }
+  }
+
+  private void runReloader() {
+    while (running) {
+      CompletableFuture<Version> request;
+      try {
+        request = requests.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      synchronized (requestLock) {
+        if (!running) {
+          return;
+        }
+        // From here on, new requests need another reload to see later changes
+        waiting = null;
+      }
+
+      try {
+        request.complete(load());
+      } catch (IOException | RuntimeException | OutOfMemoryError e) {
+        // Both versions are in memory while the new one is built, which a big update may not fit
+        System.err.println("Failed to reload redlining data: " + e);
+        request.completeExceptionally(e);
+      }
+    }
+  }
+
+  /**
+   * Build the next version if the file changed and swap it in. Only the reloader thread calls this,
+   * so the version cannot change between reading it and replacing it.
+   *
+   * @return The version now being served
+   * @throws IOException if the file cannot be read
+   */
+  private Version load() throws IOException {
+    Version previous = current.get();
+    long start = System.nanoTime();
+    byte[] sourceHash = DatasetSnapshot.hash(filePath);
+    if (Arrays.equals(sourceHash, previous.sourceHash)) {
+      System.out.println("Redlining data unchanged, keeping version " + previous.number);
+      return previous;
+    }
+
+    Version next =
+        new Version(previous.number + 1, sourceHash, GeoJsonParser.load(filePath, snapshotPath));
+    current.set(next);
+    logLoaded(next, start);
+    for (Consumer<Version> listener : swapListeners) {
+      try {
+        listener.accept(previous);
+      } catch (RuntimeException e) {
+        // The swap has happened either way
+        System.err.println("Redlining data swap listener failed: " + e);
+      }
+    }
+    return next;
+  }
+
+  private void runWatcher(WatchService service, Duration quietPeriod) {
+    try {
+      while (running) {
+        if (!isFileEvent(service.take())) {
+          continue;
+        }
+        // Wait until the changes stop, then reload once
+        WatchKey next;
+        while ((next = service.poll(quietPeriod.toNanos(), TimeUnit.NANOSECONDS)) != null) {
+          isFileEvent(next);
+        }
+        reload();
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // Closed
+    }
+  }
+
+  /**
+   * Drain the events of a watch key and re-arm it.
+   *
+   * @param key The key
+   * @return true if any event may concern the dataset file
+   */
+  private boolean isFileEvent(WatchKey key) {
+    boolean fileEvent = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      // Events may have been lost, and one of them could have been for the file
+      if (event.kind() == OVERFLOW || filePath.getFileName().equals(event.context())) {
+        fileEvent = true;
+      }
+    }
+    key.reset();
+    return fileEvent;
+  }
+
+  private byte[] hashSource() {
+    try {
+      return DatasetSnapshot.hash(filePath);
+    } catch (IOException e) {
+      // The first reload that can read the file will load it
+      return null;
+    }
+  }
+
+  private static void logLoaded(Version version, long startNanos) {
+    System.out.println(
+        "Redlining data version "
+            + version.number
+            + " ready with "
+            + version.data.getData().size()
+            + " features in "
+            + (System.nanoTime() - startNanos) / 1_000_000
+            + " ms");
+  }
+
+  /** One loaded state of the dataset. It never changes once built. */
+  public static final class Version {
+    private final long number;
+    private final byte[] sourceHash;
+    private final GeoJsonParser data;
+
+    private Version(long number, byte[] sourceHash, GeoJsonParser data) {
+      this.number = number;
+      this.sourceHash = sourceHash;
+      this.data = data;
+    }
+
+    /**
+     * Get the version number, which goes up by one with every swap.
+     *
+     * @return The version number
+     */
+    public long number() {
+      return number;
+    }
+
+    /**
+     * Get the data of this version.
+     *
+     * @return The parser holding the features and their indexes
+     */
+    public GeoJsonParser data() {
+      return data;
+    }
+
+    /**
+     * Get the cache key of a response built from this version.
+     *
+     * @param key The key identifying the response within a version
+     * @return The key, prefixed with {@link #cacheKeyPrefix()}
+     */
+    public String cacheKey(String key) {
+      return cacheKeyPrefix() + key;
+    }
+
+    /**
+     * Get the prefix shared by the cache keys of every response built from this version.
+     *
+     * @return The prefix
+     */
+    public String cacheKeyPrefix() {
+      return "v" + number + ":";
+    }
+  }
+}
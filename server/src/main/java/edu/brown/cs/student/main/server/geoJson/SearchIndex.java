@@ -0,0 +1,233 @@
+package edu.brown.cs.student.main.server.geoJson;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted n-gram index over the area descriptions of every feature, built once when the data is
+ * loaded. Every substring of 1 to {@link #GRAM_LENGTH} code points of every lowercased description
+ * value maps to the sorted list of features that contain it. Grams never split a surrogate pair, so
+ * every gram is valid UTF-8.
+ *
+ * <p>A keyword of at most {@link #GRAM_LENGTH} characters is itself a gram, so its posting list is
+ * the exact answer. Longer keywords intersect the posting lists of all their trigrams, which leaves
+ * a small candidate set that is then checked with {@link String#contains}. Either way the result is
+ * exactly the set of features with a description value containing the keyword.
+ *
+ * <p>The grams and posting lists are packed into two {@link PackedBytes}, so an index read from a
+ * {@link DatasetSnapshot} stays in the snapshot's memory; a lookup binary searches the sorted
+ * grams.
+ */
+public class SearchIndex {
+  // Longest indexed substring, in code points
+  private static final int GRAM_LENGTH = 3;
+
+  private final FeatureStore features;
+  // Every gram as UTF-8, sorted by unsigned bytes so lookups can binary search
+  private final PackedBytes grams;
+  // postings entry i holds the ids of the features containing gram i, as big-endian ints
+  private final PackedBytes postings;
+
+  private SearchIndex(FeatureStore features, PackedBytes grams, PackedBytes postings) {
+    this.features = features;
+    this.grams = grams;
+    this.postings = postings;
+  }
+
+  /**
+   * Build the index over the area descriptions of some features.
+   *
+   * @param features The features to index
+   */
+  public SearchIndex(FeatureStore features) {
+    this.features = features;
+
+    Map<String, PostingList> lists = new HashMap<>();
+    Set<String> featureGrams = new HashSet<>();
+    for (int featureId = 0; featureId < features.size(); featureId++) {
+      FeatureStore.Feature feature = features.feature(featureId);
+
+      // Collect the distinct grams of this feature so it is added to each list only once
+      featureGrams.clear();
+      for (int i = 0; i < feature.descriptionCount(); i++) {
+        String value = feature.descriptionValue(i);
+        if (value == null) {
+          continue;
+        }
+        String text = value.toLowerCase();
+        for (int start = 0; start < text.length(); start = text.offsetByCodePoints(start, 1)) {
+          int end = start;
+          for (int length = 0; length < GRAM_LENGTH && end < text.length(); length++) {
+            end = text.offsetByCodePoints(end, 1);
+            featureGrams.add(text.substring(start, end));
+          }
+        }
+      }
+
+      for (String gram : featureGrams) {
+        lists.computeIfAbsent(gram, key -> new PostingList()).add(featureId);
+      }
+    }
+
+    // Sort the grams by their encoding and keep each posting list next to its gram
+    List<Map.Entry<byte[], PostingList>> entries = new ArrayList<>(lists.size());
+    for (Map.Entry<String, PostingList> entry : lists.entrySet()) {
+      entries.add(Map.entry(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue()));
+    }
+    entries.sort((a, b) -> Arrays.compareUnsigned(a.getKey(), b.getKey()));
+    byte[][] sortedGrams = new byte[entries.size()][];
+    byte[][] sortedPostings = new byte[entries.size()][];
+    for (int i = 0; i < entries.size(); i++) {
+      sortedGrams[i] = entries.get(i).getKey();
+      sortedPostings[i] = entries.get(i).getValue().toBytes();
+    }
+    this.grams = PackedBytes.of(sortedGrams);
+    this.postings = PackedBytes.of(sortedPostings);
+  }
+
+  /**
+   * Find the features with an area description value containing a keyword.
+   *
+   * @param keyword The lowercased keyword
+   * @return The ids of the matching features, in ascending order
+   */
+  public int[] search(String keyword) {
+    if (keyword.isEmpty()) {
+      return new int[0];
+    }
+    int codePoints = keyword.codePointCount(0, keyword.length());
+    if (codePoints <= GRAM_LENGTH) {
+      int[] matches = postingList(keyword);
+      return matches == null ? new int[0] : matches;
+    }
+
+    // Gather the posting list of every trigram; a missing trigram means no feature can match
+    int gramCount = codePoints - GRAM_LENGTH + 1;
+    int[][] lists = new int[gramCount][];
+    int start = 0;
+    for (int i = 0; i < gramCount; i++) {
+      lists[i] =
+          postingList(keyword.substring(start, keyword.offsetByCodePoints(start, GRAM_LENGTH)));
+      if (lists[i] == null) {
+        return new int[0];
+      }
+      start = keyword.offsetByCodePoints(start, 1);
+    }
+
+    // Intersect from the shortest list up so the candidate set shrinks as fast as possible
+    Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+    int[] candidates = lists[0];
+    for (int i = 1; i < lists.length && candidates.length > 0; i++) {
+      candidates = intersect(candidates, lists[i]);
+    }
+
+    // Every trigram occurring somewhere does not mean the whole keyword does, so verify
+    int count = 0;
+    int[] matches = new int[candidates.length];
+    for (int featureId : candidates) {
+      if (features.feature(featureId).descriptionContains(keyword)) {
+        matches[count++] = featureId;
+      }
+    }
+    return Arrays.copyOf(matches, count);
+  }
+
+  /**
+   * Look up the posting list of a gram.
+   *
+   * @param gram The gram
+   * @return The ids of the features containing the gram, or null if none does
+   */
+  private int[] postingList(String gram) {
+    byte[] key = gram.getBytes(StandardCharsets.UTF_8);
+    int low = 0;
+    int high = grams.size() - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int comparison = grams.compareTo(middle, key);
+      if (comparison < 0) {
+        low = middle + 1;
+      } else if (comparison > 0) {
+        high = middle - 1;
+      } else {
+        int[] ids = new int[postings.length(middle) / Integer.BYTES];
+        for (int i = 0; i < ids.length; i++) {
+          ids[i] = postings.intAt(middle, i);
+        }
+        return ids;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Write the grams and posting lists to a {@link DatasetSnapshot}.
+   *
+   * @param out The snapshot being written
+   * @throws IOException if writing fails
+   */
+  void write(DataOutputStream out) throws IOException {
+    grams.write(out);
+    postings.write(out);
+  }
+
+  /**
+   * Read grams and posting lists written by {@link #write}. They stay in the buffer.
+   *
+   * @param buffer The snapshot, positioned at the grams
+   * @param features The indexed features, which keywords longer than a gram are checked against
+   * @return The index
+   */
+  static SearchIndex read(ByteBuffer buffer, FeatureStore features) {
+    return new SearchIndex(features, PackedBytes.read(buffer), PackedBytes.read(buffer));
+  }
+
+  /** Intersect two sorted id lists. */
+  private static int[] intersect(int[] a, int[] b) {
+    int[] result = new int[Math.min(a.length, b.length)];
+    int count = 0;
+    int i = 0;
+    int j = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        result[count++] = a[i];
+        i++;
+        j++;
+      }
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  /** Growable list of feature ids, appended in ascending order. */
+  private static class PostingList {
+    private int[] ids = new int[4];
+    private int size = 0;
+
+    void add(int id) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      ids[size++] = id;
+    }
+
+    byte[] toBytes() {
+      ByteBuffer bytes = ByteBuffer.allocate(size * Integer.BYTES);
+      bytes.asIntBuffer().put(ids, 0, size);
+      return bytes.array();
+    }
+  }
+}
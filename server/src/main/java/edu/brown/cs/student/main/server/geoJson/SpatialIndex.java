@@ -0,0 +1,257 @@
+package edu.brown.cs.student.main.server.geoJson;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Static R-tree over feature envelopes, bulk loaded with the Sort-Tile-Recursive (STR) algorithm.
+ * The tree is packed into flat arrays: level 0 holds one box per indexed feature, and every node of
+ * level k covers up to {@link #NODE_SIZE} consecutive boxes of level k - 1. Because the tree is
+ * immutable after construction it can be queried concurrently without locking.
+ */
+public class SpatialIndex {
+  // Maximum number of children per node
+  private static final int NODE_SIZE = 16;
+
+  // Boxes of every level, stored level after level (leaves first)
+  private final double[] minXs;
+  private final double[] minYs;
+  private final double[] maxXs;
+  private final double[] maxYs;
+
+  // Feature id of every leaf box, in STR order
+  private final int[] ids;
+
+  // levelStarts[k] is the index of the first box of level k; the last entry is the total box count
+  private final int[] levelStarts;
+
+  private SpatialIndex(
+      double[] minXs,
+      double[] minYs,
+      double[] maxXs,
+      double[] maxYs,
+      int[] ids,
+      int[] levelStarts) {
+    this.minXs = minXs;
+    this.minYs = minYs;
+    this.maxXs = maxXs;
+    this.maxYs = maxYs;
+    this.ids = ids;
+    this.levelStarts = levelStarts;
+  }
+
+  /**
+   * Bulk load an index over per-feature envelopes. Features without an envelope (no geometry) are
+   * left out of the index.
+   *
+   * @param envelopes The envelope of every feature
+   */
+  public SpatialIndex(FeatureEnvelopes envelopes) {
+    // Collect the features that actually have an envelope
+    int count = 0;
+    int[] items = new int[envelopes.size()];
+    for (int i = 0; i < envelopes.size(); i++) {
+      if (envelopes.hasEnvelope(i)) {
+        items[count++] = i;
+      }
+    }
+    items = Arrays.copyOf(items, count);
+
+    // Order the leaves with STR so that consecutive leaves are spatially close
+    this.ids = sortTileRecursive(items, envelopes);
+
+    // Work out how many boxes each level needs
+    int levels = 1;
+    for (int n = count; n > 1; n = (n + NODE_SIZE - 1) / NODE_SIZE) {
+      levels++;
+    }
+    this.levelStarts = new int[levels + 1];
+    int total = 0;
+    int n = count;
+    for (int level = 0; level < levels; level++) {
+      levelStarts[level] = total;
+      total += n;
+      n = (n + NODE_SIZE - 1) / NODE_SIZE;
+    }
+    levelStarts[levels] = total;
+
+    this.minXs = new double[total];
+    this.minYs = new double[total];
+    this.maxXs = new double[total];
+    this.maxYs = new double[total];
+
+    // Leaf level: one box per feature
+    for (int i = 0; i < count; i++) {
+      int id = ids[i];
+      minXs[i] = envelopes.minLng(id);
+      minYs[i] = envelopes.minLat(id);
+      maxXs[i] = envelopes.maxLng(id);
+      maxYs[i] = envelopes.maxLat(id);
+    }
+
+    // Upper levels: each node is the union of its (consecutive) children
+    for (int level = 1; level < levels; level++) {
+      int childStart = levelStarts[level - 1];
+      int childEnd = levelStarts[level];
+      for (int node = levelStarts[level]; node < levelStarts[level + 1]; node++) {
+        int first = childStart + (node - levelStarts[level]) * NODE_SIZE;
+        int last = Math.min(first + NODE_SIZE, childEnd);
+        double nodeMinX = Double.POSITIVE_INFINITY;
+        double nodeMinY = Double.POSITIVE_INFINITY;
+        double nodeMaxX = Double.NEGATIVE_INFINITY;
+        double nodeMaxY = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < last; child++) {
+          nodeMinX = Math.min(nodeMinX, minXs[child]);
+          nodeMinY = Math.min(nodeMinY, minYs[child]);
+          nodeMaxX = Math.max(nodeMaxX, maxXs[child]);
+          nodeMaxY = Math.max(nodeMaxY, maxYs[child]);
+        }
+        minXs[node] = nodeMinX;
+        minYs[node] = nodeMinY;
+        maxXs[node] = nodeMaxX;
+        maxYs[node] = nodeMaxY;
+      }
+    }
+  }
+
+  /**
+   * Find every feature whose envelope intersects the query box.
+   *
+   * @param minX Minimum longitude of the query box
+   * @param minY Minimum latitude of the query box
+   * @param maxX Maximum longitude of the query box
+   * @param maxY Maximum latitude of the query box
+   * @return The ids of the candidate features, in ascending order
+   */
+  public int[] search(double minX, double minY, double maxX, double maxY) {
+    int[] results = new int[16];
+    int found = 0;
+    if (ids.length == 0) {
+      return new int[0];
+    }
+
+    // Depth-first traversal using explicit (level, node) stacks, starting at the root
+    int[] levelStack = new int[64];
+    int[] nodeStack = new int[64];
+    int top = 0;
+    levelStack[top] = levelStarts.length - 2;
+    nodeStack[top] = levelStarts[levelStarts.length - 2];
+    top++;
+
+    while (top > 0) {
+      top--;
+      int level = levelStack[top];
+      int node = nodeStack[top];
+      if (maxXs[node] < minX || minXs[node] > maxX || maxYs[node] < minY || minYs[node] > maxY) {
+        continue;
+      }
+
+      if (level == 0) {
+        if (found == results.length) {
+          results = Arrays.copyOf(results, found * 2);
+        }
+        results[found++] = ids[node];
+        continue;
+      }
+
+      // Push the children of this node
+      int first = levelStarts[level - 1] + (node - levelStarts[level]) * NODE_SIZE;
+      int last = Math.min(first + NODE_SIZE, levelStarts[level]);
+      for (int child = first; child < last; child++) {
+        if (top == levelStack.length) {
+          levelStack = Arrays.copyOf(levelStack, top * 2);
+          nodeStack = Arrays.copyOf(nodeStack, top * 2);
+        }
+        levelStack[top] = level - 1;
+        nodeStack[top] = child;
+        top++;
+      }
+    }
+
+    // Return ids in feature order so responses keep the order of the source file
+    int[] sorted = Arrays.copyOf(results, found);
+    Arrays.sort(sorted);
+    return sorted;
+  }
+
+  /**
+   * Get the number of features in the index.
+   *
+   * @return The number of indexed features
+   */
+  public int size() {
+    return ids.length;
+  }
+
+  /**
+   * Order items with STR: sort by the x center, cut into vertical slices, then sort each slice by
+   * the y center.
+   */
+  private static int[] sortTileRecursive(int[] items, FeatureEnvelopes envelopes) {
+    int count = items.length;
+    Integer[] order = new Integer[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = items[i];
+    }
+    Arrays.sort(
+        order,
+        (a, b) ->
+            Double.compare(
+                envelopes.minLng(a) + envelopes.maxLng(a),
+                envelopes.minLng(b) + envelopes.maxLng(b)));
+
+    int leafNodes = (count + NODE_SIZE - 1) / NODE_SIZE;
+    int slices = (int) Math.ceil(Math.sqrt(leafNodes));
+    int sliceSize = Math.max(1, slices * NODE_SIZE);
+    for (int start = 0; start < count; start += sliceSize) {
+      int end = Math.min(start + sliceSize, count);
+      Arrays.sort(
+          order,
+          start,
+          end,
+          (a, b) ->
+              Double.compare(
+                  envelopes.minLat(a) + envelopes.maxLat(a),
+                  envelopes.minLat(b) + envelopes.maxLat(b)));
+    }
+
+    int[] sorted = new int[count];
+    for (int i = 0; i < count; i++) {
+      sorted[i] = order[i];
+    }
+    return sorted;
+  }
+
+  /**
+   * Write the tree to a {@link DatasetSnapshot}.
+   *
+   * @param out The snapshot being written
+   * @throws IOException if writing fails
+   */
+  void write(DataOutputStream out) throws IOException {
+    DatasetSnapshot.writeDoubles(out, minXs);
+    DatasetSnapshot.writeDoubles(out, minYs);
+    DatasetSnapshot.writeDoubles(out, maxXs);
+    DatasetSnapshot.writeDoubles(out, maxYs);
+    DatasetSnapshot.writeInts(out, ids);
+    DatasetSnapshot.writeInts(out, levelStarts);
+  }
+
+  /**
+   * Read a tree written by {@link #write}, without sorting anything again.
+   *
+   * @param buffer The snapshot, positioned at the tree
+   * @return The index
+   */
+  static SpatialIndex read(ByteBuffer buffer) {
+    return new SpatialIndex(
+        DatasetSnapshot.readDoubles(buffer),
+        DatasetSnapshot.readDoubles(buffer),
+        DatasetSnapshot.readDoubles(buffer),
+        DatasetSnapshot.readDoubles(buffer),
+        DatasetSnapshot.readInts(buffer),
+        DatasetSnapshot.readInts(buffer));
+  }
+}
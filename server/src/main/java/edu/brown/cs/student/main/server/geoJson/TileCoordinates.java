@@ -0,0 +1,94 @@
+package edu.brown.cs.student.main.server.geoJson;
+
+/**
+ * Conversions between latitude/longitude and standard web-map (Web Mercator, "slippy map") tile
+ * coordinates z/x/y, where tile x grows eastward from longitude -180 and tile y grows southward
+ * from latitude {@link #MAX_LATITUDE}.
+ */
+public final class TileCoordinates {
+  // Highest zoom level accepted by the tile endpoints
+  public static final int MAX_ZOOM = 22;
+
+  // Web Mercator is cut off at this latitude, which makes the world square
+  public static final double MAX_LATITUDE = 85.0511287798066;
+
+  private TileCoordinates() {}
+
+  /**
+   * Get the number of tiles along each axis at a zoom level.
+   *
+   * @param zoom The zoom level
+   * @return 2 to the power of zoom
+   */
+  public static int tilesPerAxis(int zoom) {
+    return 1 << zoom;
+  }
+
+  /**
+   * Get the column of the tile containing a longitude.
+   *
+   * @param lng The longitude
+   * @param zoom The zoom level
+   * @return The tile x coordinate, clamped to the valid range
+   */
+  public static int lngToTileX(double lng, int zoom) {
+    int n = tilesPerAxis(zoom);
+    int x = (int) Math.floor((lng + 180.0) / 360.0 * n);
+    return Math.max(0, Math.min(n - 1, x));
+  }
+
+  /**
+   * Get the row of the tile containing a latitude.
+   *
+   * @param lat The latitude
+   * @param zoom The zoom level
+   * @return The tile y coordinate, clamped to the valid range
+   */
+  public static int latToTileY(double lat, int zoom) {
+    int n = tilesPerAxis(zoom);
+    double clamped = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, lat));
+    double radians = Math.toRadians(clamped);
+    double mercator = Math.log(Math.tan(radians) + 1.0 / Math.cos(radians));
+    int y = (int) Math.floor((1.0 - mercator / Math.PI) / 2.0 * n);
+    return Math.max(0, Math.min(n - 1, y));
+  }
+
+  /**
+   * Get the longitude of the west edge of a tile column.
+   *
+   * @param x The tile x coordinate (x = 2^zoom gives the east edge of the last column)
+   * @param zoom The zoom level
+   * @return The longitude
+   */
+  public static double tileXToLng(int x, int zoom) {
+    return x / (double) tilesPerAxis(zoom) * 360.0 - 180.0;
+  }
+
+  /**
+   * Get the latitude of the north edge of a tile row.
+   *
+   * @param y The tile y coordinate (y = 2^zoom gives the south edge of the last row)
+   * @param zoom The zoom level
+   * @return The latitude
+   */
+  public static double tileYToLat(int y, int zoom) {
+    double mercator = Math.PI * (1.0 - 2.0 * y / tilesPerAxis(zoom));
+    return Math.toDegrees(Math.atan(Math.sinh(mercator)));
+  }
+
+  /**
+   * Check if a tile coordinate is valid.
+   *
+   * @param zoom The zoom level
+   * @param x The tile x coordinate
+   * @param y The tile y coordinate
+   * @return true if the zoom is supported and x and y are within range
+   */
+  public static boolean isValid(int zoom, int x, int y) {
+    if (zoom < 0 || zoom > MAX_ZOOM) {
+      return false;
+    }
+    int n = tilesPerAxis(zoom);
+    return x >= 0 && x < n && y >= 0 && y < n;
+  }
+}
@@ -6,6 +6,7 @@
 package edu.brown.cs.student.main.server.handlers;
 
 import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import spark.Request;
@@ -20,7 +21,7 @@ public class AddPins implements Route {
   }
 
   @Override
-  public Object handle(Request request, Response response) {
+  public Object handle(Request request, Response response) throws IOException {
     try {
       // Get parameters from request
       String userId = request.queryParams("userId");
@@ -35,11 +36,7 @@ public class AddPins implements Route {
           || latitude == null
           || longitude == null
           || timestamp == null) {
-        response.status(400);
-        Map<String, Object> errorResponse = new HashMap<>();
-        errorResponse.put("result", "error");
-        errorResponse.put("message", "Missing required parameters");
-        return Utils.toMoshiJson(errorResponse);
+        return Utils.error(response, 400, "Missing required parameters");
       }
 
       // Create pin data
@@ -54,18 +51,11 @@ public class AddPins implements Route {
       storage.addDocument(userId, pinId, pinData);
 
       // Return success response
-      Map<String, Object> successResponse = new HashMap<>();
-      successResponse.put("result", "success");
-      successResponse.put("pin", pinData);
-      return Utils.toMoshiJson(successResponse);
+      return Utils.writeJson(response, new Responses.PinResponse(pinData));
 
     } catch (Exception e) {
       e.printStackTrace();
-      response.status(500);
-      Map<String, Object> errorResponse = new HashMap<>();
-      errorResponse.put("result", "error");
-      errorResponse.put("message", e.getMessage());
-      return Utils.toMoshiJson(errorResponse);
+      return Utils.error(response, 500, e.getMessage());
     }
   }
 }
@@ -5,8 +5,7 @@
 package edu.brown.cs.student.main.server.handlers;
 
 import edu.brown.cs.student.main.server.storage.StorageInterface;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
 import spark.Request;
 import spark.Response;
 import spark.Route;
@@ -19,36 +18,28 @@ public class DropPins implements Route {
   }
 
   @Override
-  public Object handle(Request request, Response response) {
+  public Object handle(Request request, Response response) throws IOException {
     try {
       // Get userId parameter
       String userId = request.queryParams("userId");
 
       // Validate required parameter
       if (userId == null) {
-        response.status(400);
-        Map<String, Object> errorResponse = new HashMap<>();
-        errorResponse.put("result", "error");
-        errorResponse.put("message", "Missing required userId parameter");
-        return Utils.toMoshiJson(errorResponse);
+        return Utils.error(response, 400, "Missing required userId parameter");
       }
 
       // Clear pins for this user by querying the flat structure
-      storage.clearUser(userId);
+      int deleted = storage.clearUser(userId);
 
       // Return success response
-      Map<String, Object> successResponse = new HashMap<>();
-      successResponse.put("result", "success");
-      successResponse.put("message", "All pins for user " + userId + " have been cleared");
-      return Utils.toMoshiJson(successResponse);
+      return Utils.writeJson(
+          response,
+          new Responses.DropResponse(
+              "All pins for user " + userId + " have been cleared", deleted));
 
     } catch (Exception e) {
       e.printStackTrace();
-      response.status(500);
-      Map<String, Object> errorResponse = new HashMap<>();
-      errorResponse.put("result", "error");
-      errorResponse.put("message", e.getMessage());
-      return Utils.toMoshiJson(errorResponse);
+      return Utils.error(response, 500, e.getMessage());
     }
   }
 }
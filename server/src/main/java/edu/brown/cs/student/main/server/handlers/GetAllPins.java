@@ -1,14 +1,27 @@
 package edu.brown.cs.student.main.server.handlers;
 
+import edu.brown.cs.student.main.server.storage.PinChanges;
+import edu.brown.cs.student.main.server.storage.PinPage;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
 import spark.Request;
 import spark.Response;
 import spark.Route;
 
+/**
+ * Handler for the /get-all-pins endpoint. Without parameters it returns every pin. With {@code
+ * limit} (and {@code startAfter}, the {@code nextCursor} of the previous page) it returns one page
+ * of pins ordered by timestamp. With {@code since} it returns only the pins added after that time
+ * and the pins removed after {@code removedSince} (which defaults to {@code since}), plus the
+ * {@code cursor} and {@code removedCursor} to pass back as those on the next poll. The two are kept
+ * apart because pin timestamps come from clients and deletion times from the server. If the storage
+ * no longer remembers every deletion since {@code removedSince}, the answer has {@code resync} set
+ * and holds every pin instead.
+ */
 public class GetAllPins implements Route {
+  // Largest page a client may ask for
+  private static final int MAX_LIMIT = 1000;
+
   private final StorageInterface storage;
 
   public GetAllPins(StorageInterface storage) {
@@ -16,24 +29,66 @@ public class GetAllPins implements Route {
   }
 
   @Override
-  public Object handle(Request request, Response response) {
+  public Object handle(Request request, Response response) throws IOException {
     try {
-      // Get all pins from the single pins collection
-      List<Map<String, Object>> allPins = storage.getAllPins();
+      String since = request.queryParams("since");
+      String limit = request.queryParams("limit");
+      String startAfter = request.queryParams("startAfter");
+      String removedSince = request.queryParams("removedSince");
+
+      if (since != null) {
+        // Only what changed since the client's last poll
+        long sinceTime;
+        long removedSinceTime;
+        try {
+          sinceTime = Long.parseLong(since);
+          removedSinceTime = removedSince == null ? sinceTime : Long.parseLong(removedSince);
+        } catch (NumberFormatException e) {
+          return Utils.error(
+              response,
+              400,
+              "Parameters since and removedSince must be timestamps in milliseconds");
+        }
+        PinChanges changes = storage.getChangesSince(sinceTime, removedSinceTime);
+        return Utils.writeJson(
+            response,
+            new Responses.PinChangesResponse(
+                changes.getPins(),
+                changes.getRemoved(),
+                changes.getCursor(),
+                changes.getRemovedCursor(),
+                changes.isResync()));
+      }
+
+      if (limit != null || startAfter != null) {
+        // One page of pins
+        int pageSize;
+        try {
+          pageSize = limit == null ? MAX_LIMIT : Integer.parseInt(limit);
+        } catch (NumberFormatException e) {
+          pageSize = -1;
+        }
+        if (pageSize < 1 || pageSize > MAX_LIMIT) {
+          return Utils.error(response, 400, "Parameter limit must be between 1 and " + MAX_LIMIT);
+        }
+        PinPage page;
+        try {
+          page = storage.getPins(pageSize, startAfter);
+        } catch (IllegalArgumentException e) {
+          return Utils.error(response, 400, e.getMessage());
+        }
+        // Moshi leaves out null values, so the last page simply has no nextCursor
+        return Utils.writeJson(
+            response, new Responses.PinPageResponse(page.getPins(), page.getNextCursor()));
+      }
 
-      // Return success response
-      Map<String, Object> successResponse = new HashMap<>();
-      successResponse.put("result", "success");
-      successResponse.put("pins", allPins);
-      return Utils.toMoshiJson(successResponse);
+      // Get all pins from the single pins collection, already serialized by the storage
+      response.type("application/json");
+      return "{\"result\":\"success\",\"pins\":" + storage.getAllPinsJson() + "}";
 
     } catch (Exception e) {
       e.printStackTrace();
-      response.status(500);
-      Map<String, Object> errorResponse = new HashMap<>();
-      errorResponse.put("result", "error");
-      errorResponse.put("message", e.getMessage());
-      return Utils.toMoshiJson(errorResponse);
+      return Utils.error(response, 500, e.getMessage());
     }
   }
 }
@@ -0,0 +1,26 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.geoJson.RedliningDataCache;
+import java.io.IOException;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/** Handler for the /redlining-cache-stats endpoint. Reports the counters of the redlining cache. */
+public class GetCacheStats implements Route {
+  private final RedliningDataCache cache;
+
+  /**
+   * Constructor for the GetCacheStats handler.
+   *
+   * @param cache The cache to report on
+   */
+  public GetCacheStats(RedliningDataCache cache) {
+    this.cache = cache;
+  }
+
+  @Override
+  public Object handle(Request request, Response response) throws IOException {
+    return Utils.writeJson(response, new Responses.CacheStatsResponse(cache.getStats()));
+  }
+}
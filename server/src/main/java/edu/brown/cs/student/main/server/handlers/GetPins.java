@@ -0,0 +1,82 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * Handler for the /get-pins endpoint. Returns the pins inside a viewport, given as
+ * minLat/minLng/maxLat/maxLng, or within a radius in meters of a point, given as lat/lng/radius.
+ */
+public class GetPins implements Route {
+  private final StorageInterface storage;
+
+  /**
+   * Constructor for the GetPins handler.
+   *
+   * @param storage The pin storage to query
+   */
+  public GetPins(StorageInterface storage) {
+    this.storage = storage;
+  }
+
+  @Override
+  public Object handle(Request request, Response response) throws IOException {
+    try {
+      List<Map<String, Object>> pins;
+      if (request.queryParams("radius") != null) {
+        Double lat = parseDoubleParam(request, "lat");
+        Double lng = parseDoubleParam(request, "lng");
+        Double radius = parseDoubleParam(request, "radius");
+        if (lat == null || lng == null || radius == null || radius < 0) {
+          return Utils.error(
+              response, 400, "Radius queries need lat, lng and a non-negative radius in meters");
+        }
+        pins = storage.getPinsNear(lat, lng, radius);
+      } else {
+        Double minLat = parseDoubleParam(request, "minLat");
+        Double minLng = parseDoubleParam(request, "minLng");
+        Double maxLat = parseDoubleParam(request, "maxLat");
+        Double maxLng = parseDoubleParam(request, "maxLng");
+        if (minLat == null || minLng == null || maxLat == null || maxLng == null) {
+          return Utils.error(
+              response, 400, "Provide minLat, minLng, maxLat and maxLng, or lat, lng and radius");
+        }
+        if (minLat > maxLat) {
+          return Utils.error(response, 400, "minLat must not be greater than maxLat");
+        }
+        pins = storage.getPinsInBox(minLat, minLng, maxLat, maxLng);
+      }
+
+      return Utils.writeJson(response, new Responses.PinsResponse(pins));
+
+    } catch (Exception e) {
+      e.printStackTrace();
+      return Utils.error(response, 500, e.getMessage());
+    }
+  }
+
+  /**
+   * Parse a double parameter from the request.
+   *
+   * @param request The HTTP request
+   * @param paramName The parameter name
+   * @return The parsed value, or null if it is missing or not a finite number
+   */
+  private Double parseDoubleParam(Request request, String paramName) {
+    String paramValue = request.queryParams(paramName);
+    if (paramValue == null || paramValue.isEmpty()) {
+      return null;
+    }
+    try {
+      double value = Double.parseDouble(paramValue);
+      return Double.isFinite(value) ? value : null;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
@@ -4,39 +4,45 @@
 
 package edu.brown.cs.student.main.server.handlers;
 
-import edu.brown.cs.student.main.server.geoJson.GeoJsonObject;
+import edu.brown.cs.student.main.server.geoJson.DetailLevels;
 import edu.brown.cs.student.main.server.geoJson.GeoJsonParser;
 import edu.brown.cs.student.main.server.geoJson.RedliningDataCache;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import edu.brown.cs.student.main.server.geoJson.RedliningDataset;
+import java.io.IOException;
+import java.util.function.Supplier;
 import spark.Request;
 import spark.Response;
 import spark.Route;
 
 /**
  * Handler for the /get-redlining-data endpoint. Serves redlining GeoJSON data, filtered by a
- * bounding box if specified.
+ * bounding box if specified. The geometry is simplified to a level of detail chosen from the zoom
+ * parameter or, without it, from the size of the bounding box. Clients that list {@link
+ * Utils#GEOBUF_TYPE} in their Accept header get the features in the Geobuf binary format instead of
+ * GeoJSON. Each request is answered entirely from the dataset version current when it started.
  */
 public class GetRedliningData implements Route {
-  private final GeoJsonParser geoJsonParser;
+  private final RedliningDataset dataset;
   private final RedliningDataCache cache;
 
   /**
    * Constructor for the GetRedliningData handler.
    *
-   * @param geoJsonParser The parser to use for GeoJSON data
+   * @param dataset The redlining dataset to serve
    * @param cache The cache to use for caching filtered results
    */
-  public GetRedliningData(GeoJsonParser geoJsonParser, RedliningDataCache cache) {
-    this.geoJsonParser = geoJsonParser;
+  public GetRedliningData(RedliningDataset dataset, RedliningDataCache cache) {
+    this.dataset = dataset;
     this.cache = cache;
   }
 
   @Override
-  public Object handle(Request request, Response response) {
+  public Object handle(Request request, Response response) throws IOException {
     try {
+      // Use one version of the data throughout, even if a reload swaps in another meanwhile
+      RedliningDataset.Version version = dataset.current();
+      GeoJsonParser geoJsonParser = version.data();
+
       // Set content type for GeoJSON response
       response.type("application/json");
 
@@ -46,103 +52,91 @@ public class GetRedliningData implements Route {
       Double maxLat = parseDoubleParam(request, "maxLat", 90.0);
       Double maxLng = parseDoubleParam(request, "maxLng", 180.0);
 
-      // Generate cache key based on bounding box parameters
-      String cacheKey = String.format("%.6f:%.6f:%.6f:%.6f", minLat, minLng, maxLat, maxLng);
-
-      // Check if we have this query in cache
-      if (cache.hasData(cacheKey)) {
-        System.out.println("Cache hit for key: " + cacheKey);
-        return cache.getData(cacheKey);
+      // Pick the level of detail from the zoom if given, or else from the size of the box;
+      // requests without either get full detail, as before levels existed
+      int level = 0;
+      Integer zoom = parseIntParam(request, "zoom");
+      if (zoom != null) {
+        level = DetailLevels.forZoom(zoom);
+      } else if (hasBoundingBox(request)) {
+        level = DetailLevels.forSpan(maxLat - minLat, maxLng - minLng);
       }
 
-      // If not in cache, filter the data
-      System.out.println("Cache miss for key: " + cacheKey + ", filtering data...");
-      GeoJsonObject fullData = geoJsonParser.getData();
-      GeoJsonObject filteredData = filterByBoundingBox(fullData, minLat, minLng, maxLat, maxLng);
+      // Generate cache key based on bounding box parameters and level of detail
+      String boxKey =
+          String.format("%.6f:%.6f:%.6f:%.6f@%d", minLat, minLng, maxLat, maxLng, level);
 
-      // Convert to JSON string
-      String jsonResponse = geoJsonParser.toJson(filteredData);
+      // Clients listing the Geobuf media type get the binary encoding, cached under its own key.
+      // Keys carry the version, so nothing cached from replaced data is ever served.
+      boolean geobuf = Utils.acceptsGeobuf(request);
+      String cacheKey = version.cacheKey(geobuf ? boxKey + "#geobuf" : boxKey);
+      if (geobuf) {
+        response.type(Utils.GEOBUF_TYPE);
+      }
 
-      // Cache the result
-      cache.putData(cacheKey, jsonResponse);
+      // On a cache miss, filter the data and assemble the response from the prebuilt feature
+      // fragments. Concurrent misses on the same key share a single computation.
+      final int detailLevel = level;
+      Supplier<byte[]> loader =
+          () -> {
+            System.out.println("Cache miss for key: " + cacheKey + ", filtering data...");
+            int[] featureIds = geoJsonParser.featuresInBox(minLat, minLng, maxLat, maxLng);
+            return geobuf
+                ? geoJsonParser.toGeobufBytes(featureIds, detailLevel)
+                : geoJsonParser.toJsonBytes(featureIds, detailLevel);
+          };
+
+      // Clients that accept gzip get compressed bytes cached next to the plain ones, so a cache
+      // hit costs no compression work
+      response.header("Vary", "Accept, Accept-Encoding");
+      if (Utils.acceptsGzip(request)) {
+        byte[] gzipped =
+            cache.getOrCompute(
+                cacheKey + "#gzip", () -> Utils.gzip(cache.getOrCompute(cacheKey, loader)));
+        return Utils.sendGzipped(response, gzipped);
+      }
 
-      return jsonResponse;
+      // Spark writes byte[] bodies straight to the response output stream
+      return cache.getOrCompute(cacheKey, loader);
     } catch (Exception e) {
       e.printStackTrace();
-      response.status(500);
-      Map<String, Object> errorResponse = new HashMap<>();
-      errorResponse.put("result", "error");
-      errorResponse.put("message", e.getMessage());
-      return Utils.toMoshiJson(errorResponse);
+      return Utils.error(response, 500, e.getMessage());
     }
   }
 
   /**
-   * Filter GeoJSON data by a bounding box.
+   * Check whether the request gives any side of a bounding box.
    *
-   * @param data The full GeoJSON data
-   * @param minLat Minimum latitude
-   * @param minLng Minimum longitude
-   * @param maxLat Maximum latitude
-   * @param maxLng Maximum longitude
-   * @return Filtered GeoJSON data
+   * @param request The HTTP request
+   * @return true if any of minLat, minLng, maxLat or maxLng is present
    */
-  private GeoJsonObject filterByBoundingBox(
-      GeoJsonObject data, double minLat, double minLng, double maxLat, double maxLng) {
-    if (data == null || data.features == null) {
-      return data;
-    }
-
-    GeoJsonObject filteredData = new GeoJsonObject();
-    filteredData.type = data.type;
-    filteredData.features = new ArrayList<>();
-
-    for (GeoJsonObject.Feature feature : data.features) {
-      if (feature.geometry != null
-          && isFeatureInBoundingBox(feature, minLat, minLng, maxLat, maxLng)) {
-        filteredData.features.add(feature);
+  private boolean hasBoundingBox(Request request) {
+    for (String paramName : new String[] {"minLat", "minLng", "maxLat", "maxLng"}) {
+      String paramValue = request.queryParams(paramName);
+      if (paramValue != null && !paramValue.isEmpty()) {
+        return true;
       }
     }
-
-    return filteredData;
+    return false;
   }
 
   /**
-   * Check if a feature is contained within the bounding box.
+   * Parse an integer parameter from the request.
    *
-   * @param feature The feature to check
-   * @param minLat Minimum latitude
-   * @param minLng Minimum longitude
-   * @param maxLat Maximum latitude
-   * @param maxLng Maximum longitude
-   * @return true if the feature is within the bounding box
+   * @param request The HTTP request
+   * @param paramName The parameter name
+   * @return The parsed value, or null if it is missing or not an integer
    */
-  private boolean isFeatureInBoundingBox(
-      GeoJsonObject.Feature feature, double minLat, double minLng, double maxLat, double maxLng) {
-    if (feature.geometry == null || feature.geometry.coordinates == null) {
-      return false;
+  private Integer parseIntParam(Request request, String paramName) {
+    String paramValue = request.queryParams(paramName);
+    if (paramValue == null || paramValue.isEmpty()) {
+      return null;
     }
-
-    // The coordinates are in a complex nested structure: MultiPolygon -> Polygon -> Linear Ring ->
-    // Point
-    // For each point, check if it's within the bounding box
-    for (List<List<List<Double>>> polygon : feature.geometry.coordinates) {
-      for (List<List<Double>> ring : polygon) {
-        for (List<Double> point : ring) {
-          // GeoJSON uses [longitude, latitude] order
-          double lng = point.get(0);
-          double lat = point.get(1);
-
-          // If any point is outside the bounding box, the feature is not fully contained
-          if (lat < minLat || lat > maxLat || lng < minLng || lng > maxLng) {
-            return false;
-          }
-        }
-      }
+    try {
+      return Integer.parseInt(paramValue);
+    } catch (NumberFormatException e) {
+      return null;
     }
-
-    // All points are within the bounding box
-    return true;
   }
 
   /**
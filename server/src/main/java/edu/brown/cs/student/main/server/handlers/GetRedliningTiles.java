@@ -0,0 +1,241 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.geoJson.DetailLevels;
+import edu.brown.cs.student.main.server.geoJson.GeoJsonParser;
+import edu.brown.cs.student.main.server.geoJson.RedliningDataCache;
+import edu.brown.cs.student.main.server.geoJson.RedliningDataset;
+import edu.brown.cs.student.main.server.geoJson.TileCoordinates;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.BitSet;
+import java.util.function.Supplier;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * Handler for the /get-redlining-tiles endpoint. Serves the redlining features overlapping a
+ * web-map tile, given either as z/x/y or as a zoom level plus a bounding box, which is widened to
+ * the block of tiles covering it. The ids of the features in each tile are cached per z/x/y, and a
+ * block is assembled from its tiles, so panning a viewport only searches the tiles that came into
+ * view. The geometry is simplified to the level of detail of the zoom, and sent as Geobuf to
+ * clients asking for it.
+ *
+ * <p>The serialized response is also cached per block. A feature spanning several tiles must appear
+ * in the response once, so responses cannot be concatenated from per-tile bytes; caching the whole
+ * block saves serializing it again when the same viewport is requested again.
+ */
+public class GetRedliningTiles implements Route {
+  // Blocks with more tiles than this are searched in one go instead of tile by tile
+  private static final int MAX_CACHED_TILES_PER_BLOCK = 256;
+
+  private final RedliningDataset dataset;
+  private final RedliningDataCache cache;
+
+  /**
+   * Constructor for the GetRedliningTiles handler.
+   *
+   * @param dataset The redlining dataset to serve
+   * @param cache The cache to use for caching tile results
+   */
+  public GetRedliningTiles(RedliningDataset dataset, RedliningDataCache cache) {
+    this.dataset = dataset;
+    this.cache = cache;
+  }
+
+  @Override
+  public Object handle(Request request, Response response) throws IOException {
+    try {
+      // Use one version of the data throughout, even if a reload swaps in another meanwhile
+      RedliningDataset.Version version = dataset.current();
+      GeoJsonParser geoJsonParser = version.data();
+
+      // Set content type for GeoJSON response
+      response.type("application/json");
+
+      Integer zoom = parseIntParam(request, "z");
+      if (zoom == null || zoom < 0 || zoom > TileCoordinates.MAX_ZOOM) {
+        return Utils.error(
+            response,
+            400,
+            "Parameter z must be a zoom level between 0 and " + TileCoordinates.MAX_ZOOM);
+      }
+
+      // Work out the block of tiles to serve: a single tile, or the tiles covering a bounding box
+      int minX;
+      int minY;
+      int maxX;
+      int maxY;
+      if (request.queryParams("x") != null || request.queryParams("y") != null) {
+        Integer x = parseIntParam(request, "x");
+        Integer y = parseIntParam(request, "y");
+        if (x == null || y == null || !TileCoordinates.isValid(zoom, x, y)) {
+          return Utils.error(response, 400, "Parameters x and y must be valid tile coordinates");
+        }
+        minX = maxX = x;
+        minY = maxY = y;
+      } else {
+        double minLat = parseDoubleParam(request, "minLat", -90.0);
+        double minLng = parseDoubleParam(request, "minLng", -180.0);
+        double maxLat = parseDoubleParam(request, "maxLat", 90.0);
+        double maxLng = parseDoubleParam(request, "maxLng", 180.0);
+        minX = TileCoordinates.lngToTileX(minLng, zoom);
+        maxX = TileCoordinates.lngToTileX(maxLng, zoom);
+        // Tile rows count down from the north
+        minY = TileCoordinates.latToTileY(maxLat, zoom);
+        maxY = TileCoordinates.latToTileY(minLat, zoom);
+      }
+
+      // The geometry is simplified to what can be seen at the tiles' zoom
+      int level = DetailLevels.forZoom(zoom);
+      String tilesKey =
+          "tiles:" + zoom + "/" + minX + "/" + minY + "/" + maxX + "/" + maxY + "@" + level;
+
+      // Clients listing the Geobuf media type get the binary encoding, cached under its own key
+      boolean geobuf = Utils.acceptsGeobuf(request);
+      String cacheKey = version.cacheKey(geobuf ? tilesKey + "#geobuf" : tilesKey);
+      if (geobuf) {
+        response.type(Utils.GEOBUF_TYPE);
+      }
+      // Concurrent misses on the same tiles share a single computation
+      final int west = minX;
+      final int north = minY;
+      final int east = maxX;
+      final int south = maxY;
+      Supplier<byte[]> loader =
+          () -> {
+            System.out.println("Cache miss for key: " + cacheKey + ", filtering data...");
+            int[] featureIds = findFeaturesInBlock(version, zoom, west, north, east, south);
+            return geobuf
+                ? geoJsonParser.toGeobufBytes(featureIds, level)
+                : geoJsonParser.toJsonBytes(featureIds, level);
+          };
+
+      // Clients that accept gzip get compressed bytes cached next to the plain ones
+      response.header("Vary", "Accept, Accept-Encoding");
+      if (Utils.acceptsGzip(request)) {
+        byte[] gzipped =
+            cache.getOrCompute(
+                cacheKey + "#gzip", () -> Utils.gzip(cache.getOrCompute(cacheKey, loader)));
+        return Utils.sendGzipped(response, gzipped);
+      }
+
+      // Spark writes byte[] bodies straight to the response output stream
+      return cache.getOrCompute(cacheKey, loader);
+    } catch (Exception e) {
+      e.printStackTrace();
+      return Utils.error(response, 500, e.getMessage());
+    }
+  }
+
+  /**
+   * Find the features whose envelope overlaps a block of tiles, from the cached features of each
+   * tile. Blocks too large to be worth caching tile by tile are searched directly.
+   *
+   * @param version The version of the data to search
+   * @param zoom The zoom level
+   * @param minX The westernmost tile column
+   * @param minY The northernmost tile row
+   * @param maxX The easternmost tile column
+   * @param maxY The southernmost tile row
+   * @return The ids of the overlapping features, in dataset order
+   */
+  private int[] findFeaturesInBlock(
+      RedliningDataset.Version version, int zoom, int minX, int minY, int maxX, int maxY) {
+    GeoJsonParser geoJsonParser = version.data();
+    long tiles = (long) (maxX - minX + 1) * (maxY - minY + 1);
+    if (tiles > MAX_CACHED_TILES_PER_BLOCK) {
+      return findFeaturesInTiles(geoJsonParser, zoom, minX, minY, maxX, maxY);
+    }
+
+    // Features overlapping several tiles are found in each; the bit set keeps one of each, in
+    // dataset order
+    BitSet featureIds = new BitSet();
+    for (int x = minX; x <= maxX; x++) {
+      for (int y = minY; y <= maxY; y++) {
+        final int tileX = x;
+        final int tileY = y;
+        byte[] tileIds =
+            cache.getOrCompute(
+                version.cacheKey("tile:" + zoom + "/" + x + "/" + y),
+                () ->
+                    encodeIds(
+                        findFeaturesInTiles(geoJsonParser, zoom, tileX, tileY, tileX, tileY)));
+        IntBuffer ids = ByteBuffer.wrap(tileIds).asIntBuffer();
+        while (ids.hasRemaining()) {
+          featureIds.set(ids.get());
+        }
+      }
+    }
+    return featureIds.stream().toArray();
+  }
+
+  /** Pack feature ids into bytes, which is what the cache holds. */
+  private static byte[] encodeIds(int[] featureIds) {
+    ByteBuffer bytes = ByteBuffer.allocate(featureIds.length * Integer.BYTES);
+    bytes.asIntBuffer().put(featureIds);
+    return bytes.array();
+  }
+
+  /**
+   * Find the features whose envelope overlaps a block of tiles.
+   *
+   * @param geoJsonParser The version of the data to search
+   * @param zoom The zoom level
+   * @param minX The westernmost tile column
+   * @param minY The northernmost tile row
+   * @param maxX The easternmost tile column
+   * @param maxY The southernmost tile row
+   * @return The ids of the overlapping features, in dataset order
+   */
+  private int[] findFeaturesInTiles(
+      GeoJsonParser geoJsonParser, int zoom, int minX, int minY, int maxX, int maxY) {
+    int lastTile = TileCoordinates.tilesPerAxis(zoom) - 1;
+    double west = TileCoordinates.tileXToLng(minX, zoom);
+    double east = TileCoordinates.tileXToLng(maxX + 1, zoom);
+    // The outermost rows also take in anything beyond the Web Mercator cut-off
+    double north = minY == 0 ? 90.0 : TileCoordinates.tileYToLat(minY, zoom);
+    double south = maxY == lastTile ? -90.0 : TileCoordinates.tileYToLat(maxY + 1, zoom);
+    return geoJsonParser.getSpatialIndex().search(west, south, east, north);
+  }
+
+  /**
+   * Parse an integer parameter from the request.
+   *
+   * @param request The HTTP request
+   * @param paramName The parameter name
+   * @return The parsed value, or null if it is missing or not an integer
+   */
+  private Integer parseIntParam(Request request, String paramName) {
+    String paramValue = request.queryParams(paramName);
+    if (paramValue == null || paramValue.isEmpty()) {
+      return null;
+    }
+    try {
+      return Integer.parseInt(paramValue);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Parse a double parameter from the request, using a default value if not provided.
+   *
+   * @param request The HTTP request
+   * @param paramName The parameter name
+   * @param defaultValue The default value
+   * @return The parsed double value
+   */
+  private double parseDoubleParam(Request request, String paramName, double defaultValue) {
+    String paramValue = request.queryParams(paramName);
+    if (paramValue == null || paramValue.isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(paramValue);
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+}
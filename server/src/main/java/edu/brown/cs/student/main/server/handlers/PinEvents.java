@@ -0,0 +1,94 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.storage.PinEventBus;
+import edu.brown.cs.student.main.server.storage.PinEventBus.PinEvent;
+import edu.brown.cs.student.main.server.storage.PinEventBus.Subscription;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * Handler for the /pin-events endpoint, a Server-Sent Events stream of pin changes. Each event has
+ * the type {@code add} (the data is the pin), {@code clear} (the data holds the userId and the
+ * number of pins deleted) or {@code reset} (the client missed events and should reload all pins).
+ *
+ * <p>A reconnecting client resumes after the last event it saw: browsers send its id in the
+ * Last-Event-ID header by themselves, and other clients can pass it as the lastEventId parameter.
+ * The stream holds its request thread until the client disconnects; a comment line is sent while it
+ * is idle so proxies keep the connection open and dead clients are noticed. Because of that, the
+ * bus caps the number of open streams; past the cap the endpoint answers 503 with a Retry-After
+ * header, and browsers retry on their own.
+ */
+public class PinEvents implements Route {
+  // Time without events after which a heartbeat is sent
+  private static final long HEARTBEAT_SECONDS = 15;
+
+  // Time browsers wait before reconnecting after the stream drops
+  private static final long RETRY_MILLIS = 3000;
+
+  private final PinEventBus eventBus;
+
+  /**
+   * Constructor for the PinEvents handler.
+   *
+   * @param eventBus The bus the pin events are published on
+   */
+  public PinEvents(PinEventBus eventBus) {
+    this.eventBus = eventBus;
+  }
+
+  @Override
+  public Object handle(Request request, Response response)
+      throws IOException, InterruptedException {
+    String lastEventId = request.headers("Last-Event-ID");
+    if (lastEventId == null) {
+      lastEventId = request.queryParams("lastEventId");
+    }
+
+    Subscription subscription = eventBus.subscribe(lastEventId);
+    if (subscription == null) {
+      response.header("Retry-After", Long.toString(RETRY_MILLIS / 1000));
+      return Utils.error(response, 503, "Too many open event streams");
+    }
+
+    response.status(200);
+    response.type("text/event-stream");
+    response.header("Cache-Control", "no-cache");
+    // Keep reverse proxies from buffering the stream
+    response.header("X-Accel-Buffering", "no");
+
+    try (subscription) {
+      OutputStream out = response.raw().getOutputStream();
+      write(out, "retry: " + RETRY_MILLIS + "\n\n");
+      // A subscriber dropped for falling behind ends its stream; the client reconnects and resumes
+      while (!subscription.isFinished()) {
+        PinEvent event = subscription.poll(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+        if (event == null) {
+          write(out, ": heartbeat\n\n");
+        } else {
+          write(
+              out,
+              "id: "
+                  + event.getId()
+                  + "\nevent: "
+                  + event.getType()
+                  + "\ndata: "
+                  + event.getData()
+                  + "\n\n");
+        }
+      }
+    } catch (IOException e) {
+      // The client went away
+    }
+    return "";
+  }
+
+  private static void write(OutputStream out, String text) throws IOException {
+    out.write(text.getBytes(StandardCharsets.UTF_8));
+    out.flush();
+  }
+}
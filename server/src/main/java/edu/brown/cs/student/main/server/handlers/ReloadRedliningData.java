@@ -0,0 +1,67 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.geoJson.RedliningDataset;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.CompletionException;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * Handler for the /admin/reload-redlining endpoint. Reloads the redlining dataset from its file and
+ * answers once the new version is being served, while other requests keep being answered from the
+ * old one. Callers must send the admin token as {@code Authorization: Bearer <token>}.
+ */
+public class ReloadRedliningData implements Route {
+  private final RedliningDataset dataset;
+  private final byte[] token;
+
+  /**
+   * Constructor for the ReloadRedliningData handler.
+   *
+   * @param dataset The dataset to reload
+   * @param token The admin token callers must present
+   */
+  public ReloadRedliningData(RedliningDataset dataset, String token) {
+    this.dataset = dataset;
+    this.token = token.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public Object handle(Request request, Response response) throws IOException {
+    if (!isAuthorized(request)) {
+      return Utils.error(response, 401, "A valid admin token is required");
+    }
+
+    long before = dataset.current().number();
+    try {
+      RedliningDataset.Version version = dataset.reload().join();
+      return Utils.writeJson(
+          response,
+          new Responses.ReloadResponse(
+              version.number(), version.data().getData().size(), version.number() != before));
+    } catch (CompletionException e) {
+      // The cause stays in the server log; the caller only learns that the old data is kept
+      e.getCause().printStackTrace();
+      return Utils.error(response, 500, "Reload failed; the previous data is still being served");
+    }
+  }
+
+  /**
+   * Check the bearer token of a request, in time independent of where it differs from the admin
+   * token.
+   *
+   * @param request The HTTP request
+   * @return true if the request carries the admin token
+   */
+  private boolean isAuthorized(Request request) {
+    String authorization = request.headers("Authorization");
+    if (authorization == null || !authorization.startsWith("Bearer ")) {
+      return false;
+    }
+    byte[] presented = authorization.substring("Bearer ".length()).getBytes(StandardCharsets.UTF_8);
+    return MessageDigest.isEqual(presented, token);
+  }
+}
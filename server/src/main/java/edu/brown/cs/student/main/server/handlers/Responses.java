@@ -0,0 +1,87 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed bodies of the JSON responses sent by the handlers. Each record serializes to the same
+ * fields the handlers used to put into a map by hand; the short constructors fill in the result.
+ */
+public final class Responses {
+  private Responses() {}
+
+  /** Body of every error response. */
+  public record ErrorResponse(String result, String message) {
+    public ErrorResponse(String message) {
+      this("error", message);
+    }
+  }
+
+  /** Body of /add-pin. */
+  public record PinResponse(String result, Map<String, Object> pin) {
+    public PinResponse(Map<String, Object> pin) {
+      this("success", pin);
+    }
+  }
+
+  /** Body of /drop-pins. */
+  public record DropResponse(String result, String message, int deleted) {
+    public DropResponse(String message, int deleted) {
+      this("success", message, deleted);
+    }
+  }
+
+  /** Body of /get-pins. */
+  public record PinsResponse(String result, List<Map<String, Object>> pins) {
+    public PinsResponse(List<Map<String, Object>> pins) {
+      this("success", pins);
+    }
+  }
+
+  /** Body of a paged /get-all-pins; nextCursor is left out on the last page. */
+  public record PinPageResponse(String result, List<Map<String, Object>> pins, String nextCursor) {
+    public PinPageResponse(List<Map<String, Object>> pins, String nextCursor) {
+      this("success", pins, nextCursor);
+    }
+  }
+
+  /** Body of /get-all-pins in changes-since mode; resync means pins replaces every pin. */
+  public record PinChangesResponse(
+      String result,
+      List<Map<String, Object>> pins,
+      List<Map<String, Object>> removed,
+      long cursor,
+      long removedCursor,
+      boolean resync) {
+    public PinChangesResponse(
+        List<Map<String, Object>> pins,
+        List<Map<String, Object>> removed,
+        long cursor,
+        long removedCursor,
+        boolean resync) {
+      this("success", pins, removed, cursor, removedCursor, resync);
+    }
+  }
+
+  /** Body of /search-redlining. */
+  public record SearchResponse(
+      String result, String keyword, List<String> matchingFeatures, int totalMatches) {
+    public SearchResponse(String keyword, List<String> matchingFeatures) {
+      this("success", keyword, matchingFeatures, matchingFeatures.size());
+    }
+  }
+
+  /** Body of /redlining-cache-stats. */
+  public record CacheStatsResponse(String result, Map<String, Object> cache) {
+    public CacheStatsResponse(Map<String, Object> cache) {
+      this("success", cache);
+    }
+  }
+
+  /** Body of /admin/reload-redlining; changed is false if the file was the same as before. */
+  public record ReloadResponse(String result, long version, int features, boolean changed) {
+    public ReloadResponse(long version, int features, boolean changed) {
+      this("success", version, features, changed);
+    }
+  }
+}
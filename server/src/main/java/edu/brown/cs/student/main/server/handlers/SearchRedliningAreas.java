@@ -1,30 +1,30 @@
 package edu.brown.cs.student.main.server.handlers;
 
-import edu.brown.cs.student.main.server.geoJson.GeoJsonObject;
+import edu.brown.cs.student.main.server.geoJson.FeatureStore;
 import edu.brown.cs.student.main.server.geoJson.GeoJsonParser;
+import edu.brown.cs.student.main.server.geoJson.RedliningDataset;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import spark.Request;
 import spark.Response;
 import spark.Route;
 
 /** Handler for the /search-redlining endpoint. */
 public class SearchRedliningAreas implements Route {
-  private final GeoJsonParser geoJsonParser;
+  private final RedliningDataset dataset;
 
   /**
    * Constructor for the SearchRedliningAreas handler.
    *
-   * @param geoJsonParser The parser to use for GeoJSON data
+   * @param dataset The redlining dataset to search
    */
-  public SearchRedliningAreas(GeoJsonParser geoJsonParser) {
-    this.geoJsonParser = geoJsonParser;
+  public SearchRedliningAreas(RedliningDataset dataset) {
+    this.dataset = dataset;
   }
 
   @Override
-  public Object handle(Request request, Response response) {
+  public Object handle(Request request, Response response) throws IOException {
     try {
       // Set content type for JSON response
       response.type("application/json");
@@ -32,75 +32,45 @@ public class SearchRedliningAreas implements Route {
       // Get the search keyword from the request (case insensitive)
       String keyword = request.queryParams("keyword");
       if (keyword == null || keyword.trim().isEmpty()) {
-        response.status(400);
-        Map<String, Object> errorResponse = new HashMap<>();
-        errorResponse.put("result", "error");
-        errorResponse.put("message", "Search keyword is required");
-        return Utils.toMoshiJson(errorResponse);
+        return Utils.error(response, 400, "Search keyword is required");
       }
 
       keyword = keyword.trim().toLowerCase();
       System.out.println("Searching for keyword: " + keyword);
 
-      // Get all redlining data
-      GeoJsonObject allData = geoJsonParser.getData();
-      if (allData == null || allData.features == null) {
-        response.status(500);
-        Map<String, Object> errorResponse = new HashMap<>();
-        errorResponse.put("result", "error");
-        errorResponse.put("message", "Failed to get redlining data");
-        return Utils.toMoshiJson(errorResponse);
+      // Get all redlining data, with the index of the same version
+      GeoJsonParser geoJsonParser = dataset.current().data();
+      FeatureStore allData = geoJsonParser.getData();
+      if (allData == null) {
+        return Utils.error(response, 500, "Failed to get redlining data");
       }
 
-      // Search for features with the keyword in their area descriptions
+      // Look up features with the keyword in their area_description_data map, as per user story
+      // requirements, using the index built at load time instead of scanning every description
       List<String> matchingFeatureIds = new ArrayList<>();
 
-      for (GeoJsonObject.Feature feature : allData.features) {
-        if (feature.properties != null) {
-          boolean found = false;
+      for (int featureIndex : geoJsonParser.getSearchIndex().search(keyword)) {
+        // The flyweight decodes only the two properties needed here
+        FeatureStore.Feature feature = allData.feature(featureIndex);
+        String city = feature.city();
+        String holcGrade = feature.holcGrade();
 
-          // Search in area_description_data map as per user story requirements
-          if (feature.properties.area_description_data != null) {
-            for (Map.Entry<String, String> entry :
-                feature.properties.area_description_data.entrySet()) {
-              String value = entry.getValue();
-              if (value != null && value.toLowerCase().contains(keyword)) {
-                found = true;
-                break;
-              }
-            }
-          }
-
-          if (found) {
-            // Create a unique identifier for this feature (combining city and holc_grade)
-            String featureId =
-                (feature.properties.city != null ? feature.properties.city : "")
-                    + "-"
-                    + (feature.properties.holc_grade != null ? feature.properties.holc_grade : "")
-                    + "-"
-                    + matchingFeatureIds.size(); // Add index to ensure uniqueness
-            matchingFeatureIds.add(featureId);
-          }
-        }
+        // Create a unique identifier for this feature (combining city and holc_grade)
+        String featureId =
+            (city != null ? city : "")
+                + "-"
+                + (holcGrade != null ? holcGrade : "")
+                + "-"
+                + matchingFeatureIds.size(); // Add index to ensure uniqueness
+        matchingFeatureIds.add(featureId);
       }
 
-      // Prepare response
-      Map<String, Object> successResponse = new HashMap<>();
-      successResponse.put("result", "success");
-      successResponse.put("keyword", keyword);
-      successResponse.put("matchingFeatures", matchingFeatureIds);
-      successResponse.put("totalMatches", matchingFeatureIds.size());
-
       System.out.println("Found " + matchingFeatureIds.size() + " matches for keyword: " + keyword);
 
-      return Utils.toMoshiJson(successResponse);
+      return Utils.writeJson(response, new Responses.SearchResponse(keyword, matchingFeatureIds));
     } catch (Exception e) {
       e.printStackTrace();
-      response.status(500);
-      Map<String, Object> errorResponse = new HashMap<>();
-      errorResponse.put("result", "error");
-      errorResponse.put("message", e.getMessage());
-      return Utils.toMoshiJson(errorResponse);
+      return Utils.error(response, 500, e.getMessage());
     }
   }
 }
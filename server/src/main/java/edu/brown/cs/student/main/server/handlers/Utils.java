@@ -3,16 +3,180 @@ package edu.brown.cs.student.main.server.handlers;
 import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.Moshi;
 import com.squareup.moshi.Types;
-import java.lang.reflect.Type;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+import okio.BufferedSink;
+import okio.Okio;
+import spark.Request;
+import spark.Response;
 
 public class Utils {
+  /**
+   * Media type of Geobuf-encoded feature collections, which clients ask for by listing it in
+   * Accept.
+   */
+  public static final String GEOBUF_TYPE = "application/vnd.geobuf";
+
+  // Moshi instances and their adapters are thread-safe, so one of each serves every request
+  private static final Moshi MOSHI = new Moshi.Builder().build();
+
+  private static final JsonAdapter<Map<String, Object>> MAP_ADAPTER =
+      MOSHI.adapter(Types.newParameterizedType(Map.class, String.class, Object.class));
+
+  private static final Map<Class<?>, JsonAdapter<?>> ADAPTERS = new ConcurrentHashMap<>();
 
   public static String toMoshiJson(Map<String, Object> map) {
-    Moshi moshi = new Moshi.Builder().build();
-    Type mapStringObject = Types.newParameterizedType(Map.class, String.class, Object.class);
-    JsonAdapter<Map<String, Object>> adapter = moshi.adapter(mapStringObject);
+    return MAP_ADAPTER.toJson(map);
+  }
+
+  /**
+   * Get the shared Moshi instance.
+   *
+   * @return The Moshi instance
+   */
+  public static Moshi moshi() {
+    return MOSHI;
+  }
+
+  /**
+   * Get the adapter for a type, resolving it only the first time it is asked for.
+   *
+   * @param type The class to serialize
+   * @return The cached adapter
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> JsonAdapter<T> adapter(Class<T> type) {
+    return (JsonAdapter<T>) ADAPTERS.computeIfAbsent(type, MOSHI::adapter);
+  }
+
+  /**
+   * Serialize a response body straight into the response stream instead of building a string first.
+   *
+   * @param response The HTTP response
+   * @param body The body, usually one of the {@link Responses} records
+   * @return The value for the route to return
+   * @throws IOException if writing to the client fails
+   */
+  @SuppressWarnings("unchecked")
+  public static Object writeJson(Response response, Object body) throws IOException {
+    JsonAdapter<Object> adapter = (JsonAdapter<Object>) adapter(body.getClass());
+    response.type("application/json");
+    BufferedSink sink = Okio.buffer(Okio.sink(response.raw().getOutputStream()));
+    adapter.toJson(sink, body);
+    sink.flush();
+    return "";
+  }
+
+  /**
+   * Send an error response.
+   *
+   * @param response The HTTP response
+   * @param status The HTTP status code
+   * @param message The error message
+   * @return The value for the route to return
+   * @throws IOException if writing to the client fails
+   */
+  public static Object error(Response response, int status, String message) throws IOException {
+    response.status(status);
+    return writeJson(response, new Responses.ErrorResponse(message));
+  }
+
+  /**
+   * Check if the client accepts gzip-encoded responses, i.e. lists gzip (or *) in its
+   * Accept-Encoding header without a zero quality value.
+   *
+   * @param request The HTTP request
+   * @return true if the response may be gzip-encoded
+   */
+  public static boolean acceptsGzip(Request request) {
+    return listsWithoutZeroQuality(request.headers("Accept-Encoding"), "gzip", "*");
+  }
+
+  /**
+   * Check if the client asks for Geobuf, i.e. lists {@link #GEOBUF_TYPE} in its Accept header
+   * without a zero quality value. Wildcards do not count, so browsers sending *&#47;* keep getting
+   * GeoJSON.
+   *
+   * @param request The HTTP request
+   * @return true if the response should be Geobuf-encoded
+   */
+  public static boolean acceptsGeobuf(Request request) {
+    return listsWithoutZeroQuality(request.headers("Accept"), GEOBUF_TYPE);
+  }
+
+  /**
+   * Check if a comma-separated header such as Accept or Accept-Encoding lists one of some values
+   * without refusing it through a zero quality value.
+   *
+   * @param header The header value, or null if the header is missing
+   * @param accepted The values to look for, compared ignoring case
+   * @return true if one of the values is listed and not refused
+   */
+  private static boolean listsWithoutZeroQuality(String header, String... accepted) {
+    if (header == null) {
+      return false;
+    }
+    for (String part : header.split(",")) {
+      String[] tokens = part.trim().split(";");
+      String value = tokens[0].trim();
+      boolean listed = false;
+      for (String candidate : accepted) {
+        listed |= value.equalsIgnoreCase(candidate);
+      }
+      if (!listed) {
+        continue;
+      }
+      boolean refused = false;
+      for (int i = 1; i < tokens.length; i++) {
+        String parameter = tokens[i].trim().replace(" ", "");
+        if (parameter.matches("q=0(\\.0*)?")) {
+          refused = true;
+        }
+      }
+      if (!refused) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gzip-compress a response body.
+   *
+   * @param data The uncompressed bytes
+   * @return The gzip-compressed bytes
+   */
+  public static byte[] gzip(byte[] data) {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, data.length / 8));
+    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 64 * 1024)) {
+      gzip.write(data);
+    } catch (IOException e) {
+      // Writing to an in-memory stream does not fail
+      throw new IllegalStateException(e);
+    }
+    return compressed.toByteArray();
+  }
 
-    return adapter.toJson(map);
+  /**
+   * Send a gzip-compressed body as is. The bytes are written to the underlying servlet response and
+   * flushed, which commits the response; Spark then leaves it alone instead of compressing it a
+   * second time on its own because of the Content-Encoding header.
+   *
+   * @param response The HTTP response
+   * @param gzippedBody The gzip-compressed body
+   * @return The value for the route to return
+   * @throws IOException if writing to the client fails
+   */
+  public static Object sendGzipped(Response response, byte[] gzippedBody) throws IOException {
+    response.header("Content-Encoding", "gzip");
+    response.raw().setContentLength(gzippedBody.length);
+    OutputStream out = response.raw().getOutputStream();
+    out.write(gzippedBody);
+    out.flush();
+    return "";
   }
 }
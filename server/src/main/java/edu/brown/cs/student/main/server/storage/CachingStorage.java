@@ -0,0 +1,289 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Storage decorator that keeps every pin in memory, indexed by pin id, by user id and by position,
+ * and in paging order, and serves reads from there. Writes go to the underlying storage first,
+ * without holding the lock, so a slow write never holds up reads; only updating the memory copy
+ * afterwards takes the lock. The JSON of the whole pin list is built once and reused until the pins
+ * change.
+ *
+ * <p>Pins written to the underlying storage by anyone else (another server, the Firebase console)
+ * show up when the memory copy is reloaded, which happens once the refresh interval has passed.
+ * Only the first load blocks; later reloads run on a background thread while reads keep using the
+ * current copy, and writes made while a reload runs are applied again on top of what it loaded.
+ */
+public class CachingStorage implements StorageInterface {
+  private final StorageInterface delegate;
+  private final long refreshIntervalNanos;
+
+  private final Map<String, Map<String, Object>> pinsById = new LinkedHashMap<>();
+  private final Map<String, Set<String>> pinIdsByUser = new HashMap<>();
+  private final NavigableSet<Map<String, Object>> pinsInOrder = new TreeSet<>(PinPage.ORDER);
+  private final PinGridIndex gridIndex = new PinGridIndex();
+  private volatile long loadedAt;
+  private boolean loaded = false;
+  // Writes made while a background reload runs, or null when none is running
+  private List<Runnable> missedDuringRefresh;
+
+  // Serialized pin list, or null when it has to be rebuilt
+  private volatile String snapshot;
+
+  /**
+   * Wrap a storage backend.
+   *
+   * @param delegate The storage that holds the pins
+   * @param refreshInterval Time after which the pins are reloaded from the underlying storage
+   */
+  public CachingStorage(StorageInterface delegate, Duration refreshInterval) {
+    this.delegate = delegate;
+    this.refreshIntervalNanos = refreshInterval.toNanos();
+  }
+
+  @Override
+  public void addDocument(String userId, String pinId, Map<String, Object> data)
+      throws ExecutionException, InterruptedException {
+    synchronized (this) {
+      ensureLoaded();
+    }
+    delegate.addDocument(userId, pinId, data);
+    Map<String, Object> pin = new HashMap<>(data);
+    synchronized (this) {
+      put(pin);
+      recordWrite(() -> put(pin));
+      snapshot = null;
+    }
+  }
+
+  @Override
+  public void addDocuments(List<Map<String, Object>> pins)
+      throws ExecutionException, InterruptedException {
+    synchronized (this) {
+      ensureLoaded();
+    }
+    delegate.addDocuments(pins);
+    synchronized (this) {
+      for (Map<String, Object> data : pins) {
+        Map<String, Object> pin = new HashMap<>(data);
+        put(pin);
+        recordWrite(() -> put(pin));
+      }
+      snapshot = null;
+    }
+  }
+
+  @Override
+  public synchronized List<Map<String, Object>> getAllPins()
+      throws ExecutionException, InterruptedException {
+    ensureLoaded();
+    List<Map<String, Object>> allPins = new ArrayList<>(pinsById.size());
+    for (Map<String, Object> pin : pinsById.values()) {
+      // Hand out copies so callers cannot change the cached pins
+      allPins.add(new HashMap<>(pin));
+    }
+    return allPins;
+  }
+
+  /** Serve the cached JSON, rebuilding it only after the pins have changed. */
+  @Override
+  public String getAllPinsJson() throws ExecutionException, InterruptedException {
+    String current = snapshot;
+    if (current != null && !isStale()) {
+      return current;
+    }
+    synchronized (this) {
+      ensureLoaded();
+      if (snapshot == null) {
+        snapshot = PinJson.toJson(new ArrayList<>(pinsById.values()));
+      }
+      return snapshot;
+    }
+  }
+
+  @Override
+  public synchronized List<Map<String, Object>> getPinsInBox(
+      double minLat, double minLng, double maxLat, double maxLng)
+      throws ExecutionException, InterruptedException {
+    ensureLoaded();
+    return copies(gridIndex.search(minLat, minLng, maxLat, maxLng));
+  }
+
+  @Override
+  public synchronized List<Map<String, Object>> getPinsNear(
+      double lat, double lng, double radiusMeters) throws ExecutionException, InterruptedException {
+    ensureLoaded();
+    return copies(gridIndex.searchRadius(lat, lng, radiusMeters));
+  }
+
+  @Override
+  public synchronized PinPage getPins(int limit, String startAfter)
+      throws ExecutionException, InterruptedException {
+    ensureLoaded();
+    // Walk the pins in page order from just past the cursor, reading one extra to detect the end
+    Iterable<Map<String, Object>> remaining =
+        startAfter == null
+            ? pinsInOrder
+            : pinsInOrder.tailSet(
+                probe(PinPage.cursorTimestamp(startAfter), PinPage.cursorId(startAfter)), false);
+    List<Map<String, Object>> pins = new ArrayList<>();
+    for (Map<String, Object> pin : remaining) {
+      if (pins.size() == limit) {
+        return new PinPage(pins, PinPage.cursorFor(pins.get(limit - 1)));
+      }
+      pins.add(new HashMap<>(pin));
+    }
+    return new PinPage(pins, null);
+  }
+
+  @Override
+  public PinChanges getChangesSince(long since, long removedSince)
+      throws ExecutionException, InterruptedException {
+    // Only the underlying storage knows about deletions
+    return delegate.getChangesSince(since, removedSince);
+  }
+
+  @Override
+  public int clearUser(String userId) throws ExecutionException, InterruptedException {
+    synchronized (this) {
+      ensureLoaded();
+    }
+    int deleted = delegate.clearUser(userId);
+    synchronized (this) {
+      removeUser(userId);
+      recordWrite(() -> removeUser(userId));
+      snapshot = null;
+    }
+    return deleted;
+  }
+
+  /** Drop the memory copy, so the next read reloads every pin from the underlying storage. */
+  public synchronized void invalidate() {
+    loaded = false;
+    snapshot = null;
+  }
+
+  private boolean isStale() {
+    return System.nanoTime() - loadedAt > refreshIntervalNanos;
+  }
+
+  /**
+   * Load every pin from the underlying storage if they are not loaded yet, or start reloading them
+   * in the background if they are out of date.
+   */
+  private void ensureLoaded() throws ExecutionException, InterruptedException {
+    if (!loaded) {
+      replace(delegate.getAllPins());
+      return;
+    }
+    if (isStale() && missedDuringRefresh == null) {
+      missedDuringRefresh = new ArrayList<>();
+      Thread refresher = new Thread(this::refresh, "pin-cache-refresh");
+      refresher.setDaemon(true);
+      refresher.start();
+    }
+  }
+
+  /** Reload every pin without holding the lock, then swap them in. */
+  private void refresh() {
+    List<Map<String, Object>> allPins = null;
+    try {
+      allPins = delegate.getAllPins();
+    } catch (ExecutionException | InterruptedException | RuntimeException e) {
+      System.err.println("Failed to refresh pin cache: " + e.getMessage());
+    }
+    synchronized (this) {
+      List<Runnable> missed = missedDuringRefresh;
+      missedDuringRefresh = null;
+      if (allPins == null) {
+        // Keep serving the current copy and try again after another interval
+        loadedAt = System.nanoTime();
+        return;
+      }
+      replace(allPins);
+      // The loaded pins may or may not include writes made meanwhile; replaying them in order
+      // gives the same result either way
+      for (Runnable write : missed) {
+        write.run();
+      }
+    }
+  }
+
+  /** Replace the memory copy with a full list of pins. */
+  private void replace(List<Map<String, Object>> allPins) {
+    pinsById.clear();
+    pinIdsByUser.clear();
+    pinsInOrder.clear();
+    gridIndex.clear();
+    for (Map<String, Object> pin : allPins) {
+      put(new HashMap<>(pin));
+    }
+    loadedAt = System.nanoTime();
+    loaded = true;
+    snapshot = null;
+  }
+
+  /** Remember a write for the background reload running now, if any. */
+  private void recordWrite(Runnable write) {
+    if (missedDuringRefresh != null) {
+      missedDuringRefresh.add(write);
+    }
+  }
+
+  private void put(Map<String, Object> pin) {
+    String pinId = (String) pin.get("id");
+    String userId = (String) pin.get("userId");
+
+    Map<String, Object> previous = pinsById.put(pinId, pin);
+    if (previous != null) {
+      pinsInOrder.remove(previous);
+    }
+    // Pins created outside this server may have no userId
+    if (previous != null && !Objects.equals(previous.get("userId"), userId)) {
+      Set<String> pinIds = pinIdsByUser.get((String) previous.get("userId"));
+      if (pinIds != null) {
+        pinIds.remove(pinId);
+      }
+    }
+    pinIdsByUser.computeIfAbsent(userId, k -> new LinkedHashSet<>()).add(pinId);
+    pinsInOrder.add(pin);
+    gridIndex.add(pin);
+  }
+
+  private void removeUser(String userId) {
+    Set<String> pinIds = pinIdsByUser.remove(userId);
+    if (pinIds != null) {
+      for (String pinId : pinIds) {
+        pinsInOrder.remove(pinsById.remove(pinId));
+        gridIndex.remove(pinId);
+      }
+    }
+  }
+
+  private List<Map<String, Object>> copies(List<String> pinIds) {
+    List<Map<String, Object>> pins = new ArrayList<>(pinIds.size());
+    for (String pinId : pinIds) {
+      pins.add(new HashMap<>(pinsById.get(pinId)));
+    }
+    return pins;
+  }
+
+  /** A stand-in pin for looking up a position in {@link PinPage#ORDER}. */
+  private static Map<String, Object> probe(long timestamp, String id) {
+    Map<String, Object> probe = new HashMap<>();
+    probe.put("timestamp", timestamp);
+    probe.put("id", id);
+    return probe;
+  }
+}
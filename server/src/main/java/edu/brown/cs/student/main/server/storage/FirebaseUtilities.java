@@ -1,9 +1,15 @@
 package edu.brown.cs.student.main.server.storage;
 
+import com.google.api.core.ApiFuture;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.FieldPath;
 import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
 import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 import com.google.firebase.cloud.FirestoreClient;
@@ -11,13 +17,32 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 
 public class FirebaseUtilities implements StorageInterface {
+  // Firestore accepts at most 500 writes per batch
+  private static final int MAX_BATCH_SIZE = 500;
+
+  // Adding or deleting a pin also writes its tombstone, so a batch holds half as many pins
+  private static final int PINS_PER_BATCH = MAX_BATCH_SIZE / 2;
+
+  // Collection recording deleted pins for clients that poll for changes
+  private static final String TOMBSTONES = "pin_tombstones";
+
+  // How long tombstones are kept; clients asking for removals from before then get a resync
+  private static final long TOMBSTONE_RETENTION_MILLIS = Duration.ofDays(30).toMillis();
+
+  // Number of delete batches committed concurrently by clearUser
+  private static final int MAX_BATCHES_IN_FLIGHT = 4;
+
   private Firestore firestore;
 
   public FirebaseUtilities() throws IOException {
@@ -77,7 +102,33 @@ public class FirebaseUtilities implements StorageInterface {
       data.put("id", documentId);
     }
 
-    docRef.set(data).get();
+    // Writing the pin and lifting any tombstone left by an earlier delete is one round trip
+    WriteBatch batch = firestore.batch();
+    batch.set(docRef, data);
+    batch.delete(firestore.collection(TOMBSTONES).document(documentId));
+    batch.commit().get();
+  }
+
+  @Override
+  public void addDocuments(List<Map<String, Object>> pins)
+      throws ExecutionException, InterruptedException {
+    // Commit the pins in write batches, each a single round trip; every pin takes two writes
+    for (int start = 0; start < pins.size(); start += PINS_PER_BATCH) {
+      WriteBatch batch = firestore.batch();
+      for (Map<String, Object> data :
+          pins.subList(start, Math.min(pins.size(), start + PINS_PER_BATCH))) {
+        String documentId =
+            data.containsKey("id")
+                ? (String) data.get("id")
+                : "pin_" + UUID.randomUUID().toString().replace("-", "");
+        if (!data.containsKey("id")) {
+          data.put("id", documentId);
+        }
+        batch.set(firestore.collection("pins").document(documentId), data);
+        batch.delete(firestore.collection(TOMBSTONES).document(documentId));
+      }
+      batch.commit().get();
+    }
   }
 
   @Override
@@ -86,26 +137,176 @@ public class FirebaseUtilities implements StorageInterface {
     List<QueryDocumentSnapshot> documents = firestore.collection("pins").get().get().getDocuments();
 
     for (QueryDocumentSnapshot document : documents) {
-      Map<String, Object> pinData = document.getData();
-      // Ensure the ID is included in the data
-      if (!pinData.containsKey("id")) {
-        pinData.put("id", document.getId());
-      }
-      allPins.add(pinData);
+      allPins.add(toPin(document));
     }
 
     return allPins;
   }
 
   @Override
-  public void clearUser(String userId) throws ExecutionException, InterruptedException {
-    // Get all pins for the user from the flattened structure
+  public List<Map<String, Object>> getPinsInBox(
+      double minLat, double minLng, double maxLat, double maxLng)
+      throws ExecutionException, InterruptedException {
+    // Firestore can range-query only one field, so narrow by latitude and filter longitude here
     List<QueryDocumentSnapshot> documents =
-        firestore.collection("pins").whereEqualTo("userId", userId).get().get().getDocuments();
+        firestore
+            .collection("pins")
+            .whereGreaterThanOrEqualTo("latitude", minLat)
+            .whereLessThanOrEqualTo("latitude", maxLat)
+            .get()
+            .get()
+            .getDocuments();
 
-    // Delete each document
+    List<Map<String, Object>> pins = new ArrayList<>();
     for (QueryDocumentSnapshot document : documents) {
-      document.getReference().delete().get();
+      Map<String, Object> pin = toPin(document);
+      Object lat = pin.get("latitude");
+      Object lng = pin.get("longitude");
+      if (lat instanceof Number
+          && lng instanceof Number
+          && PinGridIndex.contains(
+              minLat,
+              minLng,
+              maxLat,
+              maxLng,
+              ((Number) lat).doubleValue(),
+              ((Number) lng).doubleValue())) {
+        pins.add(pin);
+      }
+    }
+    return pins;
+  }
+
+  @Override
+  public PinPage getPins(int limit, String startAfter)
+      throws ExecutionException, InterruptedException {
+    // Ask for one pin more than the page holds to find out whether there is a next page
+    Query query =
+        firestore
+            .collection("pins")
+            .orderBy("timestamp")
+            .orderBy(FieldPath.documentId())
+            .limit(limit + 1);
+    if (startAfter != null) {
+      query = query.startAfter(PinPage.cursorTimestamp(startAfter), PinPage.cursorId(startAfter));
+    }
+
+    List<QueryDocumentSnapshot> documents = query.get().get().getDocuments();
+    List<Map<String, Object>> pins = new ArrayList<>();
+    for (QueryDocumentSnapshot document : documents.subList(0, Math.min(limit, documents.size()))) {
+      pins.add(toPin(document));
+    }
+    String nextCursor =
+        documents.size() > limit ? PinPage.cursorFor(pins.get(pins.size() - 1)) : null;
+    return new PinPage(pins, nextCursor);
+  }
+
+  @Override
+  public PinChanges getChangesSince(long since, long removedSince)
+      throws ExecutionException, InterruptedException {
+    long cutoff = System.currentTimeMillis() - TOMBSTONE_RETENTION_MILLIS;
+    if (removedSince < cutoff) {
+      // Tombstones from before the cutoff may already be gone, so the client has to start over.
+      // Tombstones after it may be reported again later, which clients can safely ignore
+      List<Map<String, Object>> allPins = getAllPins();
+      return new PinChanges(
+          allPins, List.of(), PinChanges.nextCursor(since, allPins), cutoff, true);
+    }
+
+    // Run both queries at once
+    ApiFuture<QuerySnapshot> added =
+        firestore.collection("pins").whereGreaterThan("timestamp", since).get();
+    ApiFuture<QuerySnapshot> deleted =
+        firestore.collection(TOMBSTONES).whereGreaterThan("deletedAt", removedSince).get();
+
+    List<Map<String, Object>> pins = new ArrayList<>();
+    for (QueryDocumentSnapshot document : added.get().getDocuments()) {
+      pins.add(toPin(document));
+    }
+    List<Map<String, Object>> removed = new ArrayList<>();
+    for (QueryDocumentSnapshot document : deleted.get().getDocuments()) {
+      removed.add(document.getData());
+    }
+    return new PinChanges(
+        pins,
+        removed,
+        PinChanges.nextCursor(since, pins),
+        PinChanges.nextRemovedCursor(removedSince, removed));
+  }
+
+  @Override
+  public int clearUser(String userId) throws ExecutionException, InterruptedException {
+    // Get all pins for the user from the flattened structure; only the references are needed
+    List<QueryDocumentSnapshot> documents =
+        firestore
+            .collection("pins")
+            .whereEqualTo("userId", userId)
+            .select(FieldPath.documentId())
+            .get()
+            .get()
+            .getDocuments();
+
+    // Delete in write batches, keeping a few of them in flight at once. Each delete leaves a
+    // tombstone so clients polling for changes learn about it
+    long deletedAt = System.currentTimeMillis();
+    Deque<ApiFuture<List<WriteResult>>> inFlight = new ArrayDeque<>();
+    for (int start = 0; start < documents.size(); start += PINS_PER_BATCH) {
+      if (inFlight.size() >= MAX_BATCHES_IN_FLIGHT) {
+        inFlight.removeFirst().get();
+      }
+      WriteBatch batch = firestore.batch();
+      int end = Math.min(documents.size(), start + PINS_PER_BATCH);
+      for (QueryDocumentSnapshot document : documents.subList(start, end)) {
+        Map<String, Object> tombstone = new HashMap<>();
+        tombstone.put("id", document.getId());
+        tombstone.put("userId", userId);
+        tombstone.put("deletedAt", deletedAt);
+        batch.delete(document.getReference());
+        batch.set(firestore.collection(TOMBSTONES).document(document.getId()), tombstone);
+      }
+      inFlight.addLast(batch.commit());
+    }
+    while (!inFlight.isEmpty()) {
+      inFlight.removeFirst().get();
+    }
+
+    // Deleting is what adds tombstones, so it is also when old ones are dropped
+    pruneTombstones(deletedAt - TOMBSTONE_RETENTION_MILLIS);
+    return documents.size();
+  }
+
+  /** Delete the tombstones older than a cutoff, one write batch at a time. */
+  private void pruneTombstones(long cutoff) throws ExecutionException, InterruptedException {
+    while (true) {
+      List<QueryDocumentSnapshot> expired =
+          firestore
+              .collection(TOMBSTONES)
+              .whereLessThan("deletedAt", cutoff)
+              .select(FieldPath.documentId())
+              .limit(MAX_BATCH_SIZE)
+              .get()
+              .get()
+              .getDocuments();
+      if (expired.isEmpty()) {
+        return;
+      }
+      WriteBatch batch = firestore.batch();
+      for (QueryDocumentSnapshot document : expired) {
+        batch.delete(document.getReference());
+      }
+      batch.commit().get();
+      if (expired.size() < MAX_BATCH_SIZE) {
+        return;
+      }
+    }
+  }
+
+  /** Read a pin document, making sure its ID is included in the data. */
+  private static Map<String, Object> toPin(QueryDocumentSnapshot document) {
+    Map<String, Object> pinData = document.getData();
+    if (!pinData.containsKey("id")) {
+      pinData.put("id", document.getId());
     }
+    return pinData;
   }
 }
@@ -0,0 +1,413 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * On-disk pin storage that needs no external service. Every change is appended to a {@link PinLog}
+ * and forced to disk before the call returns; all pins are also held in memory, indexed by pin id
+ * by user id, by position and in paging order, so reads never touch the disk. Deleted pins leave
+ * tombstones so clients polling for changes learn about them; tombstones older than the retention
+ * window are forgotten on startup and whenever pins are deleted, and clients asking for removals
+ * from before then get a resync.
+ *
+ * <p>On startup the log is replayed to rebuild the indexes. A record torn by a crash is dropped.
+ * Whenever the log has grown much larger than the live pins and tombstones, on startup or after a
+ * write, it is compacted.
+ */
+public class LocalPinStorage implements StorageInterface, Closeable {
+  // Compact the log on startup when it holds this many times more records than live pins
+  private static final int COMPACTION_RATIO = 2;
+
+  // Logs smaller than this are never worth compacting
+  private static final int MIN_RECORDS_TO_COMPACT = 1000;
+
+  // How long tombstones are kept by default
+  private static final Duration DEFAULT_TOMBSTONE_RETENTION = Duration.ofDays(30);
+
+  private final PinLog log;
+  private final Map<String, Map<String, Object>> pinsById = new LinkedHashMap<>();
+  private final Map<String, Set<String>> pinIdsByUser = new HashMap<>();
+  private final NavigableSet<Map<String, Object>> pinsInOrder = new TreeSet<>(PinPage.ORDER);
+  private final Map<String, Map<String, Object>> tombstones = new LinkedHashMap<>();
+  private final PinGridIndex gridIndex = new PinGridIndex();
+  private final long tombstoneRetentionMillis;
+  // Deletions before this time may have been forgotten
+  private long prunedBefore = 0;
+  // Number of records in the log file
+  private long logRecords;
+
+  /**
+   * Open the storage, replaying the log if it already exists. Tombstones are kept for 30 days.
+   *
+   * @param logPath Path to the log file
+   * @throws IOException if the log cannot be opened or read
+   */
+  public LocalPinStorage(Path logPath) throws IOException {
+    this(logPath, DEFAULT_TOMBSTONE_RETENTION);
+  }
+
+  /**
+   * Open the storage, replaying the log if it already exists.
+   *
+   * @param logPath Path to the log file
+   * @param tombstoneRetention How long tombstones of deleted pins are kept
+   * @throws IOException if the log cannot be opened or read
+   */
+  public LocalPinStorage(Path logPath, Duration tombstoneRetention) throws IOException {
+    this.log = new PinLog(logPath);
+    this.tombstoneRetentionMillis = tombstoneRetention.toMillis();
+
+    List<Map<String, Object>> records = log.readAll();
+    for (Map<String, Object> record : records) {
+      apply(record);
+    }
+    logRecords = records.size();
+    pruneTombstones();
+    if (isBloated()) {
+      compact();
+    }
+    System.out.println(
+        "Loaded " + pinsById.size() + " pins from " + records.size() + " records in " + logPath);
+  }
+
+  @Override
+  public void addDocument(String userId, String pinId, Map<String, Object> data)
+      throws ExecutionException, InterruptedException {
+    Map<String, Object> record = putRecord(userId, data);
+    synchronized (this) {
+      write(List.of(record));
+      apply(record);
+      compactIfBloated();
+    }
+  }
+
+  /** Add several pins with a single append, so the whole batch costs one sync. */
+  @Override
+  public void addDocuments(List<Map<String, Object>> pins)
+      throws ExecutionException, InterruptedException {
+    List<Map<String, Object>> records = new ArrayList<>(pins.size());
+    for (Map<String, Object> pin : pins) {
+      records.add(putRecord((String) pin.get("userId"), pin));
+    }
+    synchronized (this) {
+      write(records);
+      for (Map<String, Object> record : records) {
+        apply(record);
+      }
+      compactIfBloated();
+    }
+  }
+
+  @Override
+  public synchronized List<Map<String, Object>> getAllPins()
+      throws ExecutionException, InterruptedException {
+    List<Map<String, Object>> allPins = new ArrayList<>(pinsById.size());
+    for (Map<String, Object> pin : pinsById.values()) {
+      // Hand out copies so callers cannot change the stored pins
+      allPins.add(new HashMap<>(pin));
+    }
+    return allPins;
+  }
+
+  @Override
+  public int clearUser(String userId) throws ExecutionException, InterruptedException {
+    Map<String, Object> record = new HashMap<>();
+    record.put("op", "clear");
+    record.put("userId", userId);
+    record.put("deletedAt", System.currentTimeMillis());
+    synchronized (this) {
+      Set<String> pinIds = pinIdsByUser.get(userId);
+      if (pinIds == null) {
+        return 0;
+      }
+      int deleted = pinIds.size();
+      write(List.of(record));
+      apply(record);
+      // Deleting is what adds tombstones, so it is also when old ones are dropped
+      pruneTombstones();
+      compactIfBloated();
+      return deleted;
+    }
+  }
+
+  @Override
+  public synchronized List<Map<String, Object>> getPinsInBox(
+      double minLat, double minLng, double maxLat, double maxLng) {
+    return copies(gridIndex.search(minLat, minLng, maxLat, maxLng));
+  }
+
+  @Override
+  public synchronized List<Map<String, Object>> getPinsNear(
+      double lat, double lng, double radiusMeters) {
+    return copies(gridIndex.searchRadius(lat, lng, radiusMeters));
+  }
+
+  @Override
+  public synchronized PinPage getPins(int limit, String startAfter) {
+    // Walk the pins in page order from just past the cursor, reading one extra to detect the end
+    Iterable<Map<String, Object>> remaining =
+        startAfter == null
+            ? pinsInOrder
+            : pinsInOrder.tailSet(
+                probe(PinPage.cursorTimestamp(startAfter), PinPage.cursorId(startAfter)), false);
+    List<Map<String, Object>> pins = new ArrayList<>();
+    for (Map<String, Object> pin : remaining) {
+      if (pins.size() == limit) {
+        return new PinPage(pins, PinPage.cursorFor(pins.get(limit - 1)));
+      }
+      pins.add(new HashMap<>(pin));
+    }
+    return new PinPage(pins, null);
+  }
+
+  @Override
+  public synchronized PinChanges getChangesSince(long since, long removedSince) {
+    if (removedSince < prunedBefore) {
+      // Deletions after removedSince may have been forgotten, so the client has to start over
+      List<Map<String, Object>> allPins = new ArrayList<>(pinsInOrder.size());
+      for (Map<String, Object> pin : pinsInOrder) {
+        allPins.add(new HashMap<>(pin));
+      }
+      return new PinChanges(
+          allPins,
+          List.of(),
+          PinChanges.nextCursor(since, allPins),
+          PinChanges.nextRemovedCursor(prunedBefore, tombstones.values()),
+          true);
+    }
+    List<Map<String, Object>> pins = new ArrayList<>();
+    // Every id sorts after the empty string, so this starts at the first pin later than since
+    for (Map<String, Object> pin : pinsInOrder.tailSet(probe(since + 1, ""), true)) {
+      pins.add(new HashMap<>(pin));
+    }
+    List<Map<String, Object>> removed = new ArrayList<>();
+    for (Map<String, Object> tombstone : tombstones.values()) {
+      if (((Number) tombstone.get("deletedAt")).longValue() > removedSince) {
+        removed.add(new HashMap<>(tombstone));
+      }
+    }
+    return new PinChanges(
+        pins,
+        removed,
+        PinChanges.nextCursor(since, pins),
+        PinChanges.nextRemovedCursor(removedSince, removed));
+  }
+
+  /**
+   * Get the pins of a single user, using the user index.
+   *
+   * @param userId The user id
+   * @return Copies of the user's pins
+   */
+  public synchronized List<Map<String, Object>> getPinsForUser(String userId) {
+    List<Map<String, Object>> pins = new ArrayList<>();
+    for (String pinId : pinIdsByUser.getOrDefault(userId, Set.of())) {
+      pins.add(new HashMap<>(pinsById.get(pinId)));
+    }
+    return pins;
+  }
+
+  /**
+   * Get a single pin by id.
+   *
+   * @param pinId The pin id
+   * @return A copy of the pin, or null if there is no such pin
+   */
+  public synchronized Map<String, Object> getPin(String pinId) {
+    Map<String, Object> pin = pinsById.get(pinId);
+    return pin == null ? null : new HashMap<>(pin);
+  }
+
+  /** Close the log file. */
+  @Override
+  public synchronized void close() throws IOException {
+    log.close();
+  }
+
+  /** Build the log record for adding a pin, filling in its id and userId as Firebase does. */
+  private static Map<String, Object> putRecord(String userId, Map<String, Object> data) {
+    // Generate a new document ID if not provided
+    String documentId =
+        data.containsKey("id")
+            ? (String) data.get("id")
+            : "pin_" + UUID.randomUUID().toString().replace("-", "");
+
+    // Ensure userId and id are in the data
+    if (!data.containsKey("userId")) {
+      data.put("userId", userId);
+    }
+    if (!data.containsKey("id")) {
+      data.put("id", documentId);
+    }
+
+    Map<String, Object> record = new HashMap<>();
+    record.put("op", "put");
+    record.put("pin", data);
+    return record;
+  }
+
+  /** Append records to the log, surfacing I/O failures the way a failed remote write would. */
+  private void write(List<Map<String, Object>> records) throws ExecutionException {
+    try {
+      log.append(records);
+      logRecords += records.size();
+    } catch (IOException e) {
+      throw new ExecutionException("Could not write to the pin log", e);
+    }
+  }
+
+  /** Apply a logged change to the in-memory indexes. */
+  @SuppressWarnings("unchecked")
+  private void apply(Map<String, Object> record) {
+    String op = (String) record.get("op");
+    if ("put".equals(op)) {
+      Map<String, Object> pin = PinLog.restorePin((Map<String, Object>) record.get("pin"));
+      String pinId = (String) pin.get("id");
+      String userId = (String) pin.get("userId");
+
+      Map<String, Object> previous = pinsById.put(pinId, pin);
+      if (previous != null) {
+        pinsInOrder.remove(previous);
+        // Pins created outside this server may have no userId
+        if (!Objects.equals(previous.get("userId"), userId)) {
+          removeFromUser((String) previous.get("userId"), pinId);
+        }
+      }
+      pinsInOrder.add(pin);
+      gridIndex.add(pin);
+      pinIdsByUser.computeIfAbsent(userId, k -> new LinkedHashSet<>()).add(pinId);
+      // A pin added again is no longer deleted
+      tombstones.remove(pinId);
+    } else if ("clear".equals(op)) {
+      String userId = (String) record.get("userId");
+      // Logs written before deletions were timestamped have no deletedAt
+      Object deletedAt = record.getOrDefault("deletedAt", 0L);
+      Set<String> pinIds = pinIdsByUser.remove(userId);
+      if (pinIds != null) {
+        for (String pinId : pinIds) {
+          pinsInOrder.remove(pinsById.remove(pinId));
+          gridIndex.remove(pinId);
+          Map<String, Object> tombstone = new HashMap<>();
+          tombstone.put("id", pinId);
+          tombstone.put("userId", userId);
+          tombstone.put("deletedAt", ((Number) deletedAt).longValue());
+          // Keep tombstones in deletion order
+          tombstones.remove(pinId);
+          tombstones.put(pinId, tombstone);
+        }
+      }
+    } else if ("tombstone".equals(op)) {
+      Map<String, Object> tombstone = new HashMap<>((Map<String, Object>) record.get("tombstone"));
+      tombstone.put("deletedAt", ((Number) tombstone.get("deletedAt")).longValue());
+      tombstones.put((String) tombstone.get("id"), tombstone);
+    } else if ("pruned".equals(op)) {
+      prunedBefore = Math.max(prunedBefore, ((Number) record.get("before")).longValue());
+    }
+  }
+
+  /**
+   * Forget the tombstones that have been kept for the whole retention window. Tombstones are held
+   * in deletion order, so this stops at the first one still inside the window.
+   */
+  private void pruneTombstones() {
+    long cutoff = System.currentTimeMillis() - tombstoneRetentionMillis;
+    Iterator<Map<String, Object>> oldestFirst = tombstones.values().iterator();
+    boolean pruned = false;
+    while (oldestFirst.hasNext()
+        && ((Number) oldestFirst.next().get("deletedAt")).longValue() < cutoff) {
+      oldestFirst.remove();
+      pruned = true;
+    }
+    if (pruned) {
+      prunedBefore = Math.max(prunedBefore, cutoff);
+    }
+  }
+
+  private void removeFromUser(String userId, String pinId) {
+    Set<String> pinIds = pinIdsByUser.get(userId);
+    if (pinIds != null) {
+      pinIds.remove(pinId);
+      if (pinIds.isEmpty()) {
+        pinIdsByUser.remove(userId);
+      }
+    }
+  }
+
+  /**
+   * Rewrite the log so it holds exactly one record per live pin and per tombstone, and the time
+   * before which tombstones were forgotten.
+   */
+  private void compact() throws IOException {
+    List<Map<String, Object>> records = new ArrayList<>(pinsById.size() + tombstones.size() + 1);
+    if (prunedBefore > 0) {
+      Map<String, Object> record = new HashMap<>();
+      record.put("op", "pruned");
+      record.put("before", prunedBefore);
+      records.add(record);
+    }
+    for (Map<String, Object> tombstone : tombstones.values()) {
+      Map<String, Object> record = new HashMap<>();
+      record.put("op", "tombstone");
+      record.put("tombstone", tombstone);
+      records.add(record);
+    }
+    for (Map<String, Object> pin : pinsById.values()) {
+      Map<String, Object> record = new HashMap<>();
+      record.put("op", "put");
+      record.put("pin", pin);
+      records.add(record);
+    }
+    log.rewrite(records);
+    logRecords = records.size();
+  }
+
+  /** Check whether the log holds far more records than it would after compaction. */
+  private boolean isBloated() {
+    return logRecords >= MIN_RECORDS_TO_COMPACT
+        && logRecords > COMPACTION_RATIO * (pinsById.size() + tombstones.size());
+  }
+
+  /** Compact the log after a write if it has grown too large; the write stands either way. */
+  private void compactIfBloated() {
+    if (!isBloated()) {
+      return;
+    }
+    try {
+      compact();
+    } catch (IOException e) {
+      System.err.println("Failed to compact pin log: " + e.getMessage());
+    }
+  }
+
+  private List<Map<String, Object>> copies(List<String> pinIds) {
+    List<Map<String, Object>> pins = new ArrayList<>(pinIds.size());
+    for (String pinId : pinIds) {
+      pins.add(new HashMap<>(pinsById.get(pinId)));
+    }
+    return pins;
+  }
+
+  /** A stand-in pin for looking up a position in {@link PinPage#ORDER}. */
+  private static Map<String, Object> probe(long timestamp, String id) {
+    Map<String, Object> probe = new HashMap<>();
+    probe.put("timestamp", timestamp);
+    probe.put("id", id);
+    return probe;
+  }
+}
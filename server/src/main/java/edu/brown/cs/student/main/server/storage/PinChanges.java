@@ -0,0 +1,115 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pins added and removed since a point in time. Removals are tombstones holding the pin's id, its
+ * userId and the time it was deleted. A pin that was deleted and then added again can appear in
+ * both lists, so clients should apply the removals before the additions.
+ *
+ * <p>Additions and removals have separate cursors. Pin timestamps come from the clients that added
+ * them and deletion times from the server, so one clock running ahead must not make the other list
+ * skip changes.
+ *
+ * <p>Backends forget tombstones after a while. Asking for removals since a time before that gives a
+ * resync instead: the pins are every current pin, there are no removals, and the client should
+ * replace all its pins with them.
+ */
+public class PinChanges {
+  private final List<Map<String, Object>> pins;
+  private final List<Map<String, Object>> removed;
+  private final long cursor;
+  private final long removedCursor;
+  private final boolean resync;
+
+  /**
+   * Constructor for a set of changes.
+   *
+   * @param pins Pins with a timestamp after the requested time
+   * @param removed Tombstones of pins deleted after the requested time
+   * @param cursor The time to ask for added pins since next
+   * @param removedCursor The time to ask for removed pins since next
+   */
+  public PinChanges(
+      List<Map<String, Object>> pins,
+      List<Map<String, Object>> removed,
+      long cursor,
+      long removedCursor) {
+    this(pins, removed, cursor, removedCursor, false);
+  }
+
+  /**
+   * Constructor for a set of changes that may be a resync.
+   *
+   * @param pins Pins with a timestamp after the requested time, or every pin for a resync
+   * @param removed Tombstones of pins deleted after the requested time
+   * @param cursor The time to ask for added pins since next
+   * @param removedCursor The time to ask for removed pins since next
+   * @param resync Whether the client has to replace all its pins with these
+   */
+  public PinChanges(
+      List<Map<String, Object>> pins,
+      List<Map<String, Object>> removed,
+      long cursor,
+      long removedCursor,
+      boolean resync) {
+    this.pins = pins;
+    this.removed = removed;
+    this.cursor = cursor;
+    this.removedCursor = removedCursor;
+    this.resync = resync;
+  }
+
+  public List<Map<String, Object>> getPins() {
+    return pins;
+  }
+
+  public List<Map<String, Object>> getRemoved() {
+    return removed;
+  }
+
+  public long getCursor() {
+    return cursor;
+  }
+
+  public long getRemovedCursor() {
+    return removedCursor;
+  }
+
+  public boolean isResync() {
+    return resync;
+  }
+
+  /**
+   * Work out the cursor for added pins: the latest timestamp among them, or the requested time if
+   * none were added.
+   *
+   * @param since The requested time
+   * @param pins The added pins
+   * @return The cursor
+   */
+  public static long nextCursor(long since, Iterable<Map<String, Object>> pins) {
+    long cursor = since;
+    for (Map<String, Object> pin : pins) {
+      cursor = Math.max(cursor, PinPage.timestampOf(pin));
+    }
+    return cursor;
+  }
+
+  /**
+   * Work out the cursor for removed pins: the latest deletion time among the tombstones, or the
+   * requested time if none were removed.
+   *
+   * @param removedSince The requested time
+   * @param removed The tombstones
+   * @return The cursor
+   */
+  public static long nextRemovedCursor(long removedSince, Iterable<Map<String, Object>> removed) {
+    long cursor = removedSince;
+    for (Map<String, Object> tombstone : removed) {
+      cursor = Math.max(cursor, ((Number) tombstone.get("deletedAt")).longValue());
+    }
+    return cursor;
+  }
+}
@@ -0,0 +1,188 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fans pin change events out to live subscribers. Each subscriber has its own bounded buffer; a
+ * subscriber that falls so far behind that its buffer fills up is dropped rather than slowing
+ * everyone else down, and is expected to reconnect.
+ *
+ * <p>The most recent events are kept so a reconnecting subscriber can resume after the last event
+ * it saw. Event ids carry an epoch that changes when the server restarts; a subscriber resuming
+ * from an id that is unknown or no longer kept gets a {@code reset} event instead, telling it to
+ * reload all pins.
+ *
+ * <p>Every subscriber holds a server request thread for as long as it stays connected, so the
+ * number of subscribers is capped to leave threads for the other endpoints.
+ */
+public class PinEventBus {
+  /** Event type telling a subscriber that it missed events and has to reload all pins. */
+  public static final String RESET = "reset";
+
+  private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+  private final int historySize;
+  private final int subscriberCapacity;
+  private final int maxSubscribers;
+  private final ArrayDeque<PinEvent> history = new ArrayDeque<>();
+  private final Set<Subscription> subscribers = ConcurrentHashMap.newKeySet();
+  private long nextSeq = 1;
+
+  /**
+   * Constructor for an event bus.
+   *
+   * @param historySize Number of recent events kept for resuming subscribers
+   * @param subscriberCapacity Number of events a subscriber may fall behind before it is dropped
+   * @param maxSubscribers Largest number of subscribers at a time
+   */
+  public PinEventBus(int historySize, int subscriberCapacity, int maxSubscribers) {
+    this.historySize = historySize;
+    this.subscriberCapacity = subscriberCapacity;
+    this.maxSubscribers = maxSubscribers;
+  }
+
+  /**
+   * Publish an event to every subscriber.
+   *
+   * @param type The event type
+   * @param data The event payload as JSON
+   */
+  public synchronized void publish(String type, String data) {
+    PinEvent event = new PinEvent(nextSeq, epoch + "-" + nextSeq, type, data);
+    nextSeq++;
+    history.addLast(event);
+    if (history.size() > historySize) {
+      history.removeFirst();
+    }
+    for (Subscription subscription : subscribers) {
+      subscription.offer(event);
+    }
+  }
+
+  /**
+   * Subscribe to events, optionally resuming after an earlier event.
+   *
+   * @param lastEventId Id of the last event the subscriber saw, or null to start from now
+   * @return The subscription, which must be closed when done, or null if the bus already has the
+   *     maximum number of subscribers
+   */
+  public synchronized Subscription subscribe(String lastEventId) {
+    if (subscribers.size() >= maxSubscribers) {
+      return null;
+    }
+    Subscription subscription = new Subscription();
+    if (lastEventId != null) {
+      long lastSeq = parseSeq(lastEventId);
+      long oldestKept = history.isEmpty() ? nextSeq : history.peekFirst().seq;
+      if (lastSeq < 0 || lastSeq >= nextSeq || lastSeq + 1 < oldestKept) {
+        // Events were missed for good; resume from the latest event after a reload
+        long latest = nextSeq - 1;
+        subscription.offer(new PinEvent(latest, epoch + "-" + latest, RESET, "{}"));
+      } else {
+        for (PinEvent event : history) {
+          if (event.seq > lastSeq) {
+            subscription.offer(event);
+          }
+        }
+      }
+    }
+    // Registering under the lock means no event falls between the replay and live delivery
+    subscribers.add(subscription);
+    return subscription;
+  }
+
+  /**
+   * Get the number of live subscribers.
+   *
+   * @return The number of subscribers
+   */
+  public int subscriberCount() {
+    return subscribers.size();
+  }
+
+  /** Get the sequence number of an event id from this epoch, or -1 if it is not one. */
+  private long parseSeq(String eventId) {
+    int separator = eventId.lastIndexOf('-');
+    if (separator < 0 || !eventId.substring(0, separator).equals(epoch)) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(eventId.substring(separator + 1));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /** A published event. */
+  public static class PinEvent {
+    private final long seq;
+    private final String id;
+    private final String type;
+    private final String data;
+
+    PinEvent(long seq, String id, String type, String data) {
+      this.seq = seq;
+      this.id = id;
+      this.type = type;
+      this.data = data;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public String getType() {
+      return type;
+    }
+
+    public String getData() {
+      return data;
+    }
+  }
+
+  /** One subscriber's buffer of events not yet delivered. */
+  public class Subscription implements AutoCloseable {
+    private final BlockingQueue<PinEvent> queue = new ArrayBlockingQueue<>(subscriberCapacity);
+    private volatile boolean overflowed = false;
+
+    private void offer(PinEvent event) {
+      if (!queue.offer(event)) {
+        // Too far behind: stop feeding it; the client resumes from history when it reconnects
+        overflowed = true;
+        subscribers.remove(this);
+      }
+    }
+
+    /**
+     * Wait for the next event.
+     *
+     * @param timeout How long to wait
+     * @param unit The unit of the timeout
+     * @return The next event, or null if none arrived in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public PinEvent poll(long timeout, TimeUnit unit) throws InterruptedException {
+      return queue.poll(timeout, unit);
+    }
+
+    /**
+     * Check whether this subscriber was dropped for falling behind and has delivered every event it
+     * did receive, so its stream should end.
+     *
+     * @return true if the subscription is finished
+     */
+    public boolean isFinished() {
+      return overflowed && queue.isEmpty();
+    }
+
+    /** Stop receiving events. */
+    @Override
+    public void close() {
+      subscribers.remove(this);
+    }
+  }
+}
@@ -0,0 +1,250 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Spatial index of pin positions on a fixed grid of latitude/longitude cells. Each pin sits in the
+ * cell containing it, so a bounding box query only looks at the pins in the cells the box covers.
+ * The index is not thread-safe; its owner guards it.
+ */
+public class PinGridIndex {
+  // Default cell size in degrees, roughly 5 km across at mid latitudes
+  private static final double DEFAULT_CELL_DEGREES = 0.05;
+
+  // Mean earth radius used for radius queries
+  private static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+  private final double cellDegrees;
+  private final Map<Long, Set<String>> pinIdsByCell = new HashMap<>();
+  private final Map<String, double[]> positions = new HashMap<>();
+
+  /** Constructor with the default cell size. */
+  public PinGridIndex() {
+    this(DEFAULT_CELL_DEGREES);
+  }
+
+  /**
+   * Constructor with a specified cell size.
+   *
+   * @param cellDegrees Width and height of a cell in degrees
+   */
+  public PinGridIndex(double cellDegrees) {
+    this.cellDegrees = cellDegrees;
+  }
+
+  /**
+   * Add a pin, or move it if it is already indexed. Pins without a position are left out.
+   *
+   * @param pin The pin
+   */
+  public void add(Map<String, Object> pin) {
+    String pinId = (String) pin.get("id");
+    remove(pinId);
+    if (!(pin.get("latitude") instanceof Number) || !(pin.get("longitude") instanceof Number)) {
+      return;
+    }
+    double lat = ((Number) pin.get("latitude")).doubleValue();
+    double lng = ((Number) pin.get("longitude")).doubleValue();
+    positions.put(pinId, new double[] {lat, lng});
+    pinIdsByCell.computeIfAbsent(cellOf(lat, lng), k -> new HashSet<>()).add(pinId);
+  }
+
+  /**
+   * Remove a pin.
+   *
+   * @param pinId The pin id
+   */
+  public void remove(String pinId) {
+    double[] position = positions.remove(pinId);
+    if (position == null) {
+      return;
+    }
+    long cell = cellOf(position[0], position[1]);
+    Set<String> pinIds = pinIdsByCell.get(cell);
+    pinIds.remove(pinId);
+    if (pinIds.isEmpty()) {
+      pinIdsByCell.remove(cell);
+    }
+  }
+
+  /** Remove every pin. */
+  public void clear() {
+    pinIdsByCell.clear();
+    positions.clear();
+  }
+
+  /**
+   * Find the pins inside a bounding box. A box with minLng greater than maxLng crosses the
+   * antimeridian.
+   *
+   * @param minLat Minimum latitude
+   * @param minLng Minimum longitude
+   * @param maxLat Maximum latitude
+   * @param maxLng Maximum longitude
+   * @return The ids of the pins inside the box
+   */
+  public List<String> search(double minLat, double minLng, double maxLat, double maxLng) {
+    List<String> found = new ArrayList<>();
+    if (minLng > maxLng) {
+      searchCells(minLat, minLng, maxLat, 180.0, found);
+      searchCells(minLat, -180.0, maxLat, maxLng, found);
+    } else {
+      searchCells(minLat, minLng, maxLat, maxLng, found);
+    }
+    return found;
+  }
+
+  /**
+   * Find the pins within a distance of a point.
+   *
+   * @param lat Latitude of the center
+   * @param lng Longitude of the center
+   * @param radiusMeters The distance in meters
+   * @return The ids of the pins within the distance
+   */
+  public List<String> searchRadius(double lat, double lng, double radiusMeters) {
+    double[] box = boundingBox(lat, lng, radiusMeters);
+    List<String> found = new ArrayList<>();
+    for (String pinId : search(box[0], box[1], box[2], box[3])) {
+      double[] position = positions.get(pinId);
+      if (distanceMeters(lat, lng, position[0], position[1]) <= radiusMeters) {
+        found.add(pinId);
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Get the number of indexed pins.
+   *
+   * @return The number of pins with a position
+   */
+  public int size() {
+    return positions.size();
+  }
+
+  /**
+   * Check whether a point is inside a bounding box, which may cross the antimeridian.
+   *
+   * @return true if the point is inside the box
+   */
+  public static boolean contains(
+      double minLat, double minLng, double maxLat, double maxLng, double lat, double lng) {
+    if (lat < minLat || lat > maxLat) {
+      return false;
+    }
+    return minLng <= maxLng ? lng >= minLng && lng <= maxLng : lng >= minLng || lng <= maxLng;
+  }
+
+  /**
+   * Get the bounding box of a circle on the earth's surface.
+   *
+   * @return minLat, minLng, maxLat and maxLng of the box
+   */
+  public static double[] boundingBox(double lat, double lng, double radiusMeters) {
+    double latDelta = Math.toDegrees(radiusMeters / EARTH_RADIUS_METERS);
+    double minLat = Math.max(-90.0, lat - latDelta);
+    double maxLat = Math.min(90.0, lat + latDelta);
+    // Near the poles a circle can take in every longitude
+    double cosLat = Math.cos(Math.toRadians(Math.max(Math.abs(minLat), Math.abs(maxLat))));
+    double lngDelta = cosLat <= 0 ? 180.0 : latDelta / cosLat;
+    if (lngDelta >= 180.0) {
+      return new double[] {minLat, -180.0, maxLat, 180.0};
+    }
+    return new double[] {minLat, wrapLng(lng - lngDelta), maxLat, wrapLng(lng + lngDelta)};
+  }
+
+  /**
+   * Get the great-circle distance between two points.
+   *
+   * @return The distance in meters
+   */
+  public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+    double dLat = Math.toRadians(lat2 - lat1);
+    double dLng = Math.toRadians(lng2 - lng1);
+    double a =
+        Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(lat1))
+                * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2)
+                * Math.sin(dLng / 2);
+    return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+  }
+
+  private void searchCells(
+      double minLat, double minLng, double maxLat, double maxLng, List<String> found) {
+    int minRow = row(minLat);
+    int maxRow = row(maxLat);
+    int minCol = col(minLng);
+    int maxCol = col(maxLng);
+    long cellCount = (long) (maxRow - minRow + 1) * (maxCol - minCol + 1);
+
+    if (cellCount > pinIdsByCell.size()) {
+      // The box covers more cells than are occupied, so walk the occupied cells instead
+      for (Map.Entry<Long, Set<String>> entry : pinIdsByCell.entrySet()) {
+        int row = (int) (entry.getKey() >> 32);
+        int col = (int) (long) entry.getKey();
+        if (row >= minRow && row <= maxRow && col >= minCol && col <= maxCol) {
+          collect(entry.getValue(), minLat, minLng, maxLat, maxLng, found);
+        }
+      }
+      return;
+    }
+
+    for (int row = minRow; row <= maxRow; row++) {
+      for (int col = minCol; col <= maxCol; col++) {
+        Set<String> pinIds = pinIdsByCell.get(key(row, col));
+        if (pinIds != null) {
+          collect(pinIds, minLat, minLng, maxLat, maxLng, found);
+        }
+      }
+    }
+  }
+
+  /** Add the pins of a cell that are really inside the box; edge cells stick out of it. */
+  private void collect(
+      Set<String> pinIds,
+      double minLat,
+      double minLng,
+      double maxLat,
+      double maxLng,
+      List<String> found) {
+    for (String pinId : pinIds) {
+      double[] position = positions.get(pinId);
+      if (contains(minLat, minLng, maxLat, maxLng, position[0], position[1])) {
+        found.add(pinId);
+      }
+    }
+  }
+
+  private long cellOf(double lat, double lng) {
+    return key(row(lat), col(lng));
+  }
+
+  private int row(double lat) {
+    return (int) Math.floor((Math.max(-90.0, Math.min(90.0, lat)) + 90.0) / cellDegrees);
+  }
+
+  private int col(double lng) {
+    return (int) Math.floor((Math.max(-180.0, Math.min(180.0, lng)) + 180.0) / cellDegrees);
+  }
+
+  private static long key(int row, int col) {
+    return ((long) row << 32) | (col & 0xffffffffL);
+  }
+
+  private static double wrapLng(double lng) {
+    if (lng < -180.0) {
+      return lng + 360.0;
+    }
+    if (lng > 180.0) {
+      return lng - 360.0;
+    }
+    return lng;
+  }
+}
@@ -0,0 +1,45 @@
+package edu.brown.cs.student.main.server.storage;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+/** Serializes pin lists to JSON. The adapter is built once and shared, as it is thread-safe. */
+public final class PinJson {
+  private static final Type PIN_LIST_TYPE =
+      Types.newParameterizedType(
+          List.class, Types.newParameterizedType(Map.class, String.class, Object.class));
+
+  private static final JsonAdapter<List<Map<String, Object>>> PIN_LIST_ADAPTER =
+      new Moshi.Builder().build().adapter(PIN_LIST_TYPE);
+
+  private static final JsonAdapter<Map<String, Object>> PIN_ADAPTER =
+      new Moshi.Builder()
+          .build()
+          .adapter(Types.newParameterizedType(Map.class, String.class, Object.class));
+
+  private PinJson() {}
+
+  /**
+   * Serialize a single pin, or any other JSON object held in a map.
+   *
+   * @param pin The pin
+   * @return The pin as a JSON object
+   */
+  public static String pinToJson(Map<String, Object> pin) {
+    return PIN_ADAPTER.toJson(pin);
+  }
+
+  /**
+   * Serialize a list of pins.
+   *
+   * @param pins The pins
+   * @return The pins as a JSON array
+   */
+  public static String toJson(List<Map<String, Object>> pins) {
+    return PIN_LIST_ADAPTER.toJson(pins);
+  }
+}
@@ -0,0 +1,206 @@
+package edu.brown.cs.student.main.server.storage;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only log of JSON records, one record per line. Every append is forced to disk before it
+ * returns, so a record that was appended survives a crash. A crash in the middle of an append can
+ * only leave a torn last line, which {@link #readAll()} drops. Damage anywhere else costs only the
+ * lines it touches: they are moved to a {@code .corrupt} file next to the log, and every readable
+ * record around them is kept.
+ */
+public class PinLog implements Closeable {
+  private static final Type RECORD_TYPE =
+      Types.newParameterizedType(Map.class, String.class, Object.class);
+
+  private final Path path;
+  private final JsonAdapter<Map<String, Object>> adapter;
+  private FileChannel channel;
+
+  /**
+   * Open (or create) a log file.
+   *
+   * @param path Path to the log file
+   * @throws IOException if the file cannot be opened
+   */
+  public PinLog(Path path) throws IOException {
+    this.path = path;
+    this.adapter = new Moshi.Builder().build().adapter(RECORD_TYPE);
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    this.channel = open(path);
+  }
+
+  /**
+   * Read every readable record in the log. An unterminated last line, left behind by a crash during
+   * an append, is cut off the file so later appends start on a clean line. Complete lines that
+   * cannot be read are moved to the {@code .corrupt} file and the log is rewritten without them.
+   *
+   * @return The records, in the order they were appended
+   * @throws IOException if the file cannot be read
+   */
+  public synchronized List<Map<String, Object>> readAll() throws IOException {
+    List<Map<String, Object>> records = new ArrayList<>();
+    List<String> unreadable = new ArrayList<>();
+    byte[] bytes = Files.readAllBytes(path);
+
+    int lineStart = 0;
+    for (int i = 0; i < bytes.length; i++) {
+      if (bytes[i] != '\n') {
+        continue;
+      }
+      String line = new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8);
+      lineStart = i + 1;
+      if (line.isBlank()) {
+        continue;
+      }
+      Map<String, Object> record = parse(line);
+      if (record == null) {
+        unreadable.add(line);
+      } else {
+        records.add(record);
+      }
+    }
+
+    if (lineStart < bytes.length) {
+      System.err.println(
+          "Dropping " + (bytes.length - lineStart) + " bytes of an incomplete record from " + path);
+      channel.truncate(lineStart);
+      channel.force(true);
+    }
+    if (!unreadable.isEmpty()) {
+      // Keep the damaged lines for inspection, but out of the log so they are reported only once
+      Path quarantine = path.resolveSibling(path.getFileName() + ".corrupt");
+      System.err.println(
+          "Moving " + unreadable.size() + " unreadable records from " + path + " to " + quarantine);
+      Files.write(
+          quarantine,
+          unreadable,
+          StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE,
+          StandardOpenOption.APPEND);
+      rewrite(records);
+    }
+    return records;
+  }
+
+  /**
+   * Append one record and force it to disk.
+   *
+   * @param record The record to append
+   * @throws IOException if the record cannot be written
+   */
+  public void append(Map<String, Object> record) throws IOException {
+    append(List.of(record));
+  }
+
+  /**
+   * Append several records and force them to disk with a single sync.
+   *
+   * @param records The records to append
+   * @throws IOException if the records cannot be written
+   */
+  public synchronized void append(List<Map<String, Object>> records) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(serialize(records));
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    channel.force(false);
+  }
+
+  /**
+   * Replace the whole log with a new set of records. The records are written to a temporary file
+   * which is then atomically moved over the log, so a crash leaves either the old or the new log.
+   * If the move fails, the old log stays open for appends.
+   *
+   * @param records The records the log should contain
+   * @throws IOException if the log cannot be rewritten
+   */
+  public synchronized void rewrite(List<Map<String, Object>> records) throws IOException {
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    try (FileChannel out =
+        FileChannel.open(
+            temporary,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.wrap(serialize(records));
+      while (buffer.hasRemaining()) {
+        out.write(buffer);
+      }
+      out.force(true);
+    }
+
+    channel.close();
+    try {
+      Files.move(
+          temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      // Appends go on to the new log, or to the old one if the move failed
+      this.channel = open(path);
+    }
+  }
+
+  /**
+   * Undo the type changes a pin goes through when written to and read back from the log. JSON
+   * numbers are read back as doubles, but timestamps are whole milliseconds.
+   *
+   * @param pin A pin read from the log
+   * @return A mutable copy of the pin with its original value types
+   */
+  public static Map<String, Object> restorePin(Map<String, Object> pin) {
+    Map<String, Object> restored = new HashMap<>(pin);
+    if (restored.get("timestamp") instanceof Double) {
+      restored.put("timestamp", ((Double) restored.get("timestamp")).longValue());
+    }
+    return restored;
+  }
+
+  /** Close the log file. */
+  @Override
+  public synchronized void close() throws IOException {
+    channel.close();
+  }
+
+  private byte[] serialize(List<Map<String, Object>> records) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (Map<String, Object> record : records) {
+      byte[] line = adapter.toJson(record).getBytes(StandardCharsets.UTF_8);
+      out.write(line, 0, line.length);
+      out.write('\n');
+    }
+    return out.toByteArray();
+  }
+
+  private Map<String, Object> parse(String line) {
+    try {
+      return adapter.fromJson(line);
+    } catch (IOException | JsonDataException e) {
+      return null;
+    }
+  }
+
+  private static FileChannel open(Path path) throws IOException {
+    return FileChannel.open(
+        path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+  }
+}
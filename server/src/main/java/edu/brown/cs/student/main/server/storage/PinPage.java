@@ -0,0 +1,115 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of pins, ordered by timestamp and then by pin id. The cursor of the last pin on a page
+ * is passed back as {@code startAfter} to get the next page.
+ */
+public class PinPage {
+  /**
+   * The order pins are paged in: by timestamp, then by id so pins at the same instant are stable.
+   */
+  public static final Comparator<Map<String, Object>> ORDER =
+      Comparator.<Map<String, Object>>comparingLong(PinPage::timestampOf)
+          .thenComparing(pin -> (String) pin.get("id"));
+
+  private final List<Map<String, Object>> pins;
+  private final String nextCursor;
+
+  /**
+   * Constructor for a page of pins.
+   *
+   * @param pins The pins on the page
+   * @param nextCursor Cursor to get the next page, or null if this is the last page
+   */
+  public PinPage(List<Map<String, Object>> pins, String nextCursor) {
+    this.pins = pins;
+    this.nextCursor = nextCursor;
+  }
+
+  public List<Map<String, Object>> getPins() {
+    return pins;
+  }
+
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  /**
+   * Get the cursor pointing just past a pin. A cursor is the pin's timestamp and id joined by a
+   * colon; timestamps never contain a colon, so ids may.
+   *
+   * @param pin The pin
+   * @return The cursor
+   */
+  public static String cursorFor(Map<String, Object> pin) {
+    return timestampOf(pin) + ":" + pin.get("id");
+  }
+
+  /**
+   * Get the timestamp part of a cursor.
+   *
+   * @param cursor The cursor
+   * @return The timestamp
+   * @throws IllegalArgumentException if the cursor is malformed
+   */
+  public static long cursorTimestamp(String cursor) {
+    int separator = cursor.indexOf(':');
+    if (separator < 0) {
+      throw new IllegalArgumentException("Malformed cursor: " + cursor);
+    }
+    try {
+      return Long.parseLong(cursor.substring(0, separator));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Malformed cursor: " + cursor);
+    }
+  }
+
+  /**
+   * Get the pin id part of a cursor.
+   *
+   * @param cursor The cursor
+   * @return The pin id
+   * @throws IllegalArgumentException if the cursor is malformed
+   */
+  public static String cursorId(String cursor) {
+    int separator = cursor.indexOf(':');
+    if (separator < 0) {
+      throw new IllegalArgumentException("Malformed cursor: " + cursor);
+    }
+    return cursor.substring(separator + 1);
+  }
+
+  /**
+   * Check whether a pin comes after a cursor in page order.
+   *
+   * @param pin The pin
+   * @param cursor The cursor, or null for the start
+   * @return true if the pin belongs after the cursor
+   */
+  public static boolean isAfter(Map<String, Object> pin, String cursor) {
+    if (cursor == null) {
+      return true;
+    }
+    long timestamp = timestampOf(pin);
+    long cursorTimestamp = cursorTimestamp(cursor);
+    if (timestamp != cursorTimestamp) {
+      return timestamp > cursorTimestamp;
+    }
+    return ((String) pin.get("id")).compareTo(cursorId(cursor)) > 0;
+  }
+
+  /**
+   * Get a pin's timestamp, which may have been stored as any kind of number.
+   *
+   * @param pin The pin
+   * @return The timestamp in milliseconds, or 0 if the pin has none
+   */
+  public static long timestampOf(Map<String, Object> pin) {
+    Object timestamp = pin.get("timestamp");
+    return timestamp instanceof Number ? ((Number) timestamp).longValue() : 0L;
+  }
+}
@@ -0,0 +1,95 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Storage decorator that publishes an event on a {@link PinEventBus} after every successful write,
+ * so clients can follow pin changes live instead of polling. Reads pass straight through.
+ */
+public class PublishingStorage implements StorageInterface {
+  /** Event type for an added pin; the payload is the pin. */
+  public static final String ADD = "add";
+
+  /** Event type for a cleared user; the payload holds the userId and number of pins deleted. */
+  public static final String CLEAR = "clear";
+
+  private final StorageInterface delegate;
+  private final PinEventBus eventBus;
+
+  /**
+   * Wrap a storage backend.
+   *
+   * @param delegate The storage that holds the pins
+   * @param eventBus The bus to publish changes on
+   */
+  public PublishingStorage(StorageInterface delegate, PinEventBus eventBus) {
+    this.delegate = delegate;
+    this.eventBus = eventBus;
+  }
+
+  @Override
+  public void addDocument(String userId, String pinId, Map<String, Object> data)
+      throws ExecutionException, InterruptedException {
+    delegate.addDocument(userId, pinId, data);
+    eventBus.publish(ADD, PinJson.pinToJson(data));
+  }
+
+  @Override
+  public void addDocuments(List<Map<String, Object>> pins)
+      throws ExecutionException, InterruptedException {
+    delegate.addDocuments(pins);
+    for (Map<String, Object> pin : pins) {
+      eventBus.publish(ADD, PinJson.pinToJson(pin));
+    }
+  }
+
+  @Override
+  public List<Map<String, Object>> getAllPins() throws ExecutionException, InterruptedException {
+    return delegate.getAllPins();
+  }
+
+  @Override
+  public String getAllPinsJson() throws ExecutionException, InterruptedException {
+    return delegate.getAllPinsJson();
+  }
+
+  @Override
+  public List<Map<String, Object>> getPinsInBox(
+      double minLat, double minLng, double maxLat, double maxLng)
+      throws ExecutionException, InterruptedException {
+    return delegate.getPinsInBox(minLat, minLng, maxLat, maxLng);
+  }
+
+  @Override
+  public List<Map<String, Object>> getPinsNear(double lat, double lng, double radiusMeters)
+      throws ExecutionException, InterruptedException {
+    return delegate.getPinsNear(lat, lng, radiusMeters);
+  }
+
+  @Override
+  public PinPage getPins(int limit, String startAfter)
+      throws ExecutionException, InterruptedException {
+    return delegate.getPins(limit, startAfter);
+  }
+
+  @Override
+  public PinChanges getChangesSince(long since, long removedSince)
+      throws ExecutionException, InterruptedException {
+    return delegate.getChangesSince(since, removedSince);
+  }
+
+  @Override
+  public int clearUser(String userId) throws ExecutionException, InterruptedException {
+    int deleted = delegate.clearUser(userId);
+    if (deleted > 0) {
+      Map<String, Object> payload = new HashMap<>();
+      payload.put("userId", userId);
+      payload.put("deleted", deleted);
+      eventBus.publish(CLEAR, PinJson.pinToJson(payload));
+    }
+    return deleted;
+  }
+}
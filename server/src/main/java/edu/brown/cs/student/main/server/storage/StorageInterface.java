@@ -1,5 +1,6 @@
 package edu.brown.cs.student.main.server.storage;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -8,7 +9,132 @@ public interface StorageInterface {
   void addDocument(String userId, String pinId, Map<String, Object> data)
       throws ExecutionException, InterruptedException;
 
+  /**
+   * Add several pins at once. Each pin carries its own userId and id. Backends that can write a
+   * batch in one round trip should override this; the default adds the pins one by one.
+   *
+   * @param pins The pins to add
+   */
+  default void addDocuments(List<Map<String, Object>> pins)
+      throws ExecutionException, InterruptedException {
+    for (Map<String, Object> pin : pins) {
+      addDocument((String) pin.get("userId"), (String) pin.get("id"), pin);
+    }
+  }
+
   List<Map<String, Object>> getAllPins() throws ExecutionException, InterruptedException;
 
-  void clearUser(String userId) throws ExecutionException, InterruptedException;
+  /**
+   * Get every pin as a JSON array. Backends that can keep the serialized form around between calls
+   * should override this.
+   *
+   * @return The JSON array of all pins
+   */
+  default String getAllPinsJson() throws ExecutionException, InterruptedException {
+    return PinJson.toJson(getAllPins());
+  }
+
+  /**
+   * Get the pins inside a bounding box. A box with minLng greater than maxLng crosses the
+   * antimeridian. The default reads every pin and filters them; backends with a spatial index
+   * should override it.
+   *
+   * @return The pins inside the box
+   */
+  default List<Map<String, Object>> getPinsInBox(
+      double minLat, double minLng, double maxLat, double maxLng)
+      throws ExecutionException, InterruptedException {
+    List<Map<String, Object>> pins = new ArrayList<>();
+    for (Map<String, Object> pin : getAllPins()) {
+      Object lat = pin.get("latitude");
+      Object lng = pin.get("longitude");
+      if (lat instanceof Number
+          && lng instanceof Number
+          && PinGridIndex.contains(
+              minLat,
+              minLng,
+              maxLat,
+              maxLng,
+              ((Number) lat).doubleValue(),
+              ((Number) lng).doubleValue())) {
+        pins.add(pin);
+      }
+    }
+    return pins;
+  }
+
+  /**
+   * Get the pins within a distance of a point. The default narrows the search down with {@link
+   * #getPinsInBox} and then checks the exact distance.
+   *
+   * @param lat Latitude of the center
+   * @param lng Longitude of the center
+   * @param radiusMeters The distance in meters
+   * @return The pins within the distance
+   */
+  default List<Map<String, Object>> getPinsNear(double lat, double lng, double radiusMeters)
+      throws ExecutionException, InterruptedException {
+    double[] box = PinGridIndex.boundingBox(lat, lng, radiusMeters);
+    List<Map<String, Object>> pins = new ArrayList<>();
+    for (Map<String, Object> pin : getPinsInBox(box[0], box[1], box[2], box[3])) {
+      double pinLat = ((Number) pin.get("latitude")).doubleValue();
+      double pinLng = ((Number) pin.get("longitude")).doubleValue();
+      if (PinGridIndex.distanceMeters(lat, lng, pinLat, pinLng) <= radiusMeters) {
+        pins.add(pin);
+      }
+    }
+    return pins;
+  }
+
+  /**
+   * Get one page of pins in {@link PinPage#ORDER}. The default reads every pin and pages through
+   * them in memory; backends that can query in order should override it.
+   *
+   * @param limit The maximum number of pins on the page
+   * @param startAfter Cursor from the previous page, or null for the first page
+   * @return The page
+   * @throws IllegalArgumentException if the cursor is malformed
+   */
+  default PinPage getPins(int limit, String startAfter)
+      throws ExecutionException, InterruptedException {
+    List<Map<String, Object>> pins = new ArrayList<>();
+    for (Map<String, Object> pin : getAllPins()) {
+      if (PinPage.isAfter(pin, startAfter)) {
+        pins.add(pin);
+      }
+    }
+    pins.sort(PinPage.ORDER);
+    if (pins.size() <= limit) {
+      return new PinPage(pins, null);
+    }
+    List<Map<String, Object>> page = new ArrayList<>(pins.subList(0, limit));
+    return new PinPage(page, PinPage.cursorFor(page.get(limit - 1)));
+  }
+
+  /**
+   * Get the pins with a timestamp after one time, and the pins deleted after another. The default
+   * reads every pin and cannot report deletions; backends that keep tombstones should override it.
+   *
+   * @param since Time in milliseconds, usually the cursor of the previous call
+   * @param removedSince Time in milliseconds, usually the removed cursor of the previous call
+   * @return The changes
+   */
+  default PinChanges getChangesSince(long since, long removedSince)
+      throws ExecutionException, InterruptedException {
+    List<Map<String, Object>> pins = new ArrayList<>();
+    for (Map<String, Object> pin : getAllPins()) {
+      if (PinPage.timestampOf(pin) > since) {
+        pins.add(pin);
+      }
+    }
+    return new PinChanges(pins, List.of(), PinChanges.nextCursor(since, pins), removedSince);
+  }
+
+  /**
+   * Delete all pins of a user.
+   *
+   * @param userId The user id
+   * @return The number of pins deleted
+   */
+  int clearUser(String userId) throws ExecutionException, InterruptedException;
 }
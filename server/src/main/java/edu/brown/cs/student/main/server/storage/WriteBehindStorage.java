@@ -0,0 +1,521 @@
+package edu.brown.cs.student.main.server.storage;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.cloud.BaseServiceException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage decorator that acknowledges new pins as soon as they are durably journaled on local disk
+ * and writes them to the underlying storage in the background, in batches. A batch is written when
+ * it reaches the batch size or when the flush interval has passed since its first pin, whichever
+ * comes first.
+ *
+ * <p>At most {@code capacity} pins may be waiting; once the queue is full, adding a pin blocks
+ * until the flusher catches up, and fails if it does not within the enqueue timeout. Reads and
+ * deletes first wait for every pin added before them to be written, so callers still see their own
+ * writes; if the pins cannot be written within the enqueue timeout, as when the underlying storage
+ * is down, the read or delete fails instead of waiting. Pins still in the journal when the server
+ * stops are written on the next start.
+ *
+ * <p>Only failures that can go away are retried. When the storage rejects a batch outright, as with
+ * invalid data or a permission error, the batch is written in halves to find the pins it rejects;
+ * those are kept in the journal as dead letters and the rest are written, so one bad pin cannot
+ * hold up the pins behind it. Pins added at the same time share a single journal sync.
+ */
+public class WriteBehindStorage implements StorageInterface, Closeable {
+  // Longest wait between retries of a failed batch
+  private static final long MAX_RETRY_DELAY_MILLIS = 5000;
+
+  // Rewrite the journal once it holds this many records, so it does not grow without bound
+  private static final int JOURNAL_COMPACTION_THRESHOLD = 10_000;
+
+  // Queue entry that only asks the flusher to write out what it has collected so far
+  private static final Pending FLUSH_MARKER = new Pending(-1, null, false);
+
+  // Key of journal records holding a pin the storage rejected, instead of a pin to write
+  private static final String DEAD_LETTER = "deadLetter";
+
+  private final StorageInterface delegate;
+  private final PinLog journal;
+  private final int batchSize;
+  private final long flushIntervalNanos;
+  private final long enqueueTimeoutNanos;
+
+  private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+  private final Semaphore capacity;
+  private final Object journalLock = new Object();
+  private final Object flushedMonitor = new Object();
+  private final Object commitLock = new Object();
+  private final Thread flusher;
+  // Batches given up on while closing; only the flusher touches this
+  private final List<Pending> abandoned = new ArrayList<>();
+  // Journal records of pins the storage rejected, kept through compaction
+  private final List<Map<String, Object>> deadLetters = new ArrayList<>();
+
+  // Pins waiting for the next journal sync, and whether a thread is syncing now
+  private List<Append> staged = new ArrayList<>();
+  private boolean committing = false;
+
+  private long enqueuedSeq = 0;
+  private long journalRecords = 0;
+  private long flushedSeq = 0;
+  private volatile boolean running = true;
+
+  /**
+   * Wrap a storage backend.
+   *
+   * @param delegate The storage the pins are eventually written to
+   * @param journalPath Path to the local journal of pins not yet written
+   * @param capacity Maximum number of pins waiting to be written
+   * @param batchSize Maximum number of pins written in one batch
+   * @param flushInterval Longest time a pin waits for its batch to fill up
+   * @param enqueueTimeout Longest time adding a pin waits for room in a full queue
+   * @throws IOException if the journal cannot be opened or read
+   */
+  public WriteBehindStorage(
+      StorageInterface delegate,
+      Path journalPath,
+      int capacity,
+      int batchSize,
+      Duration flushInterval,
+      Duration enqueueTimeout)
+      throws IOException {
+    this.delegate = delegate;
+    this.journal = new PinLog(journalPath);
+    this.capacity = new Semaphore(capacity);
+    this.batchSize = batchSize;
+    this.flushIntervalNanos = flushInterval.toNanos();
+    this.enqueueTimeoutNanos = enqueueTimeout.toNanos();
+
+    // Pins acknowledged before the last shutdown but never written go out first
+    List<Map<String, Object>> records = journal.readAll();
+    for (Map<String, Object> record : records) {
+      if (record.containsKey(DEAD_LETTER)) {
+        deadLetters.add(record);
+      } else {
+        queue.add(new Pending(++enqueuedSeq, PinLog.restorePin(record), false));
+      }
+    }
+    journalRecords = records.size();
+    if (!queue.isEmpty()) {
+      System.out.println("Replaying " + queue.size() + " unwritten pins from " + journalPath);
+    }
+    if (!deadLetters.isEmpty()) {
+      System.err.println(deadLetters.size() + " rejected pins are kept in " + journalPath);
+    }
+
+    this.flusher = new Thread(this::runFlusher, "pin-write-behind");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  @Override
+  public void addDocument(String userId, String pinId, Map<String, Object> data)
+      throws ExecutionException, InterruptedException {
+    if (!running) {
+      throw new IllegalStateException("Pin storage is closed");
+    }
+    // Backpressure: wait for room rather than letting the queue grow without bound
+    if (!capacity.tryAcquire(enqueueTimeoutNanos, TimeUnit.NANOSECONDS)) {
+      throw new ExecutionException(
+          "Pin write queue is full", new IllegalStateException("Timed out waiting for room"));
+    }
+
+    // Generate a new document ID if not provided
+    String documentId =
+        data.containsKey("id")
+            ? (String) data.get("id")
+            : "pin_" + UUID.randomUUID().toString().replace("-", "");
+    if (!data.containsKey("userId")) {
+      data.put("userId", userId);
+    }
+    if (!data.containsKey("id")) {
+      data.put("id", documentId);
+    }
+
+    // The pin is acknowledged only once the journal has it on disk
+    Append append = new Append(new HashMap<>(data));
+    synchronized (commitLock) {
+      staged.add(append);
+    }
+    commit(append);
+    if (append.failure != null) {
+      capacity.release();
+      throw new ExecutionException("Could not journal pin", append.failure);
+    }
+  }
+
+  /**
+   * Wait until a staged pin is in the journal. If no other thread is syncing the journal, this one
+   * syncs every pin staged so far in one append, so concurrent adds share a single sync.
+   */
+  private void commit(Append append) {
+    boolean interrupted = false;
+    List<Append> group;
+    synchronized (commitLock) {
+      while (committing && !append.done) {
+        try {
+          commitLock.wait();
+        } catch (InterruptedException e) {
+          // The pin may already be on its way to disk, so its outcome has to be waited for
+          interrupted = true;
+        }
+      }
+      if (append.done) {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+        return;
+      }
+      committing = true;
+      group = staged;
+      staged = new ArrayList<>();
+    }
+
+    IOException failure = null;
+    List<Map<String, Object>> pins = new ArrayList<>(group.size());
+    for (Append member : group) {
+      pins.add(member.pin);
+    }
+    try {
+      synchronized (journalLock) {
+        journal.append(pins);
+        journalRecords += pins.size();
+        for (Map<String, Object> pin : pins) {
+          queue.add(new Pending(++enqueuedSeq, pin, true));
+        }
+      }
+    } catch (IOException e) {
+      failure = e;
+    }
+
+    synchronized (commitLock) {
+      for (Append member : group) {
+        member.failure = failure;
+        member.done = true;
+      }
+      committing = false;
+      commitLock.notifyAll();
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public List<Map<String, Object>> getAllPins() throws ExecutionException, InterruptedException {
+    flush();
+    return delegate.getAllPins();
+  }
+
+  @Override
+  public String getAllPinsJson() throws ExecutionException, InterruptedException {
+    flush();
+    return delegate.getAllPinsJson();
+  }
+
+  @Override
+  public List<Map<String, Object>> getPinsInBox(
+      double minLat, double minLng, double maxLat, double maxLng)
+      throws ExecutionException, InterruptedException {
+    flush();
+    return delegate.getPinsInBox(minLat, minLng, maxLat, maxLng);
+  }
+
+  @Override
+  public List<Map<String, Object>> getPinsNear(double lat, double lng, double radiusMeters)
+      throws ExecutionException, InterruptedException {
+    flush();
+    return delegate.getPinsNear(lat, lng, radiusMeters);
+  }
+
+  @Override
+  public PinPage getPins(int limit, String startAfter)
+      throws ExecutionException, InterruptedException {
+    flush();
+    return delegate.getPins(limit, startAfter);
+  }
+
+  @Override
+  public PinChanges getChangesSince(long since, long removedSince)
+      throws ExecutionException, InterruptedException {
+    flush();
+    return delegate.getChangesSince(since, removedSince);
+  }
+
+  @Override
+  public int clearUser(String userId) throws ExecutionException, InterruptedException {
+    // Pins added before the delete must not reappear after it
+    flush();
+    return delegate.clearUser(userId);
+  }
+
+  /**
+   * Wait until every pin added before this call has been written to the underlying storage.
+   *
+   * @throws ExecutionException if the pins are not written within the enqueue timeout
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void flush() throws ExecutionException, InterruptedException {
+    long target;
+    synchronized (journalLock) {
+      target = enqueuedSeq;
+    }
+    synchronized (flushedMonitor) {
+      if (flushedSeq >= target) {
+        return;
+      }
+    }
+    // Cut the current batch short instead of waiting out the flush interval
+    queue.add(FLUSH_MARKER);
+    long deadline = System.nanoTime() + enqueueTimeoutNanos;
+    synchronized (flushedMonitor) {
+      while (flushedSeq < target) {
+        if (!flusher.isAlive()) {
+          return;
+        }
+        // The flusher retries failed batches forever; callers should not wait along with it
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          throw new ExecutionException(
+              "Pending pins were not written in time",
+              new IllegalStateException("Timed out waiting for pin writes"));
+        }
+        TimeUnit.NANOSECONDS.timedWait(flushedMonitor, Math.min(remaining, 100_000_000L));
+      }
+    }
+  }
+
+  /**
+   * Get the number of pins the storage rejected, which are kept in the journal as dead letters.
+   *
+   * @return The number of rejected pins
+   */
+  public int deadLetterCount() {
+    synchronized (journalLock) {
+      return deadLetters.size();
+    }
+  }
+
+  /**
+   * Get the number of pins waiting to be written.
+   *
+   * @return The number of pins acknowledged but not yet written
+   */
+  public long pendingCount() {
+    synchronized (journalLock) {
+      synchronized (flushedMonitor) {
+        return enqueuedSeq - flushedSeq;
+      }
+    }
+  }
+
+  /** Write out every waiting pin, then stop the flusher and close the journal. */
+  @Override
+  public void close() throws IOException {
+    running = false;
+    queue.add(FLUSH_MARKER);
+    try {
+      flusher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (journalLock) {
+      journal.close();
+    }
+  }
+
+  /** Collect pins into batches and write them until closed and drained. */
+  private void runFlusher() {
+    List<Pending> batch = new ArrayList<>(batchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        Pending first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+        if (first == null || first == FLUSH_MARKER) {
+          continue;
+        }
+        batch.add(first);
+
+        // Wait for the batch to fill up, but never longer than the flush interval
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize) {
+          long remaining = deadline - System.nanoTime();
+          Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+          if (next == null || next == FLUSH_MARKER) {
+            break;
+          }
+          batch.add(next);
+        }
+
+        writeWithRetry(batch);
+        batch.clear();
+      } catch (InterruptedException e) {
+        // Only close() stops the flusher; keep draining
+      }
+    }
+  }
+
+  /** Write a batch, then release its room in the queue and drop it from the journal. */
+  private void writeWithRetry(List<Pending> batch) throws InterruptedException {
+    if (!write(batch)) {
+      return;
+    }
+
+    int permits = 0;
+    for (Pending pending : batch) {
+      if (pending.holdsPermit) {
+        permits++;
+      }
+    }
+    capacity.release(permits);
+    synchronized (flushedMonitor) {
+      flushedSeq = batch.get(batch.size() - 1).seq;
+      flushedMonitor.notifyAll();
+    }
+    compactJournal();
+  }
+
+  /**
+   * Write some pins, retrying failures that may go away with backoff until they succeed or the
+   * storage is closed. Pins the storage rejects outright are found by writing the rest in halves,
+   * and moved to dead letters.
+   *
+   * @return false if some pins were given up on because the storage is closing
+   */
+  private boolean write(List<Pending> part) throws InterruptedException {
+    List<Map<String, Object>> pins = new ArrayList<>(part.size());
+    for (Pending pending : part) {
+      pins.add(pending.pin);
+    }
+
+    long delay = 100;
+    while (true) {
+      try {
+        delegate.addDocuments(pins);
+        return true;
+      } catch (Exception e) {
+        System.err.println("Failed to write " + pins.size() + " pins: " + e.getMessage());
+        if (!isRetryable(e)) {
+          if (part.size() == 1) {
+            deadLetter(part.get(0), e);
+            return true;
+          }
+          int middle = part.size() / 2;
+          boolean firstHalf = write(part.subList(0, middle));
+          return write(part.subList(middle, part.size())) && firstHalf;
+        }
+        if (!running) {
+          // Leave the pins in the journal for the next start; compaction must keep them
+          abandoned.addAll(part);
+          return false;
+        }
+        Thread.sleep(delay);
+        delay = Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+      }
+    }
+  }
+
+  /**
+   * Check whether a failed write may succeed if tried again. Failures the storage marks as final,
+   * and data it cannot handle, will not.
+   */
+  private static boolean isRetryable(Throwable failure) {
+    for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+      if (cause instanceof ApiException) {
+        return ((ApiException) cause).isRetryable();
+      }
+      if (cause instanceof BaseServiceException) {
+        return ((BaseServiceException) cause).isRetryable();
+      }
+      if (cause instanceof IllegalArgumentException
+          || cause instanceof ClassCastException
+          || cause instanceof NullPointerException) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Keep a pin the storage rejected in the journal, where it is no longer retried. */
+  private void deadLetter(Pending pending, Exception failure) {
+    Map<String, Object> record = new HashMap<>();
+    record.put(DEAD_LETTER, pending.pin);
+    record.put("error", String.valueOf(failure.getMessage()));
+    System.err.println("Storage rejected pin " + pending.pin.get("id") + "; keeping it aside");
+    synchronized (journalLock) {
+      try {
+        journal.append(record);
+        journalRecords++;
+      } catch (IOException e) {
+        // The pin itself is still in the journal and is tried again on the next start
+        System.err.println("Failed to journal rejected pin: " + e.getMessage());
+      }
+      deadLetters.add(record);
+    }
+  }
+
+  /** Drop written pins from the journal once it is empty or has grown large. */
+  private void compactJournal() {
+    synchronized (journalLock) {
+      List<Map<String, Object>> unwritten = new ArrayList<>(deadLetters);
+      for (Pending pending : abandoned) {
+        unwritten.add(pending.pin);
+      }
+      for (Pending pending : queue) {
+        if (pending != FLUSH_MARKER) {
+          unwritten.add(pending.pin);
+        }
+      }
+      if (journalRecords == unwritten.size()) {
+        // Nothing to drop
+        return;
+      }
+      if (unwritten.size() > deadLetters.size() && journalRecords < JOURNAL_COMPACTION_THRESHOLD) {
+        return;
+      }
+      try {
+        journal.rewrite(unwritten);
+        journalRecords = unwritten.size();
+      } catch (IOException e) {
+        // The journal still holds everything; written pins are just replayed again
+        System.err.println("Failed to compact pin journal: " + e.getMessage());
+      }
+    }
+  }
+
+  /** A pin waiting for the next journal sync, and how that sync went. */
+  private static class Append {
+    private final Map<String, Object> pin;
+    private boolean done = false;
+    private IOException failure;
+
+    Append(Map<String, Object> pin) {
+      this.pin = pin;
+    }
+  }
+
+  /** A pin waiting to be written, with its position in the order pins were added. */
+  private static class Pending {
+    private final long seq;
+    private final Map<String, Object> pin;
+    private final boolean holdsPermit;
+
+    Pending(long seq, Map<String, Object> pin, boolean holdsPermit) {
+      this.seq = seq;
+      this.pin = pin;
+      this.holdsPermit = holdsPermit;
+    }
+  }
+}
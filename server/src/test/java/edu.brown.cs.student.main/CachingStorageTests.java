@@ -0,0 +1,218 @@
+package edu.brown.cs.student.main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.storage.CachingStorage;
+import edu.brown.cs.student.main.server.storage.PinPage;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the in-memory pin cache. */
+public class CachingStorageTests {
+
+  /** In-memory storage that counts how often all pins are read. */
+  private static class CountingStorage implements StorageInterface {
+    final Map<String, Map<String, Object>> pins = new HashMap<>();
+    int reads = 0;
+    // When set, loading all pins waits for it, after taking its copy
+    volatile CountDownLatch gate = null;
+    // When set, adding a pin waits for it first, as a slow backend would
+    volatile CountDownLatch writeGate = null;
+
+    @Override
+    public void addDocument(String userId, String pinId, Map<String, Object> data)
+        throws InterruptedException {
+      if (writeGate != null) {
+        writeGate.await();
+      }
+      synchronized (this) {
+        pins.put((String) data.get("id"), new HashMap<>(data));
+      }
+    }
+
+    @Override
+    public List<Map<String, Object>> getAllPins() throws InterruptedException {
+      List<Map<String, Object>> allPins = new ArrayList<>();
+      synchronized (this) {
+        reads++;
+        for (Map<String, Object> pin : pins.values()) {
+          allPins.add(new HashMap<>(pin));
+        }
+      }
+      if (gate != null) {
+        gate.await();
+      }
+      return allPins;
+    }
+
+    @Override
+    public synchronized int clearUser(String userId) {
+      int before = pins.size();
+      pins.values().removeIf(pin -> userId.equals(pin.get("userId")));
+      return before - pins.size();
+    }
+  }
+
+  private static Map<String, Object> pin(String userId, String pinId) {
+    return pin(userId, pinId, 1649673600000L);
+  }
+
+  private static Map<String, Object> pin(String userId, String pinId, long timestamp) {
+    Map<String, Object> pinData = new HashMap<>();
+    pinData.put("id", pinId);
+    pinData.put("latitude", 41.8);
+    pinData.put("longitude", -71.4);
+    pinData.put("userId", userId);
+    pinData.put("timestamp", timestamp);
+    return pinData;
+  }
+
+  @Test
+  public void testReadsAreServedFromMemory() throws Exception {
+    CountingStorage delegate = new CountingStorage();
+    delegate.addDocument("user1", "pin1", pin("user1", "pin1"));
+    CachingStorage storage = new CachingStorage(delegate, Duration.ofHours(1));
+
+    assertEquals(1, storage.getAllPins().size());
+    assertEquals(1, storage.getAllPins().size());
+    storage.getAllPinsJson();
+    assertEquals(1, delegate.reads, "Pins should be loaded from the delegate only once");
+  }
+
+  @Test
+  public void testSnapshotIsRebuiltOnlyAfterChanges() throws Exception {
+    CachingStorage storage = new CachingStorage(new CountingStorage(), Duration.ofHours(1));
+    storage.addDocument("user1", "pin1", pin("user1", "pin1"));
+
+    String first = storage.getAllPinsJson();
+    assertSame(first, storage.getAllPinsJson(), "Unchanged pins should reuse the snapshot");
+
+    storage.addDocument("user2", "pin2", pin("user2", "pin2"));
+    String second = storage.getAllPinsJson();
+    assertNotSame(first, second);
+    assertTrue(second.contains("pin2"), "Snapshot should include the new pin");
+
+    assertEquals(1, storage.clearUser("user1"));
+    String third = storage.getAllPinsJson();
+    assertFalse(third.contains("pin1"), "Snapshot should drop cleared pins");
+    assertTrue(third.contains("pin2"));
+  }
+
+  @Test
+  public void testOutsideChangesAppearAfterRefresh() throws Exception {
+    CountingStorage delegate = new CountingStorage();
+    CachingStorage storage = new CachingStorage(delegate, Duration.ofMillis(1));
+    assertTrue(storage.getAllPins().isEmpty());
+
+    // Written straight to the delegate, as another server would; the reload runs in the
+    // background, so the pin shows up shortly after a read finds the copy stale
+    delegate.addDocument("user1", "pin1", pin("user1", "pin1"));
+    long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+    while (storage.getAllPins().isEmpty() && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(1, storage.getAllPins().size(), "Stale cache should be reloaded");
+  }
+
+  @Test
+  public void testRefreshDoesNotBlockOrLoseWrites() throws Exception {
+    CountingStorage delegate = new CountingStorage();
+    delegate.addDocument("user1", "pin1", pin("user1", "pin1"));
+    CachingStorage storage = new CachingStorage(delegate, Duration.ofMillis(50));
+    assertEquals(1, storage.getAllPins().size());
+
+    // The next reload takes its copy and then hangs, as a slow backend would
+    delegate.gate = new CountDownLatch(1);
+    Thread.sleep(60);
+    assertEquals(1, storage.getAllPins().size(), "Reads should use the current copy meanwhile");
+    storage.addDocument("user2", "pin2", pin("user2", "pin2"));
+    assertEquals(1, storage.clearUser("user1"));
+
+    delegate.gate.countDown();
+    Thread.sleep(100);
+    delegate.gate = null;
+    List<Map<String, Object>> pins = storage.getAllPins();
+    assertEquals(1, pins.size(), "Writes made during the reload should survive it");
+    assertEquals("pin2", pins.get(0).get("id"));
+  }
+
+  @Test
+  public void testPinsWithoutUserIdAreCached() throws Exception {
+    CountingStorage delegate = new CountingStorage();
+    Map<String, Object> orphan = pin("user1", "pin1");
+    orphan.remove("userId");
+    delegate.addDocument(null, "pin1", orphan);
+    CachingStorage storage = new CachingStorage(delegate, Duration.ofHours(1));
+    assertEquals(1, storage.getAllPins().size());
+
+    // Replacing a pin that had no owner must not fail
+    storage.addDocument("user1", "pin1", pin("user1", "pin1"));
+    assertEquals("user1", storage.getAllPins().get(0).get("userId"));
+    assertEquals(1, storage.clearUser("user1"));
+    assertTrue(storage.getAllPins().isEmpty());
+  }
+
+  @Test
+  public void testSlowWritesDoNotBlockReads() throws Exception {
+    CountingStorage delegate = new CountingStorage();
+    CachingStorage storage = new CachingStorage(delegate, Duration.ofHours(1));
+    assertTrue(storage.getAllPins().isEmpty());
+
+    delegate.writeGate = new CountDownLatch(1);
+    Thread writer =
+        new Thread(
+            () -> {
+              try {
+                storage.addDocument("user1", "pin1", pin("user1", "pin1"));
+              } catch (Exception e) {
+                throw new RuntimeException(e);
+              }
+            });
+    writer.start();
+    while (writer.getState() != Thread.State.WAITING) {
+      Thread.sleep(1);
+    }
+
+    assertTimeoutPreemptively(
+        Duration.ofSeconds(5),
+        () -> assertTrue(storage.getAllPins().isEmpty()),
+        "Reads should not wait for a write to reach the delegate");
+    delegate.writeGate.countDown();
+    writer.join();
+    assertEquals(1, storage.getAllPins().size(), "The write should reach the cache afterwards");
+  }
+
+  @Test
+  public void testPagesAreServedFromMemory() throws Exception {
+    CountingStorage delegate = new CountingStorage();
+    for (int i = 0; i < 5; i++) {
+      delegate.addDocument("user1", "pin" + i, pin("user1", "pin" + i, 1000 - i));
+    }
+    CachingStorage storage = new CachingStorage(delegate, Duration.ofHours(1));
+
+    List<Object> ids = new ArrayList<>();
+    String cursor = null;
+    do {
+      PinPage page = storage.getPins(2, cursor);
+      assertTrue(page.getPins().size() <= 2);
+      for (Map<String, Object> pin : page.getPins()) {
+        ids.add(pin.get("id"));
+      }
+      cursor = page.getNextCursor();
+    } while (cursor != null);
+
+    assertEquals(List.of("pin4", "pin3", "pin2", "pin1", "pin0"), ids);
+    assertEquals(1, delegate.reads, "Pages should not go to the delegate");
+  }
+}
@@ -0,0 +1,90 @@
+package edu.brown.cs.student.main;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.geoJson.DetailLevels;
+import edu.brown.cs.student.main.server.geoJson.GeoJsonParser;
+import edu.brown.cs.student.main.server.geoJson.RedliningDataGenerator;
+import edu.brown.cs.student.main.server.geoJson.RedliningDataGenerator.CityDistribution;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for loading the redlining dataset from a snapshot. */
+public class DatasetSnapshotTests {
+
+  @TempDir Path tempDir;
+
+  @Test
+  public void testSnapshotLoadMatchesParsedData() throws Exception {
+    Path dataPath = tempDir.resolve("data.json");
+    Path snapshotPath = tempDir.resolve("snapshots").resolve("redlining.snapshot");
+    new RedliningDataGenerator(300, 16, 5, CityDistribution.ZIPF, 15, 3).write(dataPath);
+
+    GeoJsonParser parsed = new GeoJsonParser(dataPath, snapshotPath);
+    assertTrue(Files.exists(snapshotPath), "Parsing should write a snapshot");
+    GeoJsonParser loaded = new GeoJsonParser(dataPath, snapshotPath);
+
+    assertEquals(parsed.getData().size(), loaded.getData().size());
+    int[] all = IntStream.range(0, parsed.getData().size()).toArray();
+    for (int level = 0; level < DetailLevels.count(); level++) {
+      assertArrayEquals(parsed.toJsonBytes(all, level), loaded.toJsonBytes(all, level));
+      assertArrayEquals(parsed.toGeobufBytes(all, level), loaded.toGeobufBytes(all, level));
+    }
+
+    double[][] boxes = {{-90, -180, 90, 180}, {30, -100, 45, -80}, {40, -75, 41, -73}};
+    for (double[] box : boxes) {
+      assertArrayEquals(
+          parsed.featuresInBox(box[0], box[1], box[2], box[3]),
+          loaded.featuresInBox(box[0], box[1], box[2], box[3]));
+    }
+    for (String keyword : new String[] {"the", "residential", "nothing-matches-this"}) {
+      assertArrayEquals(
+          parsed.getSearchIndex().search(keyword), loaded.getSearchIndex().search(keyword));
+    }
+    assertEquals(
+        parsed.getData().feature(7).descriptions(), loaded.getData().feature(7).descriptions());
+  }
+
+  @Test
+  public void testChangedSourceReplacesSnapshot() throws Exception {
+    Path dataPath = tempDir.resolve("data.json");
+    Path snapshotPath = tempDir.resolve("redlining.snapshot");
+    new RedliningDataGenerator(50, 8, 2, CityDistribution.UNIFORM, 5, 1).write(dataPath);
+    new GeoJsonParser(dataPath, snapshotPath);
+    byte[] firstSnapshot = Files.readAllBytes(snapshotPath);
+
+    // A different dataset must not be served from the old snapshot
+    new RedliningDataGenerator(80, 8, 2, CityDistribution.UNIFORM, 5, 2).write(dataPath);
+    GeoJsonParser parser = new GeoJsonParser(dataPath, snapshotPath);
+    assertEquals(80, parser.getData().size());
+    assertTrue(Files.readAllBytes(snapshotPath).length != firstSnapshot.length);
+
+    // Loading from the new snapshot leaves it alone
+    Files.setLastModifiedTime(snapshotPath, FileTime.fromMillis(0));
+    assertEquals(80, new GeoJsonParser(dataPath, snapshotPath).getData().size());
+    assertEquals(0, Files.getLastModifiedTime(snapshotPath).toMillis());
+  }
+
+  @Test
+  public void testCorruptSnapshotFallsBackToParsing() throws Exception {
+    Path dataPath = tempDir.resolve("data.json");
+    Path snapshotPath = tempDir.resolve("redlining.snapshot");
+    new RedliningDataGenerator(40, 8, 2, CityDistribution.UNIFORM, 5, 4).write(dataPath);
+    new GeoJsonParser(dataPath, snapshotPath);
+
+    // Cut the snapshot off halfway through its contents
+    byte[] snapshot = Files.readAllBytes(snapshotPath);
+    Files.write(snapshotPath, Arrays.copyOf(snapshot, snapshot.length / 2));
+
+    GeoJsonParser parser = new GeoJsonParser(dataPath, snapshotPath);
+    assertEquals(40, parser.getData().size());
+    assertEquals(snapshot.length, Files.size(snapshotPath), "The snapshot should be rewritten");
+  }
+}
@@ -0,0 +1,182 @@
+package edu.brown.cs.student.main;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.geoJson.FeatureStore;
+import edu.brown.cs.student.main.server.geoJson.GeoJsonParser;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for the feature store and the search index over it. */
+public class FeatureStoreTests {
+  private static final String DATA =
+      "{\"type\":\"FeatureCollection\",\"features\":["
+          + "{\"type\":\"Feature\",\"geometry\":null,\"properties\":{\"city\":\"Montréal\","
+          + "\"holc_grade\":\"B\",\"area_description_data\":{\"1\":\"Près du café\",\"2\":null,"
+          + "\"3\":\"Schools nearby\"}}},"
+          + "{\"type\":\"Feature\",\"geometry\":null,\"properties\":null},"
+          + "{\"type\":\"Feature\",\"geometry\":null,\"properties\":{\"city\":null,"
+          + "\"holc_grade\":\"D\"}},"
+          + "{\"type\":\"Feature\",\"geometry\":null,\"properties\":{\"city\":\"Providence\","
+          + "\"holc_grade\":\"A\",\"area_description_data\":{\"1\":\"Large CAFÉ district\"}}}"
+          + "]}";
+
+  @TempDir Path tempDir;
+
+  private FeatureStore[] stores() throws Exception {
+    Path dataPath = tempDir.resolve("data.json");
+    Files.writeString(dataPath, DATA, StandardCharsets.UTF_8);
+    // Once moved to direct memory and once mapped from a snapshot file
+    return new FeatureStore[] {
+      new GeoJsonParser(dataPath).getData(),
+      new GeoJsonParser(dataPath, tempDir.resolve("data.snapshot")).getData()
+    };
+  }
+
+  @Test
+  public void testFlyweightsReadEveryProperty() throws Exception {
+    for (FeatureStore store : stores()) {
+      assertEquals(4, store.size());
+
+      FeatureStore.Feature first = store.feature(0);
+      assertTrue(first.hasProperties());
+      assertEquals("Montréal", first.city());
+      assertEquals("B", first.holcGrade());
+      Map<String, String> descriptions = new LinkedHashMap<>();
+      descriptions.put("1", "Près du café");
+      descriptions.put("2", null);
+      descriptions.put("3", "Schools nearby");
+      assertEquals(descriptions, first.descriptions());
+      assertEquals("3", first.descriptionKey(2));
+
+      FeatureStore.Feature second = store.feature(1);
+      assertFalse(second.hasProperties());
+      assertNull(second.city());
+      assertEquals(0, second.descriptionCount());
+      assertNull(second.descriptions());
+
+      FeatureStore.Feature third = store.feature(2);
+      assertTrue(third.hasProperties());
+      assertNull(third.city());
+      assertEquals("D", third.holcGrade());
+      assertNull(third.descriptions());
+    }
+  }
+
+  @Test
+  public void testSearchMatchesNonAsciiKeywords() throws Exception {
+    Path dataPath = tempDir.resolve("data.json");
+    Files.writeString(dataPath, DATA, StandardCharsets.UTF_8);
+    GeoJsonParser parser = new GeoJsonParser(dataPath);
+
+    assertArrayEquals(new int[] {0, 3}, parser.getSearchIndex().search("café"));
+    assertArrayEquals(new int[] {0, 3}, parser.getSearchIndex().search("é"));
+    assertArrayEquals(new int[] {0}, parser.getSearchIndex().search("près"));
+    assertArrayEquals(new int[] {0}, parser.getSearchIndex().search("schools near"));
+    assertArrayEquals(new int[0], parser.getSearchIndex().search("café district x"));
+  }
+
+  @Test
+  public void testSearchMatchesCharactersOutsideTheBmp() throws Exception {
+    Path dataPath = tempDir.resolve("emoji.json");
+    Files.writeString(
+        dataPath,
+        "{\"type\":\"FeatureCollection\",\"features\":["
+            + "{\"type\":\"Feature\",\"geometry\":null,\"properties\":{\"city\":\"A\","
+            + "\"holc_grade\":\"A\",\"area_description_data\":{\"1\":\"Near the 🏠 park 🌳🌳\"}}},"
+            + "{\"type\":\"Feature\",\"geometry\":null,\"properties\":{\"city\":\"B\","
+            + "\"holc_grade\":\"B\",\"area_description_data\":{\"1\":\"🏠\"}}}"
+            + "]}",
+        StandardCharsets.UTF_8);
+
+    // Built while parsing, and read back from a snapshot
+    for (GeoJsonParser parser :
+        new GeoJsonParser[] {
+          new GeoJsonParser(dataPath),
+          new GeoJsonParser(dataPath, tempDir.resolve("emoji.snapshot"))
+        }) {
+      assertArrayEquals(new int[] {0, 1}, parser.getSearchIndex().search("🏠"));
+      assertArrayEquals(new int[] {0}, parser.getSearchIndex().search("🌳🌳"));
+      assertArrayEquals(new int[] {0}, parser.getSearchIndex().search("the 🏠 park"));
+      assertArrayEquals(new int[] {0}, parser.getSearchIndex().search("k 🌳🌳"));
+      assertArrayEquals(new int[0], parser.getSearchIndex().search("🌲"));
+    }
+  }
+
+  @Test
+  public void testSearchMatchesLinearScan() throws Exception {
+    // A small alphabet, so keywords of every length have many matches and many near misses
+    String alphabet = "abcAB éÉ";
+    Random random = new Random(7);
+    StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+    for (int i = 0; i < 300; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      if (i % 25 == 0) {
+        json.append("{\"type\":\"Feature\",\"geometry\":null,\"properties\":null}");
+        continue;
+      }
+      json.append("{\"type\":\"Feature\",\"geometry\":null,\"properties\":{\"city\":\"C\",");
+      json.append("\"holc_grade\":\"A\",\"area_description_data\":{");
+      int values = random.nextInt(4);
+      for (int v = 0; v < values; v++) {
+        if (v > 0) {
+          json.append(',');
+        }
+        json.append('"').append(v).append("\":");
+        if (random.nextInt(8) == 0) {
+          json.append("null");
+          continue;
+        }
+        json.append('"');
+        int length = random.nextInt(12);
+        for (int c = 0; c < length; c++) {
+          json.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        json.append('"');
+      }
+      json.append("}}}");
+    }
+    json.append("]}");
+    Path dataPath = tempDir.resolve("random.json");
+    Files.writeString(dataPath, json, StandardCharsets.UTF_8);
+    GeoJsonParser parser = new GeoJsonParser(dataPath);
+    FeatureStore store = parser.getData();
+
+    for (int query = 0; query < 1000; query++) {
+      StringBuilder keyword = new StringBuilder();
+      int length = 1 + random.nextInt(6);
+      for (int c = 0; c < length; c++) {
+        keyword.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+      String lowered = keyword.toString().toLowerCase();
+
+      // The scan /search-redlining used before the index
+      int[] expected =
+          IntStream.range(0, store.size())
+              .filter(
+                  i -> {
+                    Map<String, String> descriptions = store.feature(i).descriptions();
+                    return descriptions != null
+                        && descriptions.values().stream()
+                            .anyMatch(
+                                value -> value != null && value.toLowerCase().contains(lowered));
+                  })
+              .toArray();
+      assertArrayEquals(
+          expected, parser.getSearchIndex().search(lowered), "Keyword \"" + lowered + "\"");
+    }
+  }
+}
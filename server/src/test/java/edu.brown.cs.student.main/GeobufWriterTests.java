@@ -0,0 +1,177 @@
+package edu.brown.cs.student.main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.squareup.moshi.Moshi;
+import edu.brown.cs.student.main.server.geoJson.GeoJsonObject;
+import edu.brown.cs.student.main.server.geoJson.GeobufFragments;
+import edu.brown.cs.student.main.server.geoJson.GeobufWriter;
+import edu.brown.cs.student.main.server.geoJson.PackedGeometry;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the Geobuf encoding, decoding it again the way the geobuf library does. */
+public class GeobufWriterTests {
+
+  /** Minimal protocol buffers reader for the fields the tests look at. */
+  private static class ProtoReader {
+    private final byte[] bytes;
+    private int position;
+    private final int end;
+
+    ProtoReader(byte[] bytes, int start, int end) {
+      this.bytes = bytes;
+      this.position = start;
+      this.end = end;
+    }
+
+    boolean hasNext() {
+      return position < end;
+    }
+
+    long varint() {
+      long value = 0;
+      for (int shift = 0; ; shift += 7) {
+        byte b = bytes[position++];
+        value |= (long) (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+    }
+
+    long signedVarint() {
+      long value = varint();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** Read a length-delimited field and return a reader over its contents. */
+    ProtoReader message() {
+      int length = (int) varint();
+      ProtoReader reader = new ProtoReader(bytes, position, position + length);
+      position += length;
+      return reader;
+    }
+
+    String string() {
+      ProtoReader reader = message();
+      return new String(
+          bytes, reader.position, reader.end - reader.position, StandardCharsets.UTF_8);
+    }
+  }
+
+  private static GeoJsonObject dataWithTwoFeatures() {
+    GeoJsonObject data = new GeoJsonObject();
+    data.type = "FeatureCollection";
+    data.features = new ArrayList<>();
+    for (String city : new String[] {"Providence", null}) {
+      GeoJsonObject.Feature feature = new GeoJsonObject.Feature();
+      feature.type = "Feature";
+      feature.properties = new GeoJsonObject.Properties();
+      feature.properties.city = city;
+      feature.properties.holc_grade = "B";
+      feature.properties.area_description_data = new LinkedHashMap<>();
+      feature.properties.area_description_data.put("8", "close to schools");
+      data.features.add(feature);
+    }
+    return data;
+  }
+
+  @Test
+  public void testRoundTrip() {
+    PackedGeometry.Builder builder = new PackedGeometry.Builder();
+    // A polygon with a hole, then a plain square
+    builder.startFeature("MultiPolygon").startPolygon().startRing();
+    builder.addPoint(-71.4, 41.8).addPoint(-71.3, 41.8).addPoint(-71.3, 41.9);
+    builder.addPoint(-71.4, 41.9).addPoint(-71.4, 41.8);
+    builder.startRing();
+    builder.addPoint(-71.38, 41.82).addPoint(-71.32, 41.82).addPoint(-71.35, 41.88);
+    builder.addPoint(-71.38, 41.82);
+    builder.startFeature("MultiPolygon").startPolygon().startRing();
+    builder.addPoint(100.0, 0.0).addPoint(101.0, 0.0).addPoint(101.0, 1.0);
+    builder.addPoint(100.0, 1.0).addPoint(100.0, 0.0);
+    PackedGeometry geometry = builder.build();
+
+    GeobufFragments fragments =
+        new GeobufFragments(
+            dataWithTwoFeatures(),
+            new PackedGeometry[] {geometry},
+            new GeobufWriter(new Moshi.Builder().build()));
+    byte[] encoded = fragments.collection(new int[] {0, 1}, 0);
+
+    List<String> keys = new ArrayList<>();
+    List<ProtoReader> features = new ArrayList<>();
+    long precision = -1;
+    ProtoReader data = new ProtoReader(encoded, 0, encoded.length);
+    while (data.hasNext()) {
+      long tag = data.varint();
+      if (tag == (1 << 3 | 2)) {
+        keys.add(data.string());
+      } else if (tag == (3 << 3)) {
+        precision = data.varint();
+      } else if (tag == (4 << 3 | 2)) {
+        ProtoReader collection = data.message();
+        while (collection.hasNext()) {
+          assertEquals(1 << 3 | 2, collection.varint());
+          features.add(collection.message());
+        }
+      }
+    }
+    assertEquals(List.of("city", "holc_grade", "area_description_data"), keys);
+    assertEquals(6, precision);
+    assertEquals(2, features.size());
+
+    // First feature: lengths describe one polygon with two rings of 4 and 3 points
+    Map<String, String> properties = new LinkedHashMap<>();
+    List<Long> lengths = new ArrayList<>();
+    List<Long> coords = new ArrayList<>();
+    List<String> values = new ArrayList<>();
+    ProtoReader feature = features.get(0);
+    while (feature.hasNext()) {
+      long tag = feature.varint();
+      if (tag == (1 << 3 | 2)) {
+        ProtoReader geometryMessage = feature.message();
+        while (geometryMessage.hasNext()) {
+          long geometryTag = geometryMessage.varint();
+          if (geometryTag == (1 << 3)) {
+            assertEquals(5, geometryMessage.varint(), "Type should be MultiPolygon");
+          } else if (geometryTag == (2 << 3 | 2)) {
+            ProtoReader packed = geometryMessage.message();
+            while (packed.hasNext()) {
+              lengths.add(packed.varint());
+            }
+          } else {
+            ProtoReader packed = geometryMessage.message();
+            while (packed.hasNext()) {
+              coords.add(packed.signedVarint());
+            }
+          }
+        }
+      } else if (tag == (13 << 3 | 2)) {
+        ProtoReader value = feature.message();
+        value.varint();
+        values.add(value.string());
+      } else {
+        ProtoReader packed = feature.message();
+        while (packed.hasNext()) {
+          properties.put(keys.get((int) packed.varint()), values.get((int) packed.varint()));
+        }
+      }
+    }
+    assertEquals(List.of(1L, 2L, 4L, 3L), lengths);
+    assertEquals(14, coords.size(), "Closing points should be left out");
+    // Deltas restart on each ring: the hole starts with absolute coordinates
+    assertEquals(-71_400_000L, coords.get(0));
+    assertEquals(100_000L, coords.get(2));
+    assertEquals(-71_380_000L, coords.get(8));
+    assertEquals(41_820_000L, coords.get(9));
+
+    assertEquals("Providence", properties.get("city"));
+    assertEquals("B", properties.get("holc_grade"));
+    assertEquals("{\"8\":\"close to schools\"}", properties.get("area_description_data"));
+  }
+}
@@ -0,0 +1,124 @@
+package edu.brown.cs.student.main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.geoJson.DetailLevels;
+import edu.brown.cs.student.main.server.geoJson.GeometrySimplifier;
+import edu.brown.cs.student.main.server.geoJson.PackedGeometry;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the geometry simplification and the choice of level of detail. */
+public class GeometrySimplifierTests {
+
+  /** Build a feature with one polygon: a square ring with extra points along its edges. */
+  private static PackedGeometry squareWithEdgePoints(int pointsPerEdge, double wobble) {
+    PackedGeometry.Builder builder = new PackedGeometry.Builder();
+    builder.startFeature("MultiPolygon").startPolygon().startRing();
+    double[][] corners = {{0, 0}, {1, 0}, {1, 1}, {0, 1}};
+    for (int edge = 0; edge < 4; edge++) {
+      double[] from = corners[edge];
+      double[] to = corners[(edge + 1) % 4];
+      for (int i = 0; i < pointsPerEdge; i++) {
+        double t = (double) i / pointsPerEdge;
+        // Alternate a little to either side of the edge
+        double offset = i == 0 ? 0 : (i % 2 == 0 ? wobble : -wobble);
+        builder.addPoint(
+            from[0] + t * (to[0] - from[0]) + offset, from[1] + t * (to[1] - from[1]) + offset);
+      }
+    }
+    builder.addPoint(0, 0);
+    return builder.build();
+  }
+
+  @Test
+  public void testRemovesVerticesWithinTolerance() {
+    PackedGeometry square = squareWithEdgePoints(10, 0.001);
+    assertEquals(41, square.pointCount());
+
+    PackedGeometry simplified = GeometrySimplifier.simplify(square, 0.01);
+    assertEquals(5, simplified.pointCount(), "Only the corners and the closing point should stay");
+    assertEquals(0.0, simplified.lng(0));
+    assertEquals(0.0, simplified.lng(4));
+    assertEquals(0.0, simplified.lat(4));
+
+    // Below the wobble every vertex matters
+    assertEquals(41, GeometrySimplifier.simplify(square, 0.0001).pointCount());
+  }
+
+  @Test
+  public void testRingsSurviveCoarseTolerance() {
+    PackedGeometry.Builder builder = new PackedGeometry.Builder();
+    builder.startFeature("MultiPolygon").startPolygon();
+    // A tiny ring with a hole, both far smaller than the tolerance
+    builder.startRing();
+    for (int i = 0; i < 16; i++) {
+      double angle = 2 * Math.PI * i / 16;
+      builder.addPoint(1e-4 * Math.cos(angle), 1e-4 * Math.sin(angle));
+    }
+    builder.addPoint(1e-4, 0);
+    builder.startRing();
+    for (int i = 0; i < 8; i++) {
+      double angle = 2 * Math.PI * i / 8;
+      builder.addPoint(5e-5 * Math.cos(angle), 5e-5 * Math.sin(angle));
+    }
+    builder.addPoint(5e-5, 0);
+    // A feature without geometry keeps having none
+    builder.startFeature(null);
+    PackedGeometry simplified = GeometrySimplifier.simplify(builder.build(), 1.0);
+
+    assertEquals(2, simplified.featureCount());
+    assertEquals(2, simplified.endRing(0) - simplified.firstRing(0));
+    for (int ring = simplified.firstRing(0); ring < simplified.endRing(0); ring++) {
+      int first = simplified.firstPoint(ring);
+      int last = simplified.endPoint(ring) - 1;
+      assertTrue(last - first + 1 >= 4, "A ring should keep at least three vertices and close");
+      assertEquals(simplified.lng(first), simplified.lng(last));
+      assertEquals(simplified.lat(first), simplified.lat(last));
+    }
+    assertEquals(null, simplified.type(1));
+    assertEquals(0, simplified.endPolygon(1) - simplified.firstPolygon(1));
+  }
+
+  @Test
+  public void testHoleStaysInsideItsShell() {
+    // A square shell with a small bump out of its bottom edge, and a hole reaching into the bump
+    double[][] shell = {{0, 0}, {4, 0}, {5, -0.5}, {6, 0}, {10, 0}, {10, 10}, {0, 10}, {0, 0}};
+    double[][] hole = {{4.5, -0.2}, {5.5, -0.2}, {5, 2}, {4.5, -0.2}};
+
+    for (boolean withHole : new boolean[] {false, true}) {
+      PackedGeometry.Builder builder = new PackedGeometry.Builder();
+      builder.startFeature("MultiPolygon").startPolygon().startRing();
+      for (double[] point : shell) {
+        builder.addPoint(point[0], point[1]);
+      }
+      if (withHole) {
+        builder.startRing();
+        for (double[] point : hole) {
+          builder.addPoint(point[0], point[1]);
+        }
+      }
+      PackedGeometry simplified = GeometrySimplifier.simplify(builder.build(), 1.0);
+
+      boolean keepsBump = false;
+      int ring = simplified.firstRing(0);
+      for (int point = simplified.firstPoint(ring); point < simplified.endPoint(ring); point++) {
+        keepsBump |= simplified.lat(point) == -0.5;
+      }
+      // Flattening the bump is fine on its own, but would leave part of the hole outside
+      assertEquals(withHole, keepsBump);
+    }
+  }
+
+  @Test
+  public void testLevelChoice() {
+    assertEquals(0, DetailLevels.forZoom(18), "Close up should get full detail");
+    assertEquals(DetailLevels.count() - 1, DetailLevels.forZoom(0));
+    for (int zoom = 1; zoom <= 18; zoom++) {
+      assertTrue(DetailLevels.forZoom(zoom) <= DetailLevels.forZoom(zoom - 1));
+    }
+    // A city-sized box gets more detail than a country-sized one
+    assertTrue(DetailLevels.forSpan(0.1, 0.1) < DetailLevels.forSpan(20, 50));
+    assertEquals(0, DetailLevels.forSpan(0.01, 0.01));
+  }
+}
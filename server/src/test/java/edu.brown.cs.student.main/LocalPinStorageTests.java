@@ -0,0 +1,285 @@
+package edu.brown.cs.student.main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.storage.LocalPinStorage;
+import edu.brown.cs.student.main.server.storage.PinChanges;
+import edu.brown.cs.student.main.server.storage.PinPage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for the on-disk pin storage. */
+public class LocalPinStorageTests {
+  @TempDir Path tempDir;
+
+  private static Map<String, Object> pin(String userId, String pinId) {
+    return pin(userId, pinId, 1649673600000L);
+  }
+
+  private static Map<String, Object> pin(String userId, String pinId, long timestamp) {
+    Map<String, Object> pinData = new HashMap<>();
+    pinData.put("id", pinId);
+    pinData.put("latitude", 41.8);
+    pinData.put("longitude", -71.4);
+    pinData.put("userId", userId);
+    pinData.put("timestamp", timestamp);
+    return pinData;
+  }
+
+  private static Map<String, Object> pinAt(String pinId, double lat, double lng) {
+    Map<String, Object> pinData = pin("user1", pinId);
+    pinData.put("latitude", lat);
+    pinData.put("longitude", lng);
+    return pinData;
+  }
+
+  @Test
+  public void testSpatialQueries() throws Exception {
+    try (LocalPinStorage storage = new LocalPinStorage(tempDir.resolve("pins.log"))) {
+      storage.addDocument("user1", "providence", pinAt("providence", 41.824, -71.4128));
+      storage.addDocument("user1", "boston", pinAt("boston", 42.3601, -71.0589));
+      storage.addDocument("user1", "fiji", pinAt("fiji", -17.7134, 178.065));
+      storage.addDocument("user1", "samoa", pinAt("samoa", -13.759, -172.1046));
+
+      List<Object> inBox =
+          storage.getPinsInBox(41.0, -72.0, 42.0, -71.0).stream().map(p -> p.get("id")).toList();
+      assertEquals(List.of("providence"), inBox);
+
+      // A box crossing the antimeridian
+      List<Object> pacific =
+          storage.getPinsInBox(-20.0, 170.0, -10.0, -170.0).stream().map(p -> p.get("id")).toList();
+      assertEquals(2, pacific.size());
+      assertTrue(pacific.containsAll(List.of("fiji", "samoa")));
+
+      // Providence and Boston are about 66 km apart
+      assertEquals(1, storage.getPinsNear(41.824, -71.4128, 50_000).size());
+      assertEquals(2, storage.getPinsNear(41.824, -71.4128, 80_000).size());
+
+      storage.clearUser("user1");
+      assertTrue(storage.getPinsInBox(-90.0, -180.0, 90.0, 180.0).isEmpty());
+    }
+  }
+
+  @Test
+  public void testPagesFollowTimestampOrder() throws Exception {
+    try (LocalPinStorage storage = new LocalPinStorage(tempDir.resolve("pins.log"))) {
+      storage.addDocument("user1", "c", pin("user1", "c", 300));
+      storage.addDocument("user1", "a", pin("user1", "a", 100));
+      storage.addDocument("user2", "b2", pin("user2", "b2", 200));
+      storage.addDocument("user2", "b1", pin("user2", "b1", 200));
+
+      PinPage first = storage.getPins(3, null);
+      assertEquals(
+          List.of("a", "b1", "b2"), first.getPins().stream().map(pin -> pin.get("id")).toList());
+      assertEquals("200:b2", first.getNextCursor());
+
+      PinPage second = storage.getPins(3, first.getNextCursor());
+      assertEquals(List.of("c"), second.getPins().stream().map(pin -> pin.get("id")).toList());
+      assertNull(second.getNextCursor(), "Last page should have no next cursor");
+    }
+  }
+
+  @Test
+  public void testChangesSinceReportAdditionsAndRemovals() throws Exception {
+    Path logPath = tempDir.resolve("pins.log");
+    try (LocalPinStorage storage = new LocalPinStorage(logPath)) {
+      storage.addDocument("user1", "old", pin("user1", "old", 100));
+      storage.addDocument("user2", "new", pin("user2", "new", 500));
+
+      PinChanges changes = storage.getChangesSince(100, 100);
+      assertEquals(List.of("new"), changes.getPins().stream().map(pin -> pin.get("id")).toList());
+      assertTrue(changes.getRemoved().isEmpty());
+      assertEquals(500, changes.getCursor());
+
+      long beforeDelete = System.currentTimeMillis() - 1;
+      storage.clearUser("user1");
+      changes = storage.getChangesSince(beforeDelete, beforeDelete);
+      assertTrue(changes.getPins().isEmpty());
+      assertEquals(1, changes.getRemoved().size());
+      assertEquals("old", changes.getRemoved().get(0).get("id"));
+    }
+
+    // Tombstones survive a restart
+    try (LocalPinStorage storage = new LocalPinStorage(logPath)) {
+      assertEquals(1, storage.getChangesSince(500, 500).getRemoved().size());
+    }
+  }
+
+  @Test
+  public void testAddAndClearUser() throws Exception {
+    try (LocalPinStorage storage = new LocalPinStorage(tempDir.resolve("pins.log"))) {
+      storage.addDocument("user1", "pin1", pin("user1", "pin1"));
+      storage.addDocument("user1", "pin2", pin("user1", "pin2"));
+      storage.addDocument("user2", "pin3", pin("user2", "pin3"));
+      assertEquals(3, storage.getAllPins().size());
+      assertEquals(2, storage.getPinsForUser("user1").size());
+
+      assertEquals(2, storage.clearUser("user1"));
+      assertEquals(0, storage.clearUser("user1"));
+      List<Map<String, Object>> pins = storage.getAllPins();
+      assertEquals(1, pins.size());
+      assertEquals("pin3", pins.get(0).get("id"));
+      assertNull(storage.getPin("pin1"));
+    }
+  }
+
+  @Test
+  public void testPinsSurviveReopen() throws Exception {
+    Path logPath = tempDir.resolve("pins.log");
+    try (LocalPinStorage storage = new LocalPinStorage(logPath)) {
+      storage.addDocument("user1", "pin1", pin("user1", "pin1"));
+      storage.addDocument("user2", "pin2", pin("user2", "pin2"));
+      storage.clearUser("user2");
+    }
+
+    try (LocalPinStorage storage = new LocalPinStorage(logPath)) {
+      List<Map<String, Object>> pins = storage.getAllPins();
+      assertEquals(1, pins.size());
+      Map<String, Object> restored = pins.get(0);
+      assertEquals("user1", restored.get("userId"));
+      assertEquals(41.8, restored.get("latitude"));
+      assertEquals(1649673600000L, restored.get("timestamp"), "Timestamps should stay integral");
+    }
+  }
+
+  @Test
+  public void testRecoversFromTornRecord() throws Exception {
+    Path logPath = tempDir.resolve("pins.log");
+    try (LocalPinStorage storage = new LocalPinStorage(logPath)) {
+      storage.addDocument("user1", "pin1", pin("user1", "pin1"));
+    }
+    // Simulate a crash in the middle of an append
+    Files.write(
+        logPath,
+        "{\"op\":\"put\",\"pin\":{\"id\":\"pin2\"".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+
+    try (LocalPinStorage storage = new LocalPinStorage(logPath)) {
+      assertEquals(1, storage.getAllPins().size(), "Torn record should be dropped");
+      storage.addDocument("user1", "pin3", pin("user1", "pin3"));
+    }
+
+    try (LocalPinStorage storage = new LocalPinStorage(logPath)) {
+      assertEquals(2, storage.getAllPins().size(), "Appends after recovery should be readable");
+      assertTrue(storage.getPin("pin3") != null);
+    }
+  }
+
+  @Test
+  public void testDamagedRecordCostsOnlyItself() throws Exception {
+    Path logPath = tempDir.resolve("pins.log");
+    try (LocalPinStorage storage = new LocalPinStorage(logPath)) {
+      storage.addDocument("user1", "pin1", pin("user1", "pin1"));
+    }
+    // Damage in the middle of the log, followed by a valid record
+    String record = Files.readString(logPath);
+    Files.writeString(
+        logPath, record + "{\"op\":\"put\",\"pin\":{\"id\"\n" + record.replace("pin1", "pin2"));
+
+    try (LocalPinStorage storage = new LocalPinStorage(logPath)) {
+      assertEquals(2, storage.getAllPins().size(), "Records after the damage should be kept");
+    }
+    try (LocalPinStorage storage = new LocalPinStorage(logPath)) {
+      assertEquals(2, storage.getAllPins().size(), "The log should stay readable after recovery");
+    }
+    Path quarantine = tempDir.resolve("pins.log.corrupt");
+    assertTrue(Files.readString(quarantine).contains("{\"op\":\"put\",\"pin\":{\"id\""));
+  }
+
+  @Test
+  public void testOldTombstonesExpire() throws Exception {
+    Path logPath = tempDir.resolve("pins.log");
+    Duration retention = Duration.ofMillis(50);
+    try (LocalPinStorage storage = new LocalPinStorage(logPath, retention)) {
+      List<Map<String, Object>> pins = new ArrayList<>();
+      for (int i = 0; i < 1000; i++) {
+        pins.add(pin("user1", "pin" + i));
+      }
+      storage.addDocuments(pins);
+      assertEquals(1000, storage.clearUser("user1"));
+    }
+    Thread.sleep(100);
+
+    try (LocalPinStorage storage = new LocalPinStorage(logPath, retention)) {
+      PinChanges changes = storage.getChangesSince(0, 0);
+      assertTrue(changes.isResync(), "Changes from before the expired tombstones need a resync");
+      assertTrue(changes.getRemoved().isEmpty());
+      assertFalse(
+          storage.getChangesSince(changes.getCursor(), changes.getRemovedCursor()).isResync());
+    }
+    assertTrue(
+        Files.readAllLines(logPath).size() < 10, "Expired tombstones should be compacted away");
+
+    try (LocalPinStorage storage = new LocalPinStorage(logPath, retention)) {
+      assertTrue(storage.getChangesSince(0, 0).isResync(), "The horizon should survive compaction");
+    }
+  }
+
+  @Test
+  public void testTombstonesExpireWhileRunning() throws Exception {
+    try (LocalPinStorage storage =
+        new LocalPinStorage(tempDir.resolve("pins.log"), Duration.ofMillis(50))) {
+      storage.addDocument("user1", "pin1", pin("user1", "pin1"));
+      storage.clearUser("user1");
+      assertFalse(storage.getChangesSince(0, 0).isResync());
+
+      Thread.sleep(100);
+      storage.addDocument("user2", "pin2", pin("user2", "pin2"));
+      storage.clearUser("user2");
+      PinChanges changes = storage.getChangesSince(0, 0);
+      assertTrue(changes.isResync(), "The first tombstone should have expired on the next delete");
+      PinChanges next = storage.getChangesSince(changes.getCursor(), changes.getRemovedCursor());
+      assertFalse(next.isResync());
+      assertTrue(next.getRemoved().isEmpty(), "The resync already covers the second delete");
+    }
+  }
+
+  @Test
+  public void testPinFromTheFutureDoesNotHideDeletions() throws Exception {
+    try (LocalPinStorage storage = new LocalPinStorage(tempDir.resolve("pins.log"))) {
+      storage.addDocument("user1", "pin1", pin("user1", "pin1", 100));
+      // A client whose clock runs a day ahead
+      long future = System.currentTimeMillis() + Duration.ofDays(1).toMillis();
+      storage.addDocument("user2", "pin2", pin("user2", "pin2", future));
+
+      PinChanges changes = storage.getChangesSince(0, 0);
+      assertEquals(future, changes.getCursor());
+      storage.clearUser("user1");
+
+      PinChanges next = storage.getChangesSince(changes.getCursor(), changes.getRemovedCursor());
+      assertEquals(List.of("pin1"), next.getRemoved().stream().map(pin -> pin.get("id")).toList());
+    }
+  }
+
+  @Test
+  public void testLogIsCompactedWhileRunning() throws Exception {
+    Path logPath = tempDir.resolve("pins.log");
+    try (LocalPinStorage storage = new LocalPinStorage(logPath)) {
+      // Adding and deleting the same pin over and over leaves one tombstone, however long it runs
+      for (int i = 0; i < 3000; i++) {
+        storage.addDocument("user1", "pin1", pin("user1", "pin1"));
+        storage.clearUser("user1");
+      }
+      assertTrue(Files.readAllLines(logPath).size() <= 1000, "The log should not keep growing");
+      assertTrue(storage.getAllPins().isEmpty());
+      assertEquals(1, storage.getChangesSince(0, 0).getRemoved().size());
+
+      storage.addDocument("user2", "pin2", pin("user2", "pin2"));
+    }
+    try (LocalPinStorage storage = new LocalPinStorage(logPath)) {
+      assertEquals(1, storage.getAllPins().size(), "Appends after compaction should be kept");
+    }
+  }
+}
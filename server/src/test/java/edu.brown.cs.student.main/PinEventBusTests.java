@@ -0,0 +1,136 @@
+package edu.brown.cs.student.main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.storage.PinEventBus;
+import edu.brown.cs.student.main.server.storage.PinEventBus.PinEvent;
+import edu.brown.cs.student.main.server.storage.PinEventBus.Subscription;
+import edu.brown.cs.student.main.server.storage.PublishingStorage;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the pin event bus behind the /pin-events stream. */
+public class PinEventBusTests {
+
+  private static PinEvent next(Subscription subscription) throws InterruptedException {
+    return subscription.poll(1, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testWritesThroughStoragePublishEvents() throws Exception {
+    PinEventBus bus = new PinEventBus(16, 16, 8);
+    StorageInterface storage =
+        new PublishingStorage(
+            new StorageInterface() {
+              @Override
+              public void addDocument(String userId, String pinId, Map<String, Object> data) {}
+
+              @Override
+              public List<Map<String, Object>> getAllPins() {
+                return new ArrayList<>();
+              }
+
+              @Override
+              public int clearUser(String userId) {
+                return 3;
+              }
+            },
+            bus);
+
+    try (Subscription subscription = bus.subscribe(null)) {
+      Map<String, Object> pin = new HashMap<>();
+      pin.put("id", "pin1");
+      pin.put("userId", "user1");
+      storage.addDocument("user1", "pin1", pin);
+      storage.clearUser("user1");
+
+      PinEvent added = next(subscription);
+      assertEquals(PublishingStorage.ADD, added.getType());
+      assertTrue(added.getData().contains("\"pin1\""));
+      PinEvent cleared = next(subscription);
+      assertEquals(PublishingStorage.CLEAR, cleared.getType());
+      assertTrue(cleared.getData().contains("\"deleted\":3"));
+    }
+  }
+
+  @Test
+  public void testResumeAfterLastEventId() throws Exception {
+    PinEventBus bus = new PinEventBus(16, 16, 8);
+    String lastSeen;
+    try (Subscription subscription = bus.subscribe(null)) {
+      bus.publish("add", "{\"n\":1}");
+      lastSeen = next(subscription).getId();
+    }
+    bus.publish("add", "{\"n\":2}");
+    bus.publish("add", "{\"n\":3}");
+
+    try (Subscription resumed = bus.subscribe(lastSeen)) {
+      assertEquals("{\"n\":2}", next(resumed).getData());
+      assertEquals("{\"n\":3}", next(resumed).getData());
+      assertNull(resumed.poll(10, TimeUnit.MILLISECONDS), "Nothing else was missed");
+    }
+  }
+
+  @Test
+  public void testUnknownOrExpiredIdGetsReset() throws Exception {
+    PinEventBus bus = new PinEventBus(2, 16, 8);
+    String first;
+    try (Subscription subscription = bus.subscribe(null)) {
+      bus.publish("add", "{\"n\":1}");
+      first = next(subscription).getId();
+    }
+    // Push the event after it out of the kept history, so it can no longer be replayed
+    bus.publish("add", "{\"n\":2}");
+    bus.publish("add", "{\"n\":3}");
+    bus.publish("add", "{\"n\":4}");
+
+    try (Subscription expired = bus.subscribe(first)) {
+      assertEquals(PinEventBus.RESET, next(expired).getType());
+    }
+    try (Subscription unknown = bus.subscribe("some-other-server-7")) {
+      assertEquals(PinEventBus.RESET, next(unknown).getType());
+    }
+  }
+
+  @Test
+  public void testSlowSubscriberIsDropped() throws Exception {
+    PinEventBus bus = new PinEventBus(16, 2, 8);
+    try (Subscription slow = bus.subscribe(null)) {
+      bus.publish("add", "{\"n\":1}");
+      bus.publish("add", "{\"n\":2}");
+      bus.publish("add", "{\"n\":3}");
+      assertEquals(0, bus.subscriberCount(), "Full subscriber should be dropped");
+
+      // It still gets what fit in its buffer before its stream ends
+      assertFalse(slow.isFinished());
+      next(slow);
+      next(slow);
+      assertTrue(slow.isFinished());
+    }
+  }
+
+  @Test
+  public void testSubscribersAreCapped() {
+    PinEventBus bus = new PinEventBus(16, 16, 2);
+    Subscription first = bus.subscribe(null);
+    Subscription second = bus.subscribe(null);
+    assertNull(bus.subscribe(null), "Subscribers past the cap should be turned away");
+
+    // A closed subscription frees its place
+    first.close();
+    Subscription third = bus.subscribe(null);
+    assertNotNull(third);
+    assertEquals(2, bus.subscriberCount());
+    second.close();
+    third.close();
+  }
+}
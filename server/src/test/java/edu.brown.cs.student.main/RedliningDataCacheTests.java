@@ -0,0 +1,142 @@
+package edu.brown.cs.student.main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.geoJson.RedliningDataCache;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the size-bounded redlining cache. */
+public class RedliningDataCacheTests {
+
+  @Test
+  public void testEvictsLeastRecentlyUsedWhenOverBudget() {
+    RedliningDataCache cache = new RedliningDataCache(100, Duration.ofHours(1));
+    cache.putData("a", new byte[40]);
+    cache.putData("b", new byte[40]);
+
+    // Touch "a" so "b" becomes the least recently used entry
+    assertNotNull(cache.getData("a"));
+    cache.putData("c", new byte[40]);
+
+    assertTrue(cache.hasData("a"), "Recently used entry should be kept");
+    assertFalse(cache.hasData("b"), "Least recently used entry should be evicted");
+    assertTrue(cache.hasData("c"), "New entry should be cached");
+    assertTrue(cache.byteSize() <= 100, "Cache should stay within its byte budget");
+  }
+
+  @Test
+  public void testDoesNotCacheDataLargerThanBudget() {
+    RedliningDataCache cache = new RedliningDataCache(100, Duration.ofHours(1));
+    cache.putData("small", new byte[10]);
+    cache.putData("huge", new byte[101]);
+
+    assertFalse(cache.hasData("huge"), "Oversized data should not be cached");
+    assertTrue(cache.hasData("small"), "Oversized data should not evict other entries");
+    assertEquals(10, cache.byteSize());
+  }
+
+  @Test
+  public void testExpiredEntriesAreMisses() throws InterruptedException {
+    RedliningDataCache cache = new RedliningDataCache(100, Duration.ofMillis(1));
+    cache.putData("a", new byte[10]);
+    Thread.sleep(5);
+
+    assertNull(cache.getData("a"), "Expired entry should not be returned");
+    assertEquals(0, cache.byteSize(), "Expired entry should be dropped");
+    assertEquals(1L, cache.getStats().get("expirations"));
+  }
+
+  @Test
+  public void testStatsCountHitsAndMisses() {
+    RedliningDataCache cache = new RedliningDataCache(100, Duration.ofHours(1));
+    cache.putData("a", new byte[10]);
+    cache.getData("a");
+    cache.getData("a");
+    cache.getData("missing");
+
+    Map<String, Object> stats = cache.getStats();
+    assertEquals(2L, stats.get("hits"));
+    assertEquals(1L, stats.get("misses"));
+    assertEquals(10L, stats.get("bytes"));
+    assertEquals(1, stats.get("entries"));
+  }
+
+  @Test
+  public void testInvalidatePrefixDropsOnlyMatchingEntries() {
+    RedliningDataCache cache = new RedliningDataCache(100, Duration.ofHours(1));
+    cache.putData("v1:box", new byte[10]);
+    cache.putData("v1:box#gzip", new byte[5]);
+    cache.putData("v2:box", new byte[20]);
+
+    assertEquals(2, cache.invalidatePrefix("v1:"));
+    assertFalse(cache.hasData("v1:box"));
+    assertFalse(cache.hasData("v1:box#gzip"));
+    assertTrue(cache.hasData("v2:box"), "Entries of other versions should stay");
+    assertEquals(20L, cache.byteSize());
+    assertEquals(2L, cache.getStats().get("invalidations"));
+  }
+
+  @Test
+  public void testConcurrentMissesShareOneComputation() throws InterruptedException {
+    RedliningDataCache cache = new RedliningDataCache(100, Duration.ofHours(1));
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    List<Thread> threads = new ArrayList<>();
+    List<byte[]> results = Collections.synchronizedList(new ArrayList<>());
+    for (int i = 0; i < 8; i++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                try {
+                  start.await();
+                } catch (InterruptedException e) {
+                  return;
+                }
+                results.add(
+                    cache.getOrCompute(
+                        "key",
+                        () -> {
+                          loads.incrementAndGet();
+                          loading.countDown();
+                          try {
+                            release.await();
+                          } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                          }
+                          return new byte[10];
+                        }));
+              });
+      thread.start();
+      threads.add(thread);
+    }
+
+    // Hold the first load until the other threads have had time to miss as well
+    start.countDown();
+    loading.await();
+    Thread.sleep(50);
+    release.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(1, loads.get(), "Only one thread should compute the data");
+    assertEquals(8, results.size(), "Every thread should get the data");
+    for (byte[] result : results) {
+      assertEquals(10, result.length);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package edu.brown.cs.student.main;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.geoJson.FeatureStore;
+import edu.brown.cs.student.main.server.geoJson.GeoJsonParser;
+import edu.brown.cs.student.main.server.geoJson.PackedGeometry;
+import edu.brown.cs.student.main.server.geoJson.RedliningDataGenerator;
+import edu.brown.cs.student.main.server.geoJson.RedliningDataGenerator.CityDistribution;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for the synthetic redlining dataset generator. */
+public class RedliningDataGeneratorTests {
+
+  @TempDir Path tempDir;
+
+  @Test
+  public void testGeneratedDataMatchesSettings() throws Exception {
+    Path path = tempDir.resolve("data.json");
+    new RedliningDataGenerator(500, 12, 30, CityDistribution.UNIFORM, 20, 7).write(path);
+
+    GeoJsonParser parser = new GeoJsonParser(path);
+    FeatureStore data = parser.getData();
+    assertEquals(500, data.size());
+
+    PackedGeometry geometry = parser.getGeometry();
+    Set<String> cities = new HashSet<>();
+    for (int i = 0; i < data.size(); i++) {
+      FeatureStore.Feature feature = data.feature(i);
+      assertEquals("MultiPolygon", geometry.type(i));
+      // The ring repeats its first vertex at the end
+      assertEquals(13, geometry.endPointOf(i) - geometry.firstPointOf(i));
+      assertTrue(feature.holcGrade().matches("[ABCD]"));
+      for (String description : feature.descriptions().values()) {
+        assertTrue(description.split(" ").length >= 20, "Description should have 20 words");
+      }
+      cities.add(feature.city());
+    }
+    assertEquals(30, cities.size(), "Every city should get features");
+  }
+
+  @Test
+  public void testZipfDistributionFavorsFirstCities() {
+    int[] counts =
+        new RedliningDataGenerator(10_000, 8, 20, CityDistribution.ZIPF, 10, 1)
+            .getFeaturesPerCity();
+    int total = 0;
+    for (int count : counts) {
+      total += count;
+    }
+    assertEquals(10_000, total);
+    assertTrue(counts[0] > 5 * counts[19], "The first city should be much bigger than the last");
+  }
+
+  @Test
+  public void testSameSeedGivesSameFile() throws Exception {
+    Path first = tempDir.resolve("first.json");
+    Path second = tempDir.resolve("second.json");
+    new RedliningDataGenerator(50, 6, 3, CityDistribution.ZIPF, 10, 99).write(first);
+    new RedliningDataGenerator(50, 6, 3, CityDistribution.ZIPF, 10, 99).write(second);
+    assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+  }
+}
@@ -0,0 +1,98 @@
+package edu.brown.cs.student.main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.geoJson.RedliningDataGenerator;
+import edu.brown.cs.student.main.server.geoJson.RedliningDataGenerator.CityDistribution;
+import edu.brown.cs.student.main.server.geoJson.RedliningDataset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for reloading the redlining dataset while it is being served. */
+public class RedliningDatasetTests {
+
+  @TempDir Path tempDir;
+
+  private static void generate(Path path, int featureCount) throws Exception {
+    new RedliningDataGenerator(featureCount, 8, 5, CityDistribution.UNIFORM, 10, featureCount)
+        .write(path);
+  }
+
+  @Test
+  public void testReloadSwapsInChangedData() throws Exception {
+    Path dataPath = tempDir.resolve("data.json");
+    generate(dataPath, 50);
+    try (RedliningDataset dataset =
+        new RedliningDataset(dataPath, tempDir.resolve("data.snapshot"))) {
+      RedliningDataset.Version first = dataset.current();
+      assertEquals(1, first.number());
+      List<RedliningDataset.Version> retired = new ArrayList<>();
+      dataset.addSwapListener(retired::add);
+
+      // Unchanged data keeps the version and its cache entries
+      assertSame(first, dataset.reload().join());
+      assertTrue(retired.isEmpty());
+
+      generate(dataPath, 80);
+      RedliningDataset.Version second = dataset.reload().join();
+      assertEquals(2, second.number());
+      assertSame(second, dataset.current());
+      assertEquals(80, second.data().getData().size());
+      assertEquals(List.of(first), retired, "Listeners should get the replaced version");
+      assertNotEquals(first.cacheKey("box"), second.cacheKey("box"));
+
+      // A request that started on the old version can still finish on it
+      assertEquals(50, first.data().getData().size());
+      assertEquals(50, first.data().featuresInBox(-90, -180, 90, 180).length);
+    }
+  }
+
+  @Test
+  public void testFailedReloadKeepsCurrentVersion() throws Exception {
+    Path dataPath = tempDir.resolve("data.json");
+    generate(dataPath, 30);
+    try (RedliningDataset dataset = new RedliningDataset(dataPath, null)) {
+      RedliningDataset.Version first = dataset.current();
+
+      Files.writeString(dataPath, "{\"type\":\"FeatureCollection\",\"features\":[");
+      assertThrows(CompletionException.class, () -> dataset.reload().join());
+      assertSame(first, dataset.current(), "Malformed data should not replace the dataset");
+
+      Files.delete(dataPath);
+      assertThrows(CompletionException.class, () -> dataset.reload().join());
+      assertSame(first, dataset.current(), "A missing file should not empty the dataset");
+    }
+  }
+
+  @Test
+  public void testWatchReloadsReplacedFile() throws Exception {
+    Path dataPath = tempDir.resolve("data.json");
+    generate(dataPath, 20);
+    try (RedliningDataset dataset = new RedliningDataset(dataPath, null)) {
+      dataset.watch(Duration.ofMillis(100));
+
+      // Replace the file the way a deployment would, with a rename
+      Path staged = tempDir.resolve("staged.json");
+      generate(staged, 40);
+      Files.move(staged, dataPath, StandardCopyOption.REPLACE_EXISTING);
+
+      long deadline = System.nanoTime() + Duration.ofSeconds(20).toNanos();
+      while (dataset.current().number() == 1 && System.nanoTime() < deadline) {
+        Thread.sleep(50);
+      }
+      assertEquals(2, dataset.current().number(), "The watcher should reload the new file");
+      assertEquals(40, dataset.current().data().getData().size());
+    }
+  }
+}
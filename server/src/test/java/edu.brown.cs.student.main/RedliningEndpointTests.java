@@ -12,15 +12,19 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.Moshi;
 import com.squareup.moshi.Types;
-import edu.brown.cs.student.main.server.geoJson.GeoJsonParser;
 import edu.brown.cs.student.main.server.geoJson.RedliningDataCache;
+import edu.brown.cs.student.main.server.geoJson.RedliningDataset;
+import edu.brown.cs.student.main.server.handlers.DropPins;
 import edu.brown.cs.student.main.server.handlers.GetRedliningData;
+import edu.brown.cs.student.main.server.handlers.GetRedliningTiles;
+import edu.brown.cs.student.main.server.handlers.ReloadRedliningData;
 import edu.brown.cs.student.main.server.handlers.SearchRedliningAreas;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -29,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPInputStream;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -38,7 +43,8 @@ import spark.Spark;
 public class RedliningEndpointTests extends SparkTestBase {
 
   private String baseUrl;
-  private static GeoJsonParser geoJsonParser;
+  private static final String ADMIN_TOKEN = "test-admin-token";
+  private static RedliningDataset redliningData;
   private static RedliningDataCache redliningCache;
   private static Path testFilePath;
 
@@ -58,7 +64,7 @@ public class RedliningEndpointTests extends SparkTestBase {
     }
 
     @Override
-    public void clearUser(String userId) throws ExecutionException, InterruptedException {
+    public int clearUser(String userId) throws ExecutionException, InterruptedException {
       // Create a copy of the pins set to avoid concurrent modification
       List<String> toRemove = new ArrayList<>();
       for (Map.Entry<String, Map<String, Object>> entry : pins.entrySet()) {
@@ -71,6 +77,7 @@ public class RedliningEndpointTests extends SparkTestBase {
       for (String pinId : toRemove) {
         pins.remove(pinId);
       }
+      return toRemove.size();
     }
   }
 
@@ -80,9 +87,9 @@ public class RedliningEndpointTests extends SparkTestBase {
     private int cacheMisses = 0;
 
     @Override
-    public synchronized boolean hasData(String key) {
-      boolean result = super.hasData(key);
-      if (result) {
+    public synchronized byte[] getData(String key) {
+      byte[] result = super.getData(key);
+      if (result != null) {
         cacheHits++;
       } else {
         cacheMisses++;
@@ -112,8 +119,8 @@ public class RedliningEndpointTests extends SparkTestBase {
     // Create a minimal test GeoJSON file
     testFilePath = createTestGeoJsonFile();
 
-    // Initialize the parser and cache once for all tests
-    geoJsonParser = new GeoJsonParser(testFilePath);
+    // Initialize the dataset and cache once for all tests
+    redliningData = new RedliningDataset(testFilePath, null);
     testableCache = new TestableRedliningDataCache();
     redliningCache = testableCache;
   }
@@ -141,8 +148,10 @@ public class RedliningEndpointTests extends SparkTestBase {
   @Override
   protected void setupSparkRoutes() {
     // Set up the routes needed for testing
-    Spark.get("/get-redlining-data", new GetRedliningData(geoJsonParser, redliningCache));
-    Spark.get("/search-redlining", new SearchRedliningAreas(geoJsonParser));
+    Spark.get("/get-redlining-data", new GetRedliningData(redliningData, redliningCache));
+    Spark.get("/search-redlining", new SearchRedliningAreas(redliningData));
+    Spark.get("/get-redlining-tiles", new GetRedliningTiles(redliningData, redliningCache));
+    Spark.get("/admin/reload-redlining", new ReloadRedliningData(redliningData, ADMIN_TOKEN));
 
     // Add mock endpoints for pins
     Spark.get(
@@ -192,26 +201,8 @@ public class RedliningEndpointTests extends SparkTestBase {
           }
         });
 
-    Spark.get(
-        "/drop-pins",
-        (req, res) -> {
-          String userId = req.queryParams("userId");
-
-          if (userId == null) {
-            res.status(400);
-            return "{\"result\":\"error\",\"message\":\"Missing required userId parameter\"}";
-          }
-
-          try {
-            mockStorage.clearUser(userId);
-            return "{\"result\":\"success\",\"message\":\"All pins for user "
-                + userId
-                + " have been cleared\"}";
-          } catch (Exception e) {
-            res.status(500);
-            return "{\"result\":\"error\",\"message\":\"" + e.getMessage() + "\"}";
-          }
-        });
+    // The real handler, so its response is what gets tested
+    Spark.get("/drop-pins", new DropPins(mockStorage));
   }
 
   private String toJson(Object obj) {
@@ -273,6 +264,125 @@ public class RedliningEndpointTests extends SparkTestBase {
     assertFalse(features.isEmpty(), "Features array should not be empty");
   }
 
+  @Test
+  public void testHandlerErrorResponses() throws IOException {
+    Map<String, Object> response = makeRequest("/get-redlining-tiles?z=99&x=0&y=0");
+    assertEquals(400, response.get("status"), "Out-of-range zoom should be rejected");
+    assertTrue(
+        ((String) response.get("message")).contains("\"result\":\"error\""),
+        "Error body should carry the error result");
+
+    response = makeRequest("/search-redlining");
+    assertEquals(400, response.get("status"), "Missing keyword should be rejected");
+    assertTrue(((String) response.get("message")).contains("Search keyword is required"));
+  }
+
+  @Test
+  public void testReloadRequiresAdminToken() throws IOException {
+    Map<String, Object> response = makeRequest("/admin/reload-redlining");
+    assertEquals(401, response.get("status"), "Reload without a token should be rejected");
+
+    HttpURLConnection connection =
+        (HttpURLConnection) new URL(baseUrl + "/admin/reload-redlining").openConnection();
+    connection.setRequestProperty("Authorization", "Bearer wrong-token");
+    assertEquals(401, connection.getResponseCode(), "Reload with a wrong token should be rejected");
+    connection.disconnect();
+
+    connection = (HttpURLConnection) new URL(baseUrl + "/admin/reload-redlining").openConnection();
+    connection.setRequestProperty("Authorization", "Bearer " + ADMIN_TOKEN);
+    assertEquals(200, connection.getResponseCode());
+    String body = new String(connection.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+    connection.disconnect();
+    // The file has not changed, so the data being served stays the same
+    assertTrue(body.contains("\"changed\":false"), body);
+    assertTrue(body.contains("\"features\":1"), body);
+  }
+
+  @Test
+  public void testGetRedliningTiles() throws IOException {
+    // The test feature lies between longitudes 100 and 101, so at zoom 1 it is in the north-east
+    // tile only
+    Map<String, Object> response = makeRequest("/get-redlining-tiles?z=1&x=1&y=0");
+    List<Map<String, Object>> features = (List<Map<String, Object>>) response.get("features");
+    assertEquals(1, features.size(), "North-east tile should contain the test feature");
+
+    response = makeRequest("/get-redlining-tiles?z=1&x=0&y=0");
+    features = (List<Map<String, Object>>) response.get("features");
+    assertTrue(features.isEmpty(), "North-west tile should be empty");
+
+    // A bounding box is widened to the tiles covering it, so two slightly different viewports
+    // share a cache entry
+    makeRequest("/get-redlining-tiles?z=4&minLat=0.1&minLng=100.1&maxLat=0.9&maxLng=100.9");
+    response =
+        makeRequest("/get-redlining-tiles?z=4&minLat=0.2&minLng=100.2&maxLat=0.8&maxLng=100.8");
+    features = (List<Map<String, Object>>) response.get("features");
+    assertEquals(1, features.size(), "Covering tiles should contain the test feature");
+    assertEquals(1, testableCache.getCacheHits(), "Second viewport should hit the tile cache");
+
+    // Panning by a tile column reuses the features of the tile still in view
+    testableCache.resetCounters();
+    response =
+        makeRequest("/get-redlining-tiles?z=4&minLat=0.2&minLng=100.2&maxLat=0.8&maxLng=123.0");
+    features = (List<Map<String, Object>>) response.get("features");
+    assertEquals(1, features.size(), "The feature should appear once in the wider block");
+    assertEquals(1, testableCache.getCacheHits(), "The tile still in view should be reused");
+
+    // Out of range tiles are rejected
+    response = makeRequest("/get-redlining-tiles?z=1&x=2&y=0");
+    assertEquals(400, response.get("status"), "Should return 400 for an invalid tile");
+  }
+
+  @Test
+  public void testGzipEncodedRedliningData() throws IOException {
+    // Uses its own bounding box so it does not warm the cache for the other tests
+    String query = "/get-redlining-data?minLat=-1.0&minLng=99.0&maxLat=2.0&maxLng=102.0";
+    for (int i = 0; i < 2; i++) {
+      HttpURLConnection clientConnection =
+          (HttpURLConnection) new URL(baseUrl + query).openConnection();
+      clientConnection.setRequestProperty("Accept-Encoding", "gzip");
+      clientConnection.connect();
+
+      assertEquals(200, clientConnection.getResponseCode());
+      assertEquals(
+          "gzip",
+          clientConnection.getHeaderField("Content-Encoding"),
+          "Response should be gzip-encoded");
+      String body;
+      try (GZIPInputStream in = new GZIPInputStream(clientConnection.getInputStream())) {
+        body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+      }
+      clientConnection.disconnect();
+
+      assertTrue(body.contains("\"features\""), "Decompressed body should be GeoJSON");
+      assertTrue(body.contains("TestCity"), "Decompressed body should contain the test feature");
+    }
+  }
+
+  @Test
+  public void testGeobufRedliningData() throws IOException {
+    String query = "/get-redlining-data?minLat=-2.0&minLng=98.0&maxLat=3.0&maxLng=103.0";
+    HttpURLConnection clientConnection =
+        (HttpURLConnection) new URL(baseUrl + query).openConnection();
+    clientConnection.setRequestProperty("Accept", "application/vnd.geobuf, application/json;q=0.5");
+    clientConnection.connect();
+
+    assertEquals(200, clientConnection.getResponseCode());
+    assertTrue(clientConnection.getContentType().startsWith("application/vnd.geobuf"));
+    byte[] body = clientConnection.getInputStream().readAllBytes();
+    clientConnection.disconnect();
+
+    // The message starts with the key dictionary, whose first entry is "city"
+    assertEquals(0x0A, body[0]);
+    assertEquals("city", new String(body, 2, body[1], StandardCharsets.UTF_8));
+    assertTrue(
+        new String(body, StandardCharsets.ISO_8859_1).contains("TestCity"),
+        "Body should hold the test feature's properties");
+
+    // The same viewport as JSON is unaffected
+    Map<String, Object> response = makeRequest(query);
+    assertNotNull(response.get("features"));
+  }
+
   @Test
   public void testSearchRedliningAreas() throws IOException {
     // Test searching for keyword in area descriptions
@@ -327,6 +437,7 @@ public class RedliningEndpointTests extends SparkTestBase {
     // Test dropping pins
     Map<String, Object> dropResponse = makeRequest("/drop-pins?userId=" + userId);
     assertEquals("success", dropResponse.get("result"), "Should successfully drop all pins");
+    assertEquals(1.0, dropResponse.get("deleted"), "Should report the number of pins dropped");
 
     // Verify pins were dropped
     Map<String, Object> verifyResponse = makeRequest("/get-all-pins");
@@ -343,6 +454,23 @@ public class RedliningEndpointTests extends SparkTestBase {
     assertFalse(pinStillExists, "Pin should have been deleted");
   }
 
+  @Test
+  public void testDropPinsReportsDeletedCount() throws Exception {
+    // Put pins straight into the storage, so the count comes from clearUser alone
+    for (int i = 0; i < 3; i++) {
+      Map<String, Object> pinData = new HashMap<>();
+      pinData.put("id", "countedPin" + i);
+      pinData.put("userId", "countedUser");
+      mockStorage.addDocument("countedUser", "countedPin" + i, pinData);
+    }
+
+    Map<String, Object> response = makeRequest("/drop-pins?userId=countedUser");
+    assertEquals("success", response.get("result"));
+    assertEquals(3.0, response.get("deleted"), "Should report what clearUser returned");
+    assertEquals(
+        0.0, makeRequest("/drop-pins?userId=countedUser").get("deleted"), "Nothing left to drop");
+  }
+
   @Test
   public void testInvalidParameters() throws IOException {
     // Test missing required parameters for add-pin
@@ -0,0 +1,104 @@
+package edu.brown.cs.student.main;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.brown.cs.student.main.server.geoJson.FeatureEnvelopes;
+import edu.brown.cs.student.main.server.geoJson.GeoJsonParser;
+import edu.brown.cs.student.main.server.geoJson.SpatialIndex;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for the packed R-tree over feature envelopes. */
+public class SpatialIndexTests {
+  // Enough features for a tree of four levels, so inner nodes and partial last nodes are exercised
+  private static final int FEATURES = 3000;
+
+  @TempDir Path tempDir;
+
+  /** Write a dataset of random rectangles, some of them without geometry. */
+  private Path randomDataset(Random random) throws Exception {
+    StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+    for (int i = 0; i < FEATURES; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      if (random.nextInt(50) == 0) {
+        json.append("{\"type\":\"Feature\",\"geometry\":null,\"properties\":null}");
+        continue;
+      }
+      double west = -180 + random.nextDouble() * 350;
+      double south = -90 + random.nextDouble() * 170;
+      // Mostly small areas, with the occasional large one
+      double width = random.nextInt(20) == 0 ? random.nextDouble() * 10 : random.nextDouble() * 0.5;
+      double height = random.nextDouble() * 0.5;
+      json.append(
+          String.format(
+              Locale.ROOT,
+              "{\"type\":\"Feature\",\"geometry\":{\"type\":\"MultiPolygon\",\"coordinates\":"
+                  + "[[[[%1$f,%2$f],[%3$f,%2$f],[%3$f,%4$f],[%1$f,%4$f],[%1$f,%2$f]]]]},"
+                  + "\"properties\":null}",
+              west,
+              south,
+              west + width,
+              south + height));
+    }
+    json.append("]}");
+    Path dataPath = tempDir.resolve("random.json");
+    Files.writeString(dataPath, json, StandardCharsets.UTF_8);
+    return dataPath;
+  }
+
+  /** Find the features overlapping a box by checking every envelope. */
+  private static int[] linearScan(
+      FeatureEnvelopes envelopes, double minX, double minY, double maxX, double maxY) {
+    return IntStream.range(0, envelopes.size())
+        .filter(
+            i ->
+                envelopes.hasEnvelope(i)
+                    && envelopes.maxLng(i) >= minX
+                    && envelopes.minLng(i) <= maxX
+                    && envelopes.maxLat(i) >= minY
+                    && envelopes.minLat(i) <= maxY)
+        .toArray();
+  }
+
+  @Test
+  public void testSearchMatchesLinearScan() throws Exception {
+    Random random = new Random(42);
+    GeoJsonParser parser = new GeoJsonParser(randomDataset(random));
+    FeatureEnvelopes envelopes = parser.getEnvelopes();
+    SpatialIndex index = parser.getSpatialIndex();
+    assertEquals(linearScan(envelopes, -180, -90, 180, 90).length, index.size());
+
+    for (int query = 0; query < 500; query++) {
+      double minX = -180 + random.nextDouble() * 360;
+      double minY = -90 + random.nextDouble() * 180;
+      // Points, viewport-sized boxes and boxes spanning much of the world
+      double size = query % 3 == 0 ? 0 : query % 3 == 1 ? random.nextDouble() * 5 : 120;
+      double maxX = minX + size;
+      double maxY = minY + size / 2;
+      assertArrayEquals(
+          linearScan(envelopes, minX, minY, maxX, maxY),
+          index.search(minX, minY, maxX, maxY),
+          "Query " + query + " should find the same features as a scan");
+    }
+
+    // Every feature is found by a query for its own envelope
+    for (int i = 0; i < envelopes.size(); i += 97) {
+      if (envelopes.hasEnvelope(i)) {
+        int feature = i;
+        int[] found =
+            index.search(
+                envelopes.minLng(i), envelopes.minLat(i), envelopes.maxLng(i), envelopes.maxLat(i));
+        assertEquals(1, IntStream.of(found).filter(id -> id == feature).count(), "Feature " + i);
+      }
+    }
+  }
+}
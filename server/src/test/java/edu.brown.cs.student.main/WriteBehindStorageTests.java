@@ -0,0 +1,277 @@
+package edu.brown.cs.student.main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import edu.brown.cs.student.main.server.storage.WriteBehindStorage;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for the write-behind batching storage layer. */
+public class WriteBehindStorageTests {
+  @TempDir Path tempDir;
+
+  /** In-memory storage that records the size of every batch written to it. */
+  private static class RecordingStorage implements StorageInterface {
+    final List<Map<String, Object>> pins = new ArrayList<>();
+    final List<Integer> batchSizes = new ArrayList<>();
+    volatile boolean failing = false;
+    volatile int failuresLeft = 0;
+    volatile CountDownLatch gate = null;
+    // Pin the storage refuses to accept, however often it is sent
+    volatile String rejectedId = null;
+
+    @Override
+    public void addDocument(String userId, String pinId, Map<String, Object> data) {
+      addDocuments(List.of(data));
+    }
+
+    @Override
+    public void addDocuments(List<Map<String, Object>> batch) {
+      if (gate != null) {
+        try {
+          gate.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (failing || failuresLeft-- > 0) {
+        throw new IllegalStateException("Storage unavailable");
+      }
+      if (batch.stream().anyMatch(pin -> pin.get("id").equals(rejectedId))) {
+        throw new IllegalArgumentException("Invalid pin " + rejectedId);
+      }
+      synchronized (this) {
+        pins.addAll(batch);
+        batchSizes.add(batch.size());
+      }
+    }
+
+    @Override
+    public synchronized List<Map<String, Object>> getAllPins() {
+      return new ArrayList<>(pins);
+    }
+
+    @Override
+    public synchronized int clearUser(String userId) {
+      int before = pins.size();
+      pins.removeIf(pin -> userId.equals(pin.get("userId")));
+      return before - pins.size();
+    }
+  }
+
+  private static Map<String, Object> pin(String userId, String pinId) {
+    Map<String, Object> pinData = new HashMap<>();
+    pinData.put("id", pinId);
+    pinData.put("latitude", 41.8);
+    pinData.put("longitude", -71.4);
+    pinData.put("userId", userId);
+    pinData.put("timestamp", 1649673600000L);
+    return pinData;
+  }
+
+  private WriteBehindStorage open(StorageInterface delegate, int capacity) throws Exception {
+    return open(delegate, capacity, 50);
+  }
+
+  private WriteBehindStorage open(StorageInterface delegate, int capacity, int batchSize)
+      throws Exception {
+    return new WriteBehindStorage(
+        delegate,
+        tempDir.resolve("journal.log"),
+        capacity,
+        batchSize,
+        Duration.ofSeconds(10),
+        Duration.ofMillis(200));
+  }
+
+  @Test
+  public void testWritesAreBatchedAndVisibleToReads() throws Exception {
+    RecordingStorage delegate = new RecordingStorage();
+    try (WriteBehindStorage storage = open(delegate, 1000)) {
+      for (int i = 0; i < 20; i++) {
+        storage.addDocument("user1", "pin" + i, pin("user1", "pin" + i));
+      }
+      // The flush interval is long, so nothing should have been written one by one
+      assertEquals(20, storage.getAllPins().size(), "Reads should see earlier writes");
+      assertEquals(List.of(20), delegate.batchSizes, "Pins should be written in one batch");
+      assertEquals(0, storage.pendingCount());
+    }
+  }
+
+  @Test
+  public void testClearUserAppliesAfterPendingWrites() throws Exception {
+    RecordingStorage delegate = new RecordingStorage();
+    try (WriteBehindStorage storage = open(delegate, 1000)) {
+      storage.addDocument("user1", "pin1", pin("user1", "pin1"));
+      storage.addDocument("user2", "pin2", pin("user2", "pin2"));
+      assertEquals(1, storage.clearUser("user1"));
+      List<Map<String, Object>> pins = storage.getAllPins();
+      assertEquals(1, pins.size());
+      assertEquals("user2", pins.get(0).get("userId"));
+    }
+  }
+
+  @Test
+  public void testFullQueueAppliesBackpressure() throws Exception {
+    RecordingStorage delegate = new RecordingStorage();
+    delegate.gate = new CountDownLatch(1);
+    try (WriteBehindStorage storage = open(delegate, 2)) {
+      storage.addDocument("user1", "pin1", pin("user1", "pin1"));
+      storage.addDocument("user1", "pin2", pin("user1", "pin2"));
+      assertThrows(
+          ExecutionException.class,
+          () -> storage.addDocument("user1", "pin3", pin("user1", "pin3")),
+          "Adding to a full queue should fail once the enqueue timeout passes");
+      delegate.gate.countDown();
+      assertEquals(2, storage.getAllPins().size());
+    }
+  }
+
+  @Test
+  public void testUnwrittenPinsAreReplayedOnRestart() throws Exception {
+    RecordingStorage failingDelegate = new RecordingStorage();
+    failingDelegate.failing = true;
+    try (WriteBehindStorage storage = open(failingDelegate, 1000)) {
+      storage.addDocument("user1", "pin1", pin("user1", "pin1"));
+      storage.addDocument("user1", "pin2", pin("user1", "pin2"));
+    }
+    assertTrue(failingDelegate.pins.isEmpty());
+
+    RecordingStorage delegate = new RecordingStorage();
+    try (WriteBehindStorage storage = open(delegate, 1000)) {
+      List<Map<String, Object>> pins = storage.getAllPins();
+      assertEquals(2, pins.size(), "Journaled pins should be written after a restart");
+      assertEquals(1649673600000L, pins.get(0).get("timestamp"));
+    }
+
+    try (WriteBehindStorage storage = open(new RecordingStorage(), 1000)) {
+      assertEquals(0, storage.pendingCount(), "Written pins should leave the journal");
+    }
+  }
+
+  @Test
+  public void testReadsFailWhileStorageIsDown() throws Exception {
+    RecordingStorage delegate = new RecordingStorage();
+    delegate.failing = true;
+    try (WriteBehindStorage storage = open(delegate, 1000)) {
+      storage.addDocument("user1", "pin1", pin("user1", "pin1"));
+      assertThrows(
+          ExecutionException.class,
+          storage::getAllPins,
+          "Reads should fail once the enqueue timeout passes rather than wait for the outage");
+      assertThrows(ExecutionException.class, () -> storage.clearUser("user1"));
+
+      // The flusher keeps retrying with backoff, so the pin goes out once the storage is back
+      delegate.failing = false;
+      while (storage.pendingCount() > 0) {
+        Thread.sleep(50);
+      }
+      assertEquals(1, storage.getAllPins().size(), "Reads should work again after the outage");
+    }
+  }
+
+  @Test
+  public void testBatchAbandonedOnCloseStaysJournaled() throws Exception {
+    RecordingStorage delegate = new RecordingStorage();
+    delegate.gate = new CountDownLatch(1);
+    delegate.failuresLeft = 1;
+    WriteBehindStorage storage = open(delegate, 1000, 1);
+    storage.addDocument("user1", "pin1", pin("user1", "pin1"));
+    storage.addDocument("user1", "pin2", pin("user1", "pin2"));
+
+    // Close while the first batch is being written, so it fails after shutdown has begun and the
+    // second batch then succeeds
+    Thread closer =
+        new Thread(
+            () -> {
+              try {
+                storage.close();
+              } catch (Exception e) {
+                throw new RuntimeException(e);
+              }
+            });
+    closer.start();
+    while (closer.getState() != Thread.State.WAITING) {
+      Thread.sleep(10);
+    }
+    delegate.gate.countDown();
+    closer.join();
+    assertEquals(1, delegate.pins.size());
+    assertEquals("pin2", delegate.pins.get(0).get("id"));
+
+    RecordingStorage next = new RecordingStorage();
+    try (WriteBehindStorage reopened = open(next, 1000)) {
+      // Written pins may be replayed too, but the abandoned one must not be lost
+      List<Map<String, Object>> pins = reopened.getAllPins();
+      assertTrue(
+          pins.stream().anyMatch(pin -> "pin1".equals(pin.get("id"))),
+          "The abandoned pin should be replayed after a restart");
+    }
+  }
+
+  @Test
+  public void testRejectedPinIsSetAside() throws Exception {
+    RecordingStorage delegate = new RecordingStorage();
+    delegate.rejectedId = "pin3";
+    try (WriteBehindStorage storage = open(delegate, 1000)) {
+      for (int i = 0; i < 10; i++) {
+        storage.addDocument("user1", "pin" + i, pin("user1", "pin" + i));
+      }
+      assertEquals(
+          9, storage.getAllPins().size(), "Pins next to the rejected one should be written");
+      assertEquals(1, storage.deadLetterCount());
+      assertEquals(0, storage.pendingCount());
+    }
+
+    RecordingStorage next = new RecordingStorage();
+    try (WriteBehindStorage reopened = open(next, 1000)) {
+      assertEquals(1, reopened.deadLetterCount(), "The rejected pin should stay in the journal");
+      assertTrue(reopened.getAllPins().isEmpty(), "The rejected pin should not be retried");
+    }
+  }
+
+  @Test
+  public void testConcurrentAddsAreAllJournaled() throws Exception {
+    RecordingStorage failingDelegate = new RecordingStorage();
+    failingDelegate.failing = true;
+    try (WriteBehindStorage storage = open(failingDelegate, 1000)) {
+      List<Thread> writers = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        int writer = t;
+        writers.add(
+            new Thread(
+                () -> {
+                  for (int i = 0; i < 50; i++) {
+                    String pinId = "pin" + writer + "_" + i;
+                    try {
+                      storage.addDocument("user" + writer, pinId, pin("user" + writer, pinId));
+                    } catch (Exception e) {
+                      throw new RuntimeException(e);
+                    }
+                  }
+                }));
+      }
+      writers.forEach(Thread::start);
+      for (Thread writer : writers) {
+        writer.join();
+      }
+      assertEquals(400, storage.pendingCount());
+    }
+
+    RecordingStorage delegate = new RecordingStorage();
+    try (WriteBehindStorage storage = open(delegate, 1000)) {
+      assertEquals(400, storage.getAllPins().size(), "Every acknowledged pin should be journaled");
+    }
+  }
+}